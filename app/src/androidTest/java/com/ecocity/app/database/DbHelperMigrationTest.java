@@ -0,0 +1,237 @@
+package com.ecocity.app.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.model.UrgenciaIncidencia;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Migración de una base de datos de la versión 4 (estado y urgencia como
+ * texto, sin outbox ni contadores) al esquema actual, y comprobación y
+ * reconstrucción de los contadores. Todo en memoria: no toca EcoCity.db.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DbHelperMigrationTest {
+
+    private static final String USER_A = "ana@ecocity.es";
+    private static final String USER_B = "luis@ecocity.es";
+
+    private static Context context() {
+        return InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    // Esquema de la tabla incidencias en la versión 4
+    private static SQLiteDatabase createV4() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + DbHelper.TABLE_INCIDENCIAS + " (" +
+                DbHelper.COLUMN_LOCAL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                DbHelper.COLUMN_FIRESTORE_ID + " TEXT, " +
+                DbHelper.COLUMN_TITULO + " TEXT, " +
+                DbHelper.COLUMN_DESCRIPCION + " TEXT, " +
+                DbHelper.COLUMN_URGENCIA + " TEXT, " +
+                DbHelper.COLUMN_FOTOPATH + " TEXT, " +
+                DbHelper.COLUMN_ESTADO + " TEXT, " +
+                DbHelper.COLUMN_LATITUD + " REAL, " +
+                DbHelper.COLUMN_LONGITUD + " REAL, " +
+                DbHelper.COLUMN_USER_EMAIL + " TEXT, " +
+                DbHelper.COLUMN_IS_SYNCED + " INTEGER DEFAULT 0, " +
+                DbHelper.COLUMN_SYNC_ACTION + " TEXT DEFAULT 'INSERT'" +
+                ");");
+        db.execSQL("CREATE TABLE " + DbHelper.TABLE_USERS + " (" +
+                DbHelper.COLUMN_USER_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                DbHelper.COLUMN_NAME + " TEXT, " +
+                DbHelper.COLUMN_EMAIL + " TEXT UNIQUE, " +
+                DbHelper.COLUMN_PASSWORD + " TEXT" +
+                ");");
+        return db;
+    }
+
+    private static long insertV4(SQLiteDatabase db, String firestoreId, String titulo, String estado,
+            String urgencia, String userEmail, int isSynced, String syncAction) {
+        ContentValues values = new ContentValues();
+        values.put(DbHelper.COLUMN_FIRESTORE_ID, firestoreId);
+        values.put(DbHelper.COLUMN_TITULO, titulo);
+        values.put(DbHelper.COLUMN_DESCRIPCION, "Descripción de " + titulo);
+        values.put(DbHelper.COLUMN_ESTADO, estado);
+        values.put(DbHelper.COLUMN_URGENCIA, urgencia);
+        values.put(DbHelper.COLUMN_LATITUD, 40.4168);
+        values.put(DbHelper.COLUMN_LONGITUD, -3.7038);
+        values.put(DbHelper.COLUMN_USER_EMAIL, userEmail);
+        values.put(DbHelper.COLUMN_IS_SYNCED, isSynced);
+        if (syncAction != null) {
+            values.put(DbHelper.COLUMN_SYNC_ACTION, syncAction);
+        } else {
+            values.putNull(DbHelper.COLUMN_SYNC_ACTION);
+        }
+        return db.insertOrThrow(DbHelper.TABLE_INCIDENCIAS, null, values);
+    }
+
+    // Igual que SQLiteOpenHelper: onUpgrade dentro de una transacción
+    private static void upgrade(SQLiteDatabase db, int oldVersion) {
+        db.beginTransaction();
+        try {
+            new DbHelper(context()).onUpgrade(db, oldVersion, DbHelper.DATABASE_VERSION);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static int[] codes(SQLiteDatabase db, long localId) {
+        Cursor cursor = db.query(DbHelper.TABLE_INCIDENCIAS,
+                new String[] { DbHelper.COLUMN_ESTADO, DbHelper.COLUMN_URGENCIA },
+                DbHelper.COLUMN_LOCAL_ID + " = ?", new String[] { String.valueOf(localId) }, null, null, null);
+        try {
+            assertTrue("Falta la fila " + localId, cursor.moveToFirst());
+            return new int[] { cursor.getInt(0), cursor.getInt(1) };
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long count(SQLiteDatabase db, String sql, String... args) {
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromV4ConvertsLabelsToCodes() {
+        SQLiteDatabase db = createV4();
+        try {
+            long enProceso = insertV4(db, "doc1", "Farola rota", "EN PROCESO", " alta ", USER_A, 1, "INSERT");
+            long pendiente = insertV4(db, "doc2", "Bache", "pendiente", "Media", USER_A, 0, "UPDATE");
+            long resuelta = insertV4(db, null, "Grafiti", "Resuelta", "BAJA", USER_B, 0, null);
+            long desconocido = insertV4(db, "doc4", "Papelera", "archivada", "urgentísima", USER_B, 1, "INSERT");
+
+            upgrade(db, 4);
+
+            assertEquals(4, count(db, "SELECT COUNT(*) FROM " + DbHelper.TABLE_INCIDENCIAS));
+            assertArrayEquals(new int[] { EstadoIncidencia.EN_PROCESO.getCode(), UrgenciaIncidencia.ALTA.getCode() },
+                    codes(db, enProceso));
+            assertArrayEquals(new int[] { EstadoIncidencia.PENDIENTE.getCode(), UrgenciaIncidencia.MEDIA.getCode() },
+                    codes(db, pendiente));
+            assertArrayEquals(new int[] { EstadoIncidencia.RESUELTA.getCode(), UrgenciaIncidencia.BAJA.getCode() },
+                    codes(db, resuelta));
+            // Las etiquetas desconocidas toman el valor por defecto, como fromLabel
+            assertArrayEquals(new int[] { EstadoIncidencia.DEFAULT.getCode(), UrgenciaIncidencia.DEFAULT.getCode() },
+                    codes(db, desconocido));
+
+            // Las columnas de versiones posteriores existen con su valor por defecto
+            assertEquals(4, count(db, "SELECT COUNT(*) FROM " + DbHelper.TABLE_INCIDENCIAS + " WHERE "
+                    + DbHelper.COLUMN_VERSION + " = 0 AND " + DbHelper.COLUMN_UPDATED_AT + " = 0 AND "
+                    + DbHelper.COLUMN_THUMB_PATH + " IS NULL AND " + DbHelper.COLUMN_PREVIEW_PATH + " IS NULL"));
+            // El índice de texto completo incluye las filas migradas
+            assertEquals(1, count(db, "SELECT COUNT(*) FROM " + DbHelper.TABLE_INCIDENCIAS_FTS + " WHERE "
+                    + DbHelper.TABLE_INCIDENCIAS_FTS + " MATCH ?", "bache"));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromV4QueuesPendingRows() {
+        SQLiteDatabase db = createV4();
+        try {
+            insertV4(db, "doc1", "Farola rota", "En proceso", "Alta", USER_A, 1, "INSERT");
+            long updated = insertV4(db, "doc2", "Bache", "Pendiente", "Media", USER_A, 0, "UPDATE");
+            long inserted = insertV4(db, null, "Grafiti", "Resuelta", "Baja", USER_B, 0, null);
+            long deleted = insertV4(db, "doc4", "Papelera", "Pendiente", "Baja", USER_B, 0, "DELETE");
+
+            upgrade(db, 4);
+
+            Cursor cursor = db.query(DbHelper.TABLE_OUTBOX, new String[] { DbHelper.COLUMN_OUTBOX_LOCAL_ID,
+                    DbHelper.COLUMN_OUTBOX_OPERATION, DbHelper.COLUMN_OUTBOX_FIELDS }, null, null, null, null,
+                    DbHelper.COLUMN_OUTBOX_SEQ);
+            try {
+                // Solo las pendientes, en orden y completas (sync_action nulo = INSERT)
+                assertEquals(3, cursor.getCount());
+                long[] localIds = { updated, inserted, deleted };
+                String[] operations = { SyncOutbox.OP_UPDATE, SyncOutbox.OP_INSERT, SyncOutbox.OP_DELETE };
+                for (int i = 0; i < localIds.length; i++) {
+                    assertTrue(cursor.moveToNext());
+                    assertEquals(localIds[i], cursor.getLong(0));
+                    assertEquals(operations[i], cursor.getString(1));
+                    assertEquals(SyncOutbox.FIELDS_ALL, cursor.getInt(2));
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromV4RebuildsCounters() {
+        SQLiteDatabase db = createV4();
+        try {
+            insertV4(db, "doc1", "Farola rota", "EN PROCESO", "Alta", USER_A, 1, "INSERT");
+            insertV4(db, "doc2", "Bache", "pendiente", "alta", USER_A, 0, "UPDATE");
+            insertV4(db, null, "Grafiti", "Resuelta", "Baja", USER_B, 0, null);
+            insertV4(db, "doc4", "Papelera", "Pendiente", "Baja", USER_B, 0, "DELETE");
+
+            upgrade(db, 4);
+
+            assertTrue(IncidenciaCounters.isConsistent(db));
+            // El borrado pendiente no cuenta
+            assertEquals(3, IncidenciaCounters.get(db, IncidenciaCounters.SCOPE_GLOBAL,
+                    IncidenciaCounters.DIMENSION_TOTAL, ""));
+            assertEquals(2, IncidenciaCounters.get(db, USER_A, IncidenciaCounters.DIMENSION_TOTAL, ""));
+            assertEquals(1, IncidenciaCounters.get(db, USER_B, IncidenciaCounters.DIMENSION_TOTAL, ""));
+            // Las etiquetas con distintas mayúsculas caen en la misma clave
+            assertEquals(2, IncidenciaCounters.get(db, IncidenciaCounters.SCOPE_GLOBAL,
+                    IncidenciaCounters.DIMENSION_URGENCIA, String.valueOf(UrgenciaIncidencia.ALTA.getCode())));
+            assertEquals(1, IncidenciaCounters.get(db, USER_A, IncidenciaCounters.DIMENSION_ESTADO,
+                    IncidenciaCounters.key(EstadoIncidencia.EN_PROCESO)));
+            assertEquals(0, IncidenciaCounters.get(db, USER_B, IncidenciaCounters.DIMENSION_ESTADO,
+                    IncidenciaCounters.key(EstadoIncidencia.PENDIENTE)));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void rebuildRestoresConsistency() {
+        // El fixture inserta sin pasar por los contadores
+        SQLiteDatabase db = IncidenciaFixture.create(context(), 200);
+        try {
+            assertFalse(IncidenciaCounters.isConsistent(db));
+            IncidenciaCounters.rebuild(db);
+            assertTrue(IncidenciaCounters.isConsistent(db));
+            assertEquals(200, IncidenciaCounters.get(db, IncidenciaCounters.SCOPE_GLOBAL,
+                    IncidenciaCounters.DIMENSION_TOTAL, ""));
+
+            // Un contador que no corresponde a ninguna fila se detecta
+            IncidenciaCounters.apply(db, USER_A, EstadoIncidencia.RESUELTA, UrgenciaIncidencia.ALTA, 1);
+            assertFalse(IncidenciaCounters.isConsistent(db));
+            // Al deshacerlo queda a cero, que equivale a no existir
+            IncidenciaCounters.apply(db, USER_A, EstadoIncidencia.RESUELTA, UrgenciaIncidencia.ALTA, -1);
+            assertTrue(IncidenciaCounters.isConsistent(db));
+
+            // Una fila cambiada sin ajustar los contadores también
+            db.execSQL("UPDATE " + DbHelper.TABLE_INCIDENCIAS + " SET " + DbHelper.COLUMN_ESTADO + " = "
+                    + EstadoIncidencia.RESUELTA.getCode() + " WHERE " + DbHelper.COLUMN_ESTADO + " != "
+                    + EstadoIncidencia.RESUELTA.getCode() + " AND " + DbHelper.COLUMN_LOCAL_ID + " = 1");
+            assertFalse(IncidenciaCounters.isConsistent(db));
+            IncidenciaCounters.rebuild(db);
+            assertTrue(IncidenciaCounters.isConsistent(db));
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ecocity.app.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+
+/**
+ * Base de datos en memoria con el esquema de {@link DbHelper} y N incidencias
+ * sintéticas, para las mediciones instrumentadas. No toca EcoCity.db.
+ * <p>
+ * Los valores se repiten como en uso real: pocos autores, pocas acciones de
+ * sincronización y una foto cada diez incidencias; títulos, descripciones e
+ * ids de Firestore son únicos.
+ * </p>
+ */
+final class IncidenciaFixture {
+
+    static final int USERS = 40;
+
+    private IncidenciaFixture() {
+    }
+
+    static SQLiteDatabase create(Context context, int rows) {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        new DbHelper(context).onCreate(db);
+        String[] columns = {
+                DbHelper.COLUMN_FIRESTORE_ID, DbHelper.COLUMN_TITULO, DbHelper.COLUMN_DESCRIPCION,
+                DbHelper.COLUMN_URGENCIA, DbHelper.COLUMN_FOTOPATH, DbHelper.COLUMN_ESTADO,
+                DbHelper.COLUMN_LATITUD, DbHelper.COLUMN_LONGITUD, DbHelper.COLUMN_USER_EMAIL,
+                DbHelper.COLUMN_IS_SYNCED, DbHelper.COLUMN_SYNC_ACTION, DbHelper.COLUMN_UPDATED_AT,
+                DbHelper.COLUMN_VERSION
+        };
+        char[] marks = new char[columns.length * 2 - 1];
+        Arrays.fill(marks, ',');
+        for (int i = 0; i < marks.length; i += 2) {
+            marks[i] = '?';
+        }
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + DbHelper.TABLE_INCIDENCIAS + " ("
+                + TextUtils.join(", ", columns) + ") VALUES (" + new String(marks) + ")");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                insert.clearBindings();
+                insert.bindString(1, "doc" + i);
+                insert.bindString(2, "Incidencia " + i + " en la calle " + (i % 500));
+                insert.bindString(3, "Descripción de la incidencia número " + i + " reportada por un vecino");
+                insert.bindLong(4, 1 + i % 3);
+                if (i % 10 == 0)
+                    insert.bindString(5, "/storage/emulated/0/Android/data/com.ecocity.app/files/Pictures/JPEG_" + i
+                            + ".jpg");
+                insert.bindLong(6, 1 + (i / 3) % 3);
+                insert.bindDouble(7, 40.4 + (i % 1000) * 0.0001);
+                insert.bindDouble(8, -3.7 - (i / 1000) * 0.0001);
+                insert.bindString(9, "vecino" + (i % USERS) + "@ecocity.es");
+                insert.bindLong(10, i % 7 == 0 ? 0 : 1);
+                insert.bindString(11, i % 7 == 0 ? "UPDATE" : "INSERT");
+                insert.bindLong(12, 1700000000000L + i);
+                insert.bindLong(13, 1 + i % 4);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return db;
+    }
+
+    /**
+     * Mediana de los tiempos (ns).
+     */
+    static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Memoria ocupada del heap de Java tras forzar la recolección.
+     */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
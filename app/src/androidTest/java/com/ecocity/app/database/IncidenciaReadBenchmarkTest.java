@@ -0,0 +1,157 @@
+package com.ecocity.app.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.model.Incidencia;
+import com.ecocity.app.model.UrgenciaIncidencia;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Mediciones de lectura de la tabla incidencias en el dispositivo. Los tiempos
+ * y tamaños se escriben en logcat (etiqueta {@value #TAG}); las aserciones solo
+ * comprueban que las variantes comparadas leen lo mismo.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IncidenciaReadBenchmarkTest {
+
+    private static final String TAG = "IncidenciaBenchmark";
+    private static final int WARMUP = 2;
+    private static final int RUNS = 5;
+
+    private static Context context() {
+        return InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    private static Cursor queryAll(SQLiteDatabase db) {
+        return db.query(DbHelper.TABLE_INCIDENCIAS, IncidenciaCursorMapper.PROJECTION_ALL, null, null, null, null,
+                DbHelper.COLUMN_ESTADO + ", " + DbHelper.COLUMN_URGENCIA);
+    }
+
+    // Lectura como antes del mapeador: índices resueltos en cada fila y un String
+    // nuevo por valor
+    private static List<Incidencia> mapResolvingPerRow(Cursor cursor) {
+        List<Incidencia> list = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                Incidencia inc = new Incidencia();
+                inc.setLocalId(cursor.getLong(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LOCAL_ID)));
+                inc.setId(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_FIRESTORE_ID)));
+                inc.setTitulo(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_TITULO)));
+                inc.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_DESCRIPCION)));
+                inc.setUrgency(UrgenciaIncidencia.fromCode(
+                        cursor.getInt(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_URGENCIA))));
+                inc.setFotoPath(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_FOTOPATH)));
+                inc.setThumbPath(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_THUMB_PATH)));
+                inc.setPreviewPath(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_PREVIEW_PATH)));
+                inc.setStatus(EstadoIncidencia.fromCode(
+                        cursor.getInt(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_ESTADO))));
+                inc.setLatitud(cursor.getDouble(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LATITUD)));
+                inc.setLongitud(cursor.getDouble(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LONGITUD)));
+                inc.setUserEmail(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_USER_EMAIL)));
+                inc.setVersion(cursor.getLong(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_VERSION)));
+                inc.setIsSynced(cursor.getInt(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_IS_SYNCED)));
+                inc.setSyncAction(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_SYNC_ACTION)));
+                list.add(inc);
+            }
+        } finally {
+            cursor.close();
+        }
+        return list;
+    }
+
+    private static int distinctInstances(List<Incidencia> list) {
+        Map<String, Boolean> seen = new IdentityHashMap<>();
+        for (Incidencia inc : list) {
+            seen.put(inc.getUserEmail(), Boolean.TRUE);
+        }
+        return seen.size();
+    }
+
+    /**
+     * Mapeador con índices por Cursor frente a índices por fila, sobre 10.000
+     * filas.
+     */
+    @Test
+    public void cursorMapper_10kRows() {
+        SQLiteDatabase db = IncidenciaFixture.create(context(), 10_000);
+        try {
+            long[] perRow = new long[RUNS];
+            long[] mapper = new long[RUNS];
+            for (int i = -WARMUP; i < RUNS; i++) {
+                long start = System.nanoTime();
+                List<Incidencia> a = mapResolvingPerRow(queryAll(db));
+                long middle = System.nanoTime();
+                List<Incidencia> b = IncidenciaCursorMapper.mapAll(queryAll(db));
+                long end = System.nanoTime();
+                assertEquals(10_000, a.size());
+                assertEquals(a.size(), b.size());
+                assertEquals(a.get(1234).getTitulo(), b.get(1234).getTitulo());
+                if (i >= 0) {
+                    perRow[i] = middle - start;
+                    mapper[i] = end - middle;
+                }
+            }
+            Log.i(TAG, "10k filas: índices por fila " + IncidenciaFixture.median(perRow) / 1_000_000
+                    + " ms, IncidenciaCursorMapper " + IncidenciaFixture.median(mapper) / 1_000_000 + " ms");
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Heap retenido por 50.000 filas como lista de Incidencia (con y sin pool de
+     * Strings) y como IncidenciaStore.
+     */
+    @Test
+    public void heap_50kRows() {
+        SQLiteDatabase db = IncidenciaFixture.create(context(), 50_000);
+        try {
+            long base = IncidenciaFixture.usedHeap();
+            List<Incidencia> plain = mapResolvingPerRow(queryAll(db));
+            long plainBytes = IncidenciaFixture.usedHeap() - base;
+            int plainEmails = distinctInstances(plain);
+            plain = Collections.emptyList();
+
+            base = IncidenciaFixture.usedHeap();
+            List<Incidencia> pooled = IncidenciaCursorMapper.mapAll(queryAll(db));
+            long pooledBytes = IncidenciaFixture.usedHeap() - base;
+            int pooledEmails = distinctInstances(pooled);
+            assertEquals(50_000, pooled.size());
+            pooled = Collections.emptyList();
+
+            base = IncidenciaFixture.usedHeap();
+            IncidenciaStore store = IncidenciaStore.fromCursor(queryAll(db));
+            long storeBytes = IncidenciaFixture.usedHeap() - base;
+            assertEquals(50_000, store.size());
+
+            // Con el pool, los emails repetidos comparten instancia (salvo los que se
+            // expulsan entre sí de una posición del pool)
+            assertEquals(50_000, plainEmails);
+            assertTrue("instancias de email: " + pooledEmails, pooledEmails < plainEmails / 2);
+
+            Log.i(TAG, "50k filas: List<Incidencia> " + plainBytes / 1024 + " KB (" + plainEmails
+                    + " emails), con StringPool " + pooledBytes / 1024 + " KB (" + pooledEmails
+                    + " emails), IncidenciaStore " + storeBytes / 1024 + " KB (pool de " + store.poolSize()
+                    + " textos)");
+        } finally {
+            db.close();
+        }
+    }
+}
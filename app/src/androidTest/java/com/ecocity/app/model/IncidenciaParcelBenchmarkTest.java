@@ -0,0 +1,76 @@
+package com.ecocity.app.model;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tiempo y tamaño de pasar una Incidencia por Parcel (lo que hace un Intent
+ * al navegar). Los resultados se escriben en logcat (etiqueta {@value #TAG}).
+ */
+@RunWith(AndroidJUnit4.class)
+public class IncidenciaParcelBenchmarkTest {
+
+    private static final String TAG = "IncidenciaBenchmark";
+    private static final int ITERATIONS = 10_000;
+    private static final int RUNS = 5;
+
+    private static Incidencia typical() {
+        Incidencia inc = new Incidencia("Farola fundida en la calle Mayor",
+                "La farola frente al número 12 lleva una semana apagada y la zona queda a oscuras.",
+                UrgenciaIncidencia.MEDIA,
+                "/storage/emulated/0/Android/data/com.ecocity.app/files/Pictures/JPEG_20240101_120000_.jpg",
+                40.4168, -3.7038);
+        inc.setId("7fQm2VbXc9LkP1sT0aZr");
+        inc.setLocalId(42);
+        inc.setStatus(EstadoIncidencia.EN_PROCESO);
+        inc.setUserEmail("vecino@ecocity.es");
+        inc.setUpdatedAt(new Date(1700000000000L));
+        inc.setVersion(3);
+        inc.setIsSynced(1);
+        inc.setSyncAction("UPDATE");
+        return inc;
+    }
+
+    @Test
+    public void parcelRoundTrip() {
+        Incidencia inc = typical();
+
+        Parcel parcel = Parcel.obtain();
+        inc.writeToParcel(parcel, 0);
+        int bytes = parcel.dataSize();
+        parcel.setDataPosition(0);
+        Incidencia copy = Incidencia.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        assertEquals(inc.getTitulo(), copy.getTitulo());
+        assertEquals(inc.getStatus(), copy.getStatus());
+        assertEquals(inc.getUpdatedAt(), copy.getUpdatedAt());
+        assertEquals(inc.getLocalId(), copy.getLocalId());
+
+        long[] samples = new long[RUNS];
+        for (int run = -1; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                Parcel p = Parcel.obtain();
+                inc.writeToParcel(p, 0);
+                p.setDataPosition(0);
+                Incidencia.CREATOR.createFromParcel(p);
+                p.recycle();
+            }
+            if (run >= 0)
+                samples[run] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        Log.i(TAG, "Parcel: " + bytes + " bytes, " + samples[RUNS / 2] / ITERATIONS
+                + " ns por ida y vuelta (mediana de " + RUNS + " x " + ITERATIONS + ")");
+    }
+}
@@ -10,6 +10,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.ecocity.app.database.IncidenciaDAO;
+import com.ecocity.app.database.IncidenciaStore;
 import com.ecocity.app.model.Incidencia;
 import com.ecocity.app.ui.AddIncidenciaActivity;
 import com.ecocity.app.ui.IncidenciaAdapter;
@@ -17,9 +18,6 @@ import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.material.chip.ChipGroup;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
-
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -52,16 +50,48 @@ public class MainActivity extends AppCompatActivity {
     // Acceso a datos
     private IncidenciaDAO incidenciaDAO;
     private IncidenciaAdapter adapter;
-    private List<Incidencia> currentList; // Lista local para ordenar sin recargar
+    private IncidenciaStore currentList; // Datos locales (columnar) para ordenar sin recargar
 
     // Ubicación y Ordenación
     private FusedLocationProviderClient fusedLocationClient;
     private android.location.Location userLocation;
     private ChipGroup chipGroupSort;
 
+    // Motor de vecinos más cercanos: distancias calculadas una vez por ubicación
+    private final com.ecocity.app.utils.ProximityEngine proximityEngine = new com.ecocity.app.utils.ProximityEngine();
+    // Datos sobre los que se cargaron los puntos del motor
+    private IncidenciaStore proximityList;
+    // Filas ordenadas por cercanía al principio de la lista (el resto va detrás
+    // sin ordenar hasta que el scroll se acerca a ellas)
+    private int proximitySorted;
+
+    // Filas que se ordenan por cercanía de una vez (algo más que una pantalla)
+    private static final int PROXIMITY_PAGE_SIZE = 50;
+
+    // Máximo de filas cambiadas que se aplican una a una; por encima se recarga
+    private static final int MAX_INCREMENTAL_ROWS = 20;
+
+    // Búsqueda de texto: se lanza cuando el usuario deja de escribir y muestra
+    // como mucho SEARCH_LIMIT resultados
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    private static final int SEARCH_LIMIT = 200;
+    private String searchQuery = "";
+    private final Runnable runSearch = () -> loadIncidencias(() -> recyclerView.scrollToPosition(0));
+
+    // Radio para el aviso de incidencias cercanas
+    private static final double NEARBY_RADIUS_METERS = 500.0;
+
     // Monitorización de Red para Sincronización Offline-First
     private com.ecocity.app.utils.NetworkMonitor networkMonitor;
 
+    // Recarga del listado ligada a las invalidaciones de la tabla incidencias
+    private final com.ecocity.app.database.ObservedQuery incidenciasQuery = new com.ecocity.app.database.ObservedQuery(
+            this::loadIncidencias, com.ecocity.app.database.DbHelper.TABLE_INCIDENCIAS);
+
+    // Escucha en tiempo real de cambios en la nube (solo mientras la actividad es
+    // visible)
+    private com.google.firebase.firestore.ListenerRegistration liveUpdates;
+
     /**
      * Inicialización de la Actividad.
      */
@@ -88,10 +118,42 @@ public class MainActivity extends AppCompatActivity {
         // Configuración del RecyclerView: Usamos un LayoutManager lineal (lista
         // vertical)
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@androidx.annotation.NonNull RecyclerView rv, int dx, int dy) {
+                if (dy > 0)
+                    extendProximityOrderIfNeeded();
+            }
+        });
 
         incidenciaDAO = new IncidenciaDAO(this);
         incidenciaDAO.open();
 
+        // Los cambios de pocas filas se aplican al adaptador sin recargar la lista
+        incidenciasQuery.setRowChangeHandler(this::applyRowChanges);
+
+        // Búsqueda: con texto, la lista muestra solo los resultados
+        android.widget.EditText etSearch = findViewById(R.id.etSearch);
+        etSearch.addTextChangedListener(new android.text.TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(android.text.Editable s) {
+                String query = s.toString().trim();
+                if (query.equals(searchQuery))
+                    return;
+                searchQuery = query;
+                recyclerView.removeCallbacks(runSearch);
+                recyclerView.postDelayed(runSearch, SEARCH_DEBOUNCE_MS);
+            }
+        });
+
         // Inicializar Location Client
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
 
@@ -139,62 +201,122 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Ciclo de Vida: onResume
-     * Se llama cada vez que la actividad vuelve a primer plano (ej. al volver de
-     * Añadir Incidencia).
-     * Ideal para recargar la lista de datos y mostrar los cambios más recientes.
+     * Ciclo de Vida: onStart
+     * Activa la consulta observada: solo se vuelve a cargar la lista si el DAO
+     * escribió en la tabla de incidencias desde la última carga (p. ej. al volver
+     * de Añadir Incidencia), no cada vez que la pantalla se muestra.
+     * Si el modo en tiempo real está activado, empieza además a recibir los
+     * cambios de la nube; el DAO los agrupa y los guarda en SQLite, y esa
+     * escritura es la que refresca la lista.
      */
     @Override
-    protected void onResume() {
-        super.onResume();
-        loadIncidencias();
+    protected void onStart() {
+        super.onStart();
+        incidenciasQuery.start();
+        if (new com.ecocity.app.utils.SessionManager(this).isLiveUpdatesEnabled()) {
+            liveUpdates = incidenciaDAO.startLiveUpdates(null);
+        }
     }
 
     /**
-     * Carga todas las incidencias de la base de datos y actualiza la lista visual.
+     * Ciclo de Vida: onStop
+     * Pausa la consulta observada y deja de escuchar cambios en tiempo real al
+     * salir de primer plano.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        incidenciasQuery.stop();
+        if (liveUpdates != null) {
+            liveUpdates.remove();
+            liveUpdates = null;
+        }
+    }
+
+    /**
+     * Carga todas las incidencias de la base de datos (o los resultados de la
+     * búsqueda, si hay texto) y actualiza la lista visual.
      * Gestiona la visibilidad de la vista "Vacía" vs el RecyclerView.
      */
     private void loadIncidencias() {
+        loadIncidencias(null);
+    }
+
+    /**
+     * Igual que {@link #loadIncidencias()}, ejecutando onApplied cuando el
+     * adaptador ya muestra los datos nuevos (la carga y el diff son asíncronos).
+     */
+    private void loadIncidencias(Runnable onApplied) {
         // Mostrar estado de carga (opcional, por ahora solo limpiamos/ocultamos)
         // Podríamos poner un ProgressBar aquí
 
-        // Recuperar datos de Firestore asíncronamente
-        incidenciaDAO.getAllIncidencias(new IncidenciaDAO.FirestoreCallback() {
-            @Override
-            public void onDataLoaded(List<Incidencia> lista) {
-                currentList = lista; // Guardar referencia local
-                if (lista.isEmpty()) {
-                    // Si no hay datos: Mostrar mensaje de vacío y ocultar lista
-                    tvEmpty.setVisibility(View.VISIBLE);
-                    recyclerView.setVisibility(View.GONE);
+        // Recuperar datos de SQLite asíncronamente, en formato columnar
+        IncidenciaDAO.StoreCallback onLoaded = lista -> {
+            currentList = lista; // Guardar referencia local
+            if (lista.isEmpty()) {
+                // Si no hay datos: Mostrar mensaje de vacío y ocultar lista
+                tvEmpty.setVisibility(View.VISIBLE);
+                recyclerView.setVisibility(View.GONE);
+            } else {
+                // Si hay datos: Ocultar mensaje vacío y mostrar lista
+                tvEmpty.setVisibility(View.GONE);
+                recyclerView.setVisibility(View.VISIBLE);
+
+                if (adapter == null) {
+                    // Primera vez: Crear adaptador y asignarlo
+                    adapter = new IncidenciaAdapter(lista);
+                    recyclerView.setAdapter(adapter);
+                } else if (chipGroupSort.getCheckedChipId() == R.id.chipNearby && userLocation != null) {
+                    // Mantener el orden por cercanía si es el seleccionado
+                    sortListByProximity();
                 } else {
-                    // Si hay datos: Ocultar mensaje vacío y mostrar lista
-                    tvEmpty.setVisibility(View.GONE);
-                    recyclerView.setVisibility(View.VISIBLE);
-
-                    if (adapter == null) {
-                        // Primera vez: Crear adaptador y asignarlo
-                        adapter = new IncidenciaAdapter(lista);
-                        recyclerView.setAdapter(adapter);
-                    } else {
-                        // Veces subsecuentes: Actualizar datos en el adaptador existente
-                        adapter.updateData(lista);
-                    }
+                    // Veces subsecuentes: Actualizar datos en el adaptador existente
+                    adapter.updateData(lista, onApplied);
                 }
             }
+        };
+        if (searchQuery.isEmpty()) {
+            incidenciaDAO.getIncidenciaStore(onLoaded);
+        } else {
+            incidenciaDAO.searchIncidencias(searchQuery, SEARCH_LIMIT, 0, onLoaded);
+        }
+    }
 
-            @Override
-            public void onFailure(Exception e) {
-                // Manejar error (ej: sin conexión)
-                android.widget.Toast.makeText(MainActivity.this,
-                        "Error al cargar incidencias: " + e.getMessage(),
-                        android.widget.Toast.LENGTH_SHORT).show();
+    /**
+     * Aplica al listado los cambios de filas notificados por el DAO: relee solo
+     * esas incidencias y las mueve, inserta o retira en el adaptador con
+     * notificaciones concretas, sin DiffUtil sobre la lista entera.
+     *
+     * @return false si conviene recargar todo (orden por cercanía, búsqueda
+     *         activa, demasiados cambios o una actualización completa en curso).
+     */
+    private boolean applyRowChanges(com.ecocity.app.database.RowChanges rows) {
+        if (adapter == null || adapter.hasPendingUpdate() || rows.size() > MAX_INCREMENTAL_ROWS
+                || chipGroupSort.getCheckedChipId() == R.id.chipNearby || !searchQuery.isEmpty())
+            return false;
+
+        final long[] ids = rows.getLocalIds();
+        incidenciaDAO.getIncidenciaStore(ids, changed -> {
+            if (changed == null || adapter.hasPendingUpdate()
+                    || chipGroupSort.getCheckedChipId() == R.id.chipNearby) {
+                // Error de lectura o la lista cambió mientras tanto
+                loadIncidencias();
+                return;
             }
-
-            @Override
-            public void onSuccess(String result) {
+            for (long id : ids) {
+                int row = changed.indexOf(id);
+                if (!adapter.applyRowChange(id, row >= 0 ? changed : null, row)) {
+                    // El adaptador no pudo aplicar el cambio: recargar todo
+                    loadIncidencias();
+                    return;
+                }
             }
+            currentList = adapter.getStore();
+            boolean empty = currentList.isEmpty();
+            tvEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+            recyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
         });
+        return true;
     }
 
     /**
@@ -224,6 +346,7 @@ public class MainActivity extends AppCompatActivity {
                     if (location != null) {
                         userLocation = location;
                         sortListByProximity();
+                        showNearbyCount();
                     } else {
                         android.widget.Toast.makeText(this, "No se pudo obtener la ubicación actual",
                                 android.widget.Toast.LENGTH_SHORT).show();
@@ -233,59 +356,127 @@ public class MainActivity extends AppCompatActivity {
                 });
     }
 
+    /**
+     * Ordena por cercanía al usuario con {@link com.ecocity.app.utils.ProximityEngine}:
+     * las distancias se calculan una vez por lista y ubicación (no en cada
+     * comparación) y se reutilizan mientras el usuario no se desplace más del
+     * umbral del motor.
+     * <p>
+     * Solo se ordenan las {@link #PROXIMITY_PAGE_SIZE} más cercanas; el resto se
+     * muestra detrás y se ordena por páginas al hacer scroll
+     * ({@link #extendProximityOrderIfNeeded()}).
+     * </p>
+     */
     private void sortListByProximity() {
         if (currentList == null || userLocation == null)
             return;
 
-        Collections.sort(currentList, new Comparator<Incidencia>() {
-            @Override
-            public int compare(Incidencia o1, Incidencia o2) {
-                float[] results1 = new float[1];
-                float[] results2 = new float[1];
+        int n = currentList.size();
+        if (proximityList != currentList) {
+            // Datos nuevos: el almacén ya tiene las coordenadas en arrays primitivos
+            proximityEngine.setPoints(currentList.getLatitudes(), currentList.getLongitudes(), n);
+            proximityList = currentList;
+        }
+        proximityEngine.updateOrigin(userLocation.getLatitude(), userLocation.getLongitude());
 
-                android.location.Location.distanceBetween(userLocation.getLatitude(), userLocation.getLongitude(),
-                        o1.getLatitud(), o1.getLongitud(), results1);
-                android.location.Location.distanceBetween(userLocation.getLatitude(), userLocation.getLongitude(),
-                        o2.getLatitud(), o2.getLongitud(), results2);
+        proximitySorted = Math.min(n, PROXIMITY_PAGE_SIZE);
+        IncidenciaStore sorted = currentList.select(proximityEngine.orderWithNearestFirst(proximitySorted));
 
-                return Float.compare(results1[0], results2[0]);
+        if (adapter != null) {
+            // Hacer scroll al inicio cuando el adaptador aplique el nuevo orden
+            adapter.updateData(sorted, () -> recyclerView.scrollToPosition(0));
+        }
+    }
+
+    /**
+     * Si alguna de las filas visibles o de la página siguiente todavía no está
+     * ordenada por cercanía, ordena una página más. Las filas ya ordenadas no
+     * cambian de sitio, así que lo que se ve en pantalla no salta.
+     */
+    private void extendProximityOrderIfNeeded() {
+        if (chipGroupSort.getCheckedChipId() != R.id.chipNearby || adapter == null || currentList == null
+                || proximityList != currentList || adapter.hasPendingUpdate()
+                || proximitySorted >= currentList.size())
+            return;
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (last == RecyclerView.NO_POSITION)
+            return;
+        int end = Math.min(adapter.getItemCount(), last + 1 + PROXIMITY_PAGE_SIZE);
+        boolean needed = false;
+        for (int position = layoutManager.findFirstVisibleItemPosition(); position < end; position++) {
+            // Las filas del almacén mostrado >= proximitySorted son las no ordenadas
+            if (position >= 0 && adapter.getStoreRow(position) >= proximitySorted) {
+                needed = true;
+                break;
             }
-        });
+        }
+        if (!needed)
+            return;
 
-        if (adapter != null) {
-            adapter.updateData(currentList);
-            // Hacer scroll al inicio
-            recyclerView.scrollToPosition(0);
+        proximitySorted = Math.min(currentList.size(), proximitySorted + PROXIMITY_PAGE_SIZE);
+        adapter.updateData(currentList.select(proximityEngine.orderWithNearestFirst(proximitySorted)));
+    }
+
+    /**
+     * Informa de cuántas incidencias hay alrededor del usuario. El recuento sale
+     * de SQLite ({@link IncidenciaDAO#getIncidenciasWithinRadius}: índice
+     * espacial y distancia exacta), así que incluye también las que no están
+     * cargadas en la lista (p. ej. durante una búsqueda).
+     */
+    private void showNearbyCount() {
+        if (adapter == null || userLocation == null)
+            return;
+        final double lat = userLocation.getLatitude();
+        final double lng = userLocation.getLongitude();
+        incidenciaDAO.getIncidenciasWithinRadius(lat, lng, NEARBY_RADIUS_METERS,
+                new IncidenciaDAO.FirestoreCallback() {
+                    @Override
+                    public void onDataLoaded(List<Incidencia> cercanas) {
+                        if (isFinishing())
+                            return;
+                        showNearbyCount(lat, lng, cercanas.size());
+                    }
+
+                    @Override
+                    public void onSuccess(String result) {
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                    }
+                });
+    }
+
+    private void showNearbyCount(double lat, double lng, int nearby) {
+        String message = getResources().getQuantityString(R.plurals.msg_nearby_count, nearby, nearby,
+                (int) NEARBY_RADIUS_METERS);
+        if (nearby == 0) {
+            // Ninguna dentro del radio: indicar a qué distancia está la más cercana
+            // de la lista (índice espacial en memoria del adaptador)
+            long[] closest = adapter.getSpatialIndex().nearest(lat, lng, 1);
+            IncidenciaStore store = adapter.getStore();
+            int row = closest.length > 0 ? store.indexOf(closest[0]) : -1;
+            if (row >= 0) {
+                double meters = com.ecocity.app.utils.GeoUtils.distanceMeters(lat, lng,
+                        store.getLatitudes()[row], store.getLongitudes()[row]);
+                message = getString(R.string.msg_nearest_distance, (int) NEARBY_RADIUS_METERS,
+                        (int) Math.round(meters));
+            }
         }
+        android.widget.Toast.makeText(this, message, android.widget.Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * Orden por defecto (Estado > Urgencia). Ya viene resuelto por el ORDER BY de
+     * {@link IncidenciaDAO#getIncidenciaStore}, así que basta con volver a
+     * consultar en lugar de ordenar en Java.
+     */
     private void sortListByUrgency() {
         if (currentList != null && adapter != null) {
-            Collections.sort(currentList, new Comparator<Incidencia>() {
-                @Override
-                public int compare(Incidencia o1, Incidencia o2) {
-                    int p1 = getUrgencyPriority(o1.getUrgencia());
-                    int p2 = getUrgencyPriority(o2.getUrgencia());
-                    return Integer.compare(p1, p2);
-                }
-
-                private int getUrgencyPriority(String urgencia) {
-                    if (urgencia == null)
-                        return 4;
-                    switch (urgencia.toLowerCase(java.util.Locale.getDefault())) {
-                        case "alta":
-                            return 1;
-                        case "media":
-                            return 2;
-                        case "baja":
-                            return 3;
-                        default:
-                            return 4;
-                    }
-                }
-            });
-            adapter.updateData(currentList);
-            recyclerView.scrollToPosition(0);
+            // Hacer scroll al inicio cuando el adaptador aplique el nuevo orden
+            loadIncidencias(() -> recyclerView.scrollToPosition(0));
         }
     }
 
@@ -309,6 +500,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        incidenciasQuery.release();
+        recyclerView.removeCallbacks(runSearch);
         incidenciaDAO.close();
         if (networkMonitor != null) {
             networkMonitor.stopMonitoring();
@@ -1,8 +1,16 @@
 package com.ecocity.app.database;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.model.UrgenciaIncidencia;
+
+import java.util.Locale;
 
 /**
  * Clase Ayudante (Helper) para la gestión base de la base de datos SQLite.
@@ -20,8 +28,10 @@ public class DbHelper extends SQLiteOpenHelper {
     // Nombre del archivo de base de datos
     private static final String DATABASE_NAME = "EcoCity.db";
     // Versión de la base de datos. Incrementar este número si se cambia el esquema
-    // (tablas/columnas).
-    private static final int DATABASE_VERSION = 4;
+    // (tablas/columnas) y añadir el paso correspondiente en onUpgrade.
+    static final int DATABASE_VERSION = 13;
+    // Versión más antigua que se migra conservando los datos
+    private static final int OLDEST_MIGRATABLE_VERSION = 4;
 
     // --- Definición de Tabla Incidencias ---
     public static final String TABLE_INCIDENCIAS = "incidencias";
@@ -29,14 +39,63 @@ public class DbHelper extends SQLiteOpenHelper {
     public static final String COLUMN_FIRESTORE_ID = "firestore_id";
     public static final String COLUMN_TITULO = "titulo";
     public static final String COLUMN_DESCRIPCION = "descripcion";
-    public static final String COLUMN_URGENCIA = "urgencia";
+    public static final String COLUMN_URGENCIA = "urgencia"; // Código de UrgenciaIncidencia (1 = Alta)
     public static final String COLUMN_FOTOPATH = "foto_path"; // Ruta a la imagen
-    public static final String COLUMN_ESTADO = "estado";
+    public static final String COLUMN_THUMB_PATH = "thumb_path"; // Miniatura generada en el dispositivo
+    public static final String COLUMN_PREVIEW_PATH = "preview_path"; // Vista previa mediana generada en el dispositivo
+    public static final String COLUMN_ESTADO = "estado"; // Código de EstadoIncidencia (1 = En proceso)
     public static final String COLUMN_LATITUD = "latitud";
     public static final String COLUMN_LONGITUD = "longitud";
     public static final String COLUMN_USER_EMAIL = "user_email"; // Clave foránea lógica (Email del usuario)
     public static final String COLUMN_IS_SYNCED = "is_synced"; // 0 o 1
     public static final String COLUMN_SYNC_ACTION = "sync_action"; // INSERT, UPDATE, DELETE
+    public static final String COLUMN_UPDATED_AT = "updated_at"; // Marca de tiempo del servidor (ms), 0 = nunca subida
+    public static final String COLUMN_VERSION = "version"; // Última versión del documento conocida del servidor
+    public static final String INDEX_INCIDENCIAS_FIRESTORE_ID = "idx_incidencias_firestore_id";
+    // Los códigos de estado y urgencia son a la vez su prioridad de ordenación,
+    // así que ORDER BY estado, urgencia se resuelve recorriendo este índice
+    public static final String INDEX_INCIDENCIAS_PRIORITY = "idx_incidencias_priority";
+
+    // --- Definición de Índice de Texto Completo (FTS4) ---
+    // Tabla virtual de contenido externo: solo guarda el índice invertido de
+    // titulo/descripcion; el texto se lee de la tabla incidencias (docid = local_id)
+    public static final String TABLE_INCIDENCIAS_FTS = "incidencias_fts";
+
+    // --- Definición de Índice Espacial (R*Tree) ---
+    // Tabla lateral con una caja por incidencia (id = local_id). Solo contiene las
+    // incidencias con ubicación registrada (lat/lng distintas de 0,0)
+    public static final String TABLE_INCIDENCIAS_RTREE = "incidencias_rtree";
+    public static final String COLUMN_RTREE_ID = "id";
+    public static final String COLUMN_RTREE_MIN_LAT = "min_lat";
+    public static final String COLUMN_RTREE_MAX_LAT = "max_lat";
+    public static final String COLUMN_RTREE_MIN_LNG = "min_lng";
+    public static final String COLUMN_RTREE_MAX_LNG = "max_lng";
+    // Índice B-tree de respaldo si el SQLite del dispositivo no incluye R*Tree
+    public static final String INDEX_INCIDENCIAS_LOCATION = "idx_incidencias_location";
+
+    // --- Definición de Tabla Contadores (estadísticas incrementales) ---
+    public static final String TABLE_COUNTERS = "counters";
+    public static final String COLUMN_COUNTER_SCOPE = "scope"; // '' = global, o email del usuario
+    public static final String COLUMN_COUNTER_DIMENSION = "dimension"; // total, estado, urgencia
+    public static final String COLUMN_COUNTER_KEY = "counter_key"; // Valor de la dimensión ('' para total)
+    public static final String COLUMN_COUNTER_VALUE = "value";
+
+    // --- Definición de Tabla Outbox (cola persistente de cambios a subir) ---
+    // Cada escritura local añade una operación con número de secuencia creciente;
+    // la fila se borra cuando Firestore confirma el cambio
+    public static final String TABLE_OUTBOX = "outbox";
+    public static final String COLUMN_OUTBOX_SEQ = "seq";
+    public static final String COLUMN_OUTBOX_LOCAL_ID = "local_id";
+    public static final String COLUMN_OUTBOX_OPERATION = "operation"; // INSERT, UPDATE, DELETE
+    public static final String COLUMN_OUTBOX_FIELDS = "changed_fields"; // Máscara de campos modificados
+    public static final String COLUMN_OUTBOX_CREATED_AT = "created_at";
+    public static final String INDEX_OUTBOX_LOCAL_ID = "idx_outbox_local_id";
+
+    // --- Definición de Tabla Estado de Sincronización (clave/valor) ---
+    // Guarda el cursor (marca de agua) de la descarga incremental desde Firestore
+    public static final String TABLE_SYNC_STATE = "sync_state";
+    public static final String COLUMN_SYNC_STATE_KEY = "state_key";
+    public static final String COLUMN_SYNC_STATE_VALUE = "state_value";
 
     // --- Definición de Tabla Usuarios ---
     public static final String TABLE_USERS = "users";
@@ -53,14 +112,122 @@ public class DbHelper extends SQLiteOpenHelper {
             COLUMN_FIRESTORE_ID + " TEXT, " +
             COLUMN_TITULO + " TEXT, " +
             COLUMN_DESCRIPCION + " TEXT, " +
-            COLUMN_URGENCIA + " TEXT, " +
+            COLUMN_URGENCIA + " INTEGER NOT NULL DEFAULT 3, " +
             COLUMN_FOTOPATH + " TEXT, " +
-            COLUMN_ESTADO + " TEXT, " +
+            COLUMN_THUMB_PATH + " TEXT, " +
+            COLUMN_PREVIEW_PATH + " TEXT, " +
+            COLUMN_ESTADO + " INTEGER NOT NULL DEFAULT 2, " +
             COLUMN_LATITUD + " REAL, " +
             COLUMN_LONGITUD + " REAL, " +
             COLUMN_USER_EMAIL + " TEXT, " +
             COLUMN_IS_SYNCED + " INTEGER DEFAULT 0, " +
-            COLUMN_SYNC_ACTION + " TEXT DEFAULT 'INSERT'" +
+            COLUMN_SYNC_ACTION + " TEXT DEFAULT 'INSERT', " +
+            COLUMN_UPDATED_AT + " INTEGER DEFAULT 0, " +
+            COLUMN_VERSION + " INTEGER DEFAULT 0" +
+            ");";
+
+    // Índice compuesto que permite a SQLite devolver las filas ya ordenadas
+    // (ORDER BY estado, urgencia) recorriendo el índice en lugar de ordenar
+    private static final String INDEX_CREATE_INCIDENCIAS_PRIORITY = "CREATE INDEX " + INDEX_INCIDENCIAS_PRIORITY
+            + " ON " + TABLE_INCIDENCIAS + " (" +
+            COLUMN_ESTADO + ", " +
+            COLUMN_URGENCIA +
+            ");";
+
+    // Índice para localizar la fila local de un documento descargado de Firestore
+    private static final String INDEX_CREATE_INCIDENCIAS_FIRESTORE_ID = "CREATE INDEX "
+            + INDEX_INCIDENCIAS_FIRESTORE_ID + " ON " + TABLE_INCIDENCIAS + " (" +
+            COLUMN_FIRESTORE_ID +
+            ");";
+
+    // SQL para crear el índice FTS. El tokenizador unicode61 elimina diacríticos,
+    // por lo que "camion" encuentra "camión"
+    private static final String TABLE_CREATE_INCIDENCIAS_FTS = "CREATE VIRTUAL TABLE " + TABLE_INCIDENCIAS_FTS
+            + " USING fts4(content=\"" + TABLE_INCIDENCIAS + "\", " +
+            COLUMN_TITULO + ", " +
+            COLUMN_DESCRIPCION + ", " +
+            "tokenize=unicode61" +
+            ");";
+
+    // Triggers que mantienen el índice FTS sincronizado con la tabla incidencias
+    private static final String[] TRIGGERS_INCIDENCIAS_FTS = {
+            "CREATE TRIGGER " + TABLE_INCIDENCIAS_FTS + "_bu BEFORE UPDATE OF " + COLUMN_TITULO + ", "
+                    + COLUMN_DESCRIPCION + " ON " + TABLE_INCIDENCIAS + " BEGIN DELETE FROM " + TABLE_INCIDENCIAS_FTS
+                    + " WHERE docid = old." + COLUMN_LOCAL_ID + "; END;",
+            "CREATE TRIGGER " + TABLE_INCIDENCIAS_FTS + "_bd BEFORE DELETE ON " + TABLE_INCIDENCIAS
+                    + " BEGIN DELETE FROM " + TABLE_INCIDENCIAS_FTS + " WHERE docid = old." + COLUMN_LOCAL_ID
+                    + "; END;",
+            "CREATE TRIGGER " + TABLE_INCIDENCIAS_FTS + "_au AFTER UPDATE OF " + COLUMN_TITULO + ", "
+                    + COLUMN_DESCRIPCION + " ON " + TABLE_INCIDENCIAS + " BEGIN INSERT INTO " + TABLE_INCIDENCIAS_FTS
+                    + " (docid, " + COLUMN_TITULO + ", " + COLUMN_DESCRIPCION + ") VALUES (new." + COLUMN_LOCAL_ID
+                    + ", new." + COLUMN_TITULO + ", new." + COLUMN_DESCRIPCION + "); END;",
+            "CREATE TRIGGER " + TABLE_INCIDENCIAS_FTS + "_ai AFTER INSERT ON " + TABLE_INCIDENCIAS
+                    + " BEGIN INSERT INTO " + TABLE_INCIDENCIAS_FTS + " (docid, " + COLUMN_TITULO + ", "
+                    + COLUMN_DESCRIPCION + ") VALUES (new." + COLUMN_LOCAL_ID + ", new." + COLUMN_TITULO
+                    + ", new." + COLUMN_DESCRIPCION + "); END;"
+    };
+
+    // SQL para crear el índice espacial R*Tree
+    private static final String TABLE_CREATE_INCIDENCIAS_RTREE = "CREATE VIRTUAL TABLE " + TABLE_INCIDENCIAS_RTREE
+            + " USING rtree(" +
+            COLUMN_RTREE_ID + ", " +
+            COLUMN_RTREE_MIN_LAT + ", " + COLUMN_RTREE_MAX_LAT + ", " +
+            COLUMN_RTREE_MIN_LNG + ", " + COLUMN_RTREE_MAX_LNG +
+            ");";
+
+    // Inserción en el R*Tree de la fila "new" si tiene ubicación
+    private static final String RTREE_INSERT_NEW = "INSERT INTO " + TABLE_INCIDENCIAS_RTREE + " SELECT new."
+            + COLUMN_LOCAL_ID + ", new." + COLUMN_LATITUD + ", new." + COLUMN_LATITUD + ", new." + COLUMN_LONGITUD
+            + ", new." + COLUMN_LONGITUD + " WHERE new." + COLUMN_LATITUD + " != 0 OR new." + COLUMN_LONGITUD
+            + " != 0;";
+
+    // Triggers que mantienen el R*Tree sincronizado con la tabla incidencias
+    private static final String[] TRIGGERS_INCIDENCIAS_RTREE = {
+            "CREATE TRIGGER " + TABLE_INCIDENCIAS_RTREE + "_ai AFTER INSERT ON " + TABLE_INCIDENCIAS + " BEGIN "
+                    + RTREE_INSERT_NEW + " END;",
+            "CREATE TRIGGER " + TABLE_INCIDENCIAS_RTREE + "_au AFTER UPDATE OF " + COLUMN_LATITUD + ", "
+                    + COLUMN_LONGITUD + " ON " + TABLE_INCIDENCIAS + " BEGIN DELETE FROM " + TABLE_INCIDENCIAS_RTREE
+                    + " WHERE " + COLUMN_RTREE_ID + " = old." + COLUMN_LOCAL_ID + "; " + RTREE_INSERT_NEW + " END;",
+            "CREATE TRIGGER " + TABLE_INCIDENCIAS_RTREE + "_ad AFTER DELETE ON " + TABLE_INCIDENCIAS
+                    + " BEGIN DELETE FROM " + TABLE_INCIDENCIAS_RTREE + " WHERE " + COLUMN_RTREE_ID + " = old."
+                    + COLUMN_LOCAL_ID + "; END;"
+    };
+
+    private static final String INDEX_CREATE_INCIDENCIAS_LOCATION = "CREATE INDEX " + INDEX_INCIDENCIAS_LOCATION
+            + " ON " + TABLE_INCIDENCIAS + " (" +
+            COLUMN_LATITUD + ", " +
+            COLUMN_LONGITUD +
+            ");";
+
+    // SQL para crear la tabla de contadores (clave primaria = búsqueda O(1))
+    private static final String TABLE_CREATE_COUNTERS = "CREATE TABLE " + TABLE_COUNTERS + " (" +
+            COLUMN_COUNTER_SCOPE + " TEXT NOT NULL, " +
+            COLUMN_COUNTER_DIMENSION + " TEXT NOT NULL, " +
+            COLUMN_COUNTER_KEY + " TEXT NOT NULL, " +
+            COLUMN_COUNTER_VALUE + " INTEGER NOT NULL DEFAULT 0, " +
+            "PRIMARY KEY (" + COLUMN_COUNTER_SCOPE + ", " + COLUMN_COUNTER_DIMENSION + ", " + COLUMN_COUNTER_KEY + ")" +
+            ");";
+
+    // SQL para crear la tabla outbox (AUTOINCREMENT garantiza que seq nunca se
+    // reutiliza, aunque la cola se vacíe)
+    private static final String TABLE_CREATE_OUTBOX = "CREATE TABLE " + TABLE_OUTBOX + " (" +
+            COLUMN_OUTBOX_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            COLUMN_OUTBOX_LOCAL_ID + " INTEGER NOT NULL, " +
+            COLUMN_OUTBOX_OPERATION + " TEXT NOT NULL, " +
+            COLUMN_OUTBOX_FIELDS + " INTEGER NOT NULL DEFAULT 0, " +
+            COLUMN_OUTBOX_CREATED_AT + " INTEGER NOT NULL" +
+            ");";
+
+    private static final String INDEX_CREATE_OUTBOX_LOCAL_ID = "CREATE INDEX " + INDEX_OUTBOX_LOCAL_ID
+            + " ON " + TABLE_OUTBOX + " (" +
+            COLUMN_OUTBOX_LOCAL_ID + ", " +
+            COLUMN_OUTBOX_SEQ +
+            ");";
+
+    // SQL para crear la tabla de estado de sincronización
+    private static final String TABLE_CREATE_SYNC_STATE = "CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+            COLUMN_SYNC_STATE_KEY + " TEXT PRIMARY KEY, " +
+            COLUMN_SYNC_STATE_VALUE + " TEXT" +
             ");";
 
     // SQL para crear la tabla de usuarios
@@ -71,6 +238,9 @@ public class DbHelper extends SQLiteOpenHelper {
             COLUMN_PASSWORD + " TEXT" +
             ");";
 
+    // Instancia única por proceso (ver getInstance)
+    private static DbHelper instance;
+
     /**
      * Constructor del Helper.
      * 
@@ -80,6 +250,20 @@ public class DbHelper extends SQLiteOpenHelper {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    /**
+     * Helper compartido por todos los DAO. Así hay una sola conexión a
+     * EcoCity.db en el proceso y que una pantalla se cierre no cierra la base de
+     * datos que usan las demás ni la sincronización en curso. No debe cerrarse.
+     *
+     * @param context Cualquier contexto (se usa el de la aplicación).
+     */
+    public static synchronized DbHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DbHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
     /**
      * Se llama cuando la base de datos se crea por primera vez.
      * Aquí ejecutamos los comandos SQL para crear las tablas.
@@ -89,15 +273,31 @@ public class DbHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(TABLE_CREATE_INCIDENCIAS);
+        db.execSQL(INDEX_CREATE_INCIDENCIAS_PRIORITY);
+        db.execSQL(INDEX_CREATE_INCIDENCIAS_FIRESTORE_ID);
+        db.execSQL(TABLE_CREATE_INCIDENCIAS_FTS);
+        for (String trigger : TRIGGERS_INCIDENCIAS_FTS) {
+            db.execSQL(trigger);
+        }
+        createSpatialIndex(db);
+        db.execSQL(TABLE_CREATE_COUNTERS);
+        db.execSQL(TABLE_CREATE_OUTBOX);
+        db.execSQL(INDEX_CREATE_OUTBOX_LOCAL_ID);
+        db.execSQL(TABLE_CREATE_SYNC_STATE);
         db.execSQL(TABLE_CREATE_USERS);
     }
 
     /**
      * Se llama cuando se detecta que la versión de la base de datos ha cambiado
      * (DATABASE_VERSION).
-     * Útil para migraciones. En este caso básico, eliminamos las tablas antiguas y
-     * las recreamos.
-     * ¡CUIDADO! Esto borra los datos existentes.
+     * <p>
+     * Aplica en orden un paso por cada versión posterior a oldVersion, añadiendo
+     * tablas, columnas e índices sin borrar los datos (incidencias sin subir,
+     * usuarios...). Todo se ejecuta en la transacción de SQLiteOpenHelper: si un
+     * paso falla, la base de datos queda en oldVersion. Solo las bases de datos
+     * anteriores a {@link #OLDEST_MIGRATABLE_VERSION}, cuyo esquema no se conoce,
+     * se recrean desde cero.
+     * </p>
      * 
      * @param db         Instancia de la base de datos.
      * @param oldVersion Versión anterior.
@@ -105,11 +305,187 @@ public class DbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Eliminar tablas antiguas si existen
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            dropAll(db);
+            onCreate(db);
+            return;
+        }
+        // v5 añadió status_priority/urgency_priority, que la v12 sustituyó por los
+        // códigos de estado y urgencia: la reconstrucción de la v12 cubre ambas
+        if (oldVersion < 6) {
+            // Contadores (se rellenan al final)
+            db.execSQL(TABLE_CREATE_COUNTERS);
+        }
+        if (oldVersion < 7) {
+            // Índice de texto completo sobre las incidencias existentes
+            db.execSQL(TABLE_CREATE_INCIDENCIAS_FTS);
+            for (String trigger : TRIGGERS_INCIDENCIAS_FTS) {
+                db.execSQL(trigger);
+            }
+            db.execSQL("INSERT INTO " + TABLE_INCIDENCIAS_FTS + " (" + TABLE_INCIDENCIAS_FTS + ") VALUES ('rebuild')");
+        }
+        if (oldVersion < 8) {
+            // Índice espacial sobre las incidencias existentes
+            createSpatialIndex(db);
+            if (hasRTree(db)) {
+                db.execSQL("INSERT INTO " + TABLE_INCIDENCIAS_RTREE + " SELECT " + COLUMN_LOCAL_ID + ", "
+                        + COLUMN_LATITUD + ", " + COLUMN_LATITUD + ", " + COLUMN_LONGITUD + ", " + COLUMN_LONGITUD
+                        + " FROM " + TABLE_INCIDENCIAS + " WHERE " + COLUMN_LATITUD + " != 0 OR "
+                        + COLUMN_LONGITUD + " != 0");
+            }
+        }
+        if (oldVersion < 9) {
+            // Outbox (ya con changed_fields de la v11). Las incidencias pendientes de
+            // subir se encolan completas, como las subía la versión anterior
+            db.execSQL(TABLE_CREATE_OUTBOX);
+            db.execSQL(INDEX_CREATE_OUTBOX_LOCAL_ID);
+            db.execSQL("INSERT INTO " + TABLE_OUTBOX + " (" + COLUMN_OUTBOX_LOCAL_ID + ", "
+                    + COLUMN_OUTBOX_OPERATION + ", " + COLUMN_OUTBOX_FIELDS + ", " + COLUMN_OUTBOX_CREATED_AT
+                    + ") SELECT " + COLUMN_LOCAL_ID + ", IFNULL(" + COLUMN_SYNC_ACTION + ", 'INSERT'), "
+                    + SyncOutbox.FIELDS_ALL + ", " + System.currentTimeMillis() + " FROM " + TABLE_INCIDENCIAS
+                    + " WHERE " + COLUMN_IS_SYNCED + " = 0 ORDER BY " + COLUMN_LOCAL_ID);
+            // Sin acción, la fila quedaría fuera de los filtros "!= 'DELETE'" (NULL no
+            // compara) y de los contadores: se trata como INSERT, igual que arriba
+            db.execSQL("UPDATE " + TABLE_INCIDENCIAS + " SET " + COLUMN_SYNC_ACTION + " = 'INSERT' WHERE "
+                    + COLUMN_SYNC_ACTION + " IS NULL");
+        }
+        if (oldVersion < 10) {
+            // Descarga incremental: marca de tiempo, índice por documento y cursor
+            db.execSQL("ALTER TABLE " + TABLE_INCIDENCIAS + " ADD COLUMN " + COLUMN_UPDATED_AT
+                    + " INTEGER DEFAULT 0");
+            db.execSQL(INDEX_CREATE_INCIDENCIAS_FIRESTORE_ID);
+            db.execSQL(TABLE_CREATE_SYNC_STATE);
+        }
+        if (oldVersion < 11) {
+            // Versiones de documento y máscara de campos del outbox
+            db.execSQL("ALTER TABLE " + TABLE_INCIDENCIAS + " ADD COLUMN " + COLUMN_VERSION + " INTEGER DEFAULT 0");
+            if (oldVersion >= 9) {
+                db.execSQL("ALTER TABLE " + TABLE_OUTBOX + " ADD COLUMN " + COLUMN_OUTBOX_FIELDS
+                        + " INTEGER NOT NULL DEFAULT 0");
+                // Hasta ahora se subía la incidencia entera
+                db.execSQL("UPDATE " + TABLE_OUTBOX + " SET " + COLUMN_OUTBOX_FIELDS + " = " + SyncOutbox.FIELDS_ALL);
+            }
+        }
+        if (oldVersion < 12) {
+            // Estado y urgencia pasan de texto a código (ya incluye las columnas de
+            // la v13)
+            rebuildIncidenciasWithCodes(db);
+        } else if (oldVersion < 13) {
+            // Rutas de las versiones reducidas de la foto
+            db.execSQL("ALTER TABLE " + TABLE_INCIDENCIAS + " ADD COLUMN " + COLUMN_THUMB_PATH + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_INCIDENCIAS + " ADD COLUMN " + COLUMN_PREVIEW_PATH + " TEXT");
+        }
+        if (oldVersion < 12) {
+            // Contadores nuevos o con claves de texto: se recalculan con los códigos
+            IncidenciaCounters.rebuild(db);
+        }
+    }
+
+    /**
+     * Recrea la tabla incidencias con el esquema actual convirtiendo estado y
+     * urgencia de texto a código (procedimiento de SQLite para cambios que ALTER
+     * TABLE no admite: tabla nueva, copia, borrado y renombrado). Se conservan
+     * los local_id, así que el índice FTS, el R*Tree y el outbox siguen siendo
+     * válidos; los índices y triggers de la tabla se vuelven a crear.
+     */
+    private void rebuildIncidenciasWithCodes(SQLiteDatabase db) {
+        String newTable = TABLE_INCIDENCIAS + "_new";
+        db.execSQL(TABLE_CREATE_INCIDENCIAS.replaceFirst(TABLE_INCIDENCIAS, newTable));
+        String columns = COLUMN_LOCAL_ID + ", " + COLUMN_FIRESTORE_ID + ", " + COLUMN_TITULO + ", "
+                + COLUMN_DESCRIPCION + ", " + COLUMN_FOTOPATH + ", " + COLUMN_LATITUD + ", " + COLUMN_LONGITUD + ", "
+                + COLUMN_USER_EMAIL + ", " + COLUMN_IS_SYNCED + ", " + COLUMN_SYNC_ACTION + ", " + COLUMN_UPDATED_AT
+                + ", " + COLUMN_VERSION;
+        db.execSQL("INSERT INTO " + newTable + " (" + columns + ", " + COLUMN_ESTADO + ", " + COLUMN_URGENCIA
+                + ") SELECT " + columns + ", " + estadoCodeSql(COLUMN_ESTADO) + ", " + urgenciaCodeSql(COLUMN_URGENCIA)
+                + " FROM " + TABLE_INCIDENCIAS);
+        db.execSQL("DROP TABLE " + TABLE_INCIDENCIAS);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + TABLE_INCIDENCIAS);
+
+        db.execSQL(INDEX_CREATE_INCIDENCIAS_PRIORITY);
+        db.execSQL(INDEX_CREATE_INCIDENCIAS_FIRESTORE_ID);
+        for (String trigger : TRIGGERS_INCIDENCIAS_FTS) {
+            db.execSQL(trigger);
+        }
+        if (hasRTree(db)) {
+            for (String trigger : TRIGGERS_INCIDENCIAS_RTREE) {
+                db.execSQL(trigger);
+            }
+        } else {
+            db.execSQL(INDEX_CREATE_INCIDENCIAS_LOCATION);
+        }
+    }
+
+    /**
+     * Expresión SQL que convierte la etiqueta de estado de una columna en su
+     * código, con las mismas reglas que {@link EstadoIncidencia#fromLabel}.
+     */
+    private static String estadoCodeSql(String column) {
+        StringBuilder sql = new StringBuilder("CASE LOWER(TRIM(").append(column).append("))");
+        for (EstadoIncidencia estado : EstadoIncidencia.values()) {
+            sql.append(" WHEN '").append(estado.getLabel().toLowerCase(Locale.ROOT)).append("' THEN ")
+                    .append(estado.getCode());
+        }
+        return sql.append(" ELSE ").append(EstadoIncidencia.DEFAULT.getCode()).append(" END").toString();
+    }
+
+    /**
+     * Igual que {@link #estadoCodeSql} para la urgencia.
+     */
+    private static String urgenciaCodeSql(String column) {
+        StringBuilder sql = new StringBuilder("CASE LOWER(TRIM(").append(column).append("))");
+        for (UrgenciaIncidencia urgencia : UrgenciaIncidencia.values()) {
+            sql.append(" WHEN '").append(urgencia.getLabel().toLowerCase(Locale.ROOT)).append("' THEN ")
+                    .append(urgencia.getCode());
+        }
+        return sql.append(" ELSE ").append(UrgenciaIncidencia.DEFAULT.getCode()).append(" END").toString();
+    }
+
+    /**
+     * Elimina todas las tablas (solo para versiones demasiado antiguas para
+     * migrarlas).
+     */
+    private void dropAll(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_INCIDENCIAS_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_INCIDENCIAS_RTREE);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_INCIDENCIAS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_COUNTERS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_OUTBOX);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
+    }
+
+    /**
+     * Crea el índice espacial. El módulo R*Tree no está compilado en el SQLite de
+     * todas las versiones de Android; si no existe, se crea un índice B-tree
+     * sobre (latitud, longitud) y las consultas espaciales usan ese camino.
+     *
+     * @param db Instancia de la base de datos.
+     */
+    private void createSpatialIndex(SQLiteDatabase db) {
+        try {
+            db.execSQL(TABLE_CREATE_INCIDENCIAS_RTREE);
+            for (String trigger : TRIGGERS_INCIDENCIAS_RTREE) {
+                db.execSQL(trigger);
+            }
+        } catch (SQLException e) {
+            Log.w("DbHelper", "R*Tree no disponible, se usa índice B-tree: " + e.getMessage());
+            db.execSQL(INDEX_CREATE_INCIDENCIAS_LOCATION);
+        }
+    }
 
-        // Crear de nuevo
-        onCreate(db);
+    /**
+     * Indica si la base de datos dispone de la tabla R*Tree.
+     *
+     * @param db Instancia de la base de datos.
+     * @return true si existe {@link #TABLE_INCIDENCIAS_RTREE}.
+     */
+    public static boolean hasRTree(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[] { TABLE_INCIDENCIAS_RTREE });
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 }
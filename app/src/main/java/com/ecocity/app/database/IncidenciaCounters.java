@@ -0,0 +1,174 @@
+package com.ecocity.app.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.model.IncidenciaStats;
+import com.ecocity.app.model.UrgenciaIncidencia;
+
+/**
+ * Contadores de incidencias mantenidos de forma incremental en la tabla
+ * {@link DbHelper#TABLE_COUNTERS}.
+ * <p>
+ * Cada escritura de {@link IncidenciaDAO} ajusta, dentro de su misma
+ * transacción, los contadores globales y los del usuario autor (total, por
+ * estado y por urgencia). Así cualquier estadística es una búsqueda por clave
+ * primaria en lugar de un recorrido de la tabla incidencias.
+ * </p>
+ * <p>
+ * Solo cuentan las incidencias activas (sync_action distinto de DELETE). Los
+ * contadores globales usan el ámbito {@link #SCOPE_GLOBAL}.
+ * </p>
+ */
+final class IncidenciaCounters {
+
+    // Ámbito de los contadores globales (el resto usan el email del usuario)
+    static final String SCOPE_GLOBAL = "";
+
+    // Dimensiones contadas (la clave de estado y urgencia es el código del enum)
+    static final String DIMENSION_TOTAL = "total";
+    static final String DIMENSION_ESTADO = "estado";
+    static final String DIMENSION_URGENCIA = "urgencia";
+
+    private static final String ACTIVE = DbHelper.COLUMN_SYNC_ACTION + " != 'DELETE'";
+    private static final String FROM_ACTIVE = " FROM " + DbHelper.TABLE_INCIDENCIAS + " WHERE " + ACTIVE;
+    private static final String HAS_USER = " AND " + DbHelper.COLUMN_USER_EMAIL + " IS NOT NULL";
+
+    // Valores esperados calculados desde cero (scope, dimension, key, value). Los
+    // códigos se convierten a texto para compararlos con counter_key
+    private static final String EXPECTED_SQL = "SELECT * FROM ("
+            + "SELECT '' AS s, '" + DIMENSION_TOTAL + "' AS d, '' AS k, COUNT(*) AS v" + FROM_ACTIVE
+            + " UNION ALL SELECT '', '" + DIMENSION_ESTADO + "', CAST(" + DbHelper.COLUMN_ESTADO
+            + " AS TEXT), COUNT(*)" + FROM_ACTIVE + " GROUP BY " + DbHelper.COLUMN_ESTADO
+            + " UNION ALL SELECT '', '" + DIMENSION_URGENCIA + "', CAST(" + DbHelper.COLUMN_URGENCIA
+            + " AS TEXT), COUNT(*)" + FROM_ACTIVE + " GROUP BY " + DbHelper.COLUMN_URGENCIA
+            + " UNION ALL SELECT " + DbHelper.COLUMN_USER_EMAIL + ", '" + DIMENSION_TOTAL + "', '', COUNT(*)"
+            + FROM_ACTIVE + HAS_USER + " GROUP BY " + DbHelper.COLUMN_USER_EMAIL
+            + " UNION ALL SELECT " + DbHelper.COLUMN_USER_EMAIL + ", '" + DIMENSION_ESTADO + "', CAST("
+            + DbHelper.COLUMN_ESTADO + " AS TEXT), COUNT(*)" + FROM_ACTIVE + HAS_USER
+            + " GROUP BY " + DbHelper.COLUMN_USER_EMAIL + ", " + DbHelper.COLUMN_ESTADO
+            + " UNION ALL SELECT " + DbHelper.COLUMN_USER_EMAIL + ", '" + DIMENSION_URGENCIA + "', CAST("
+            + DbHelper.COLUMN_URGENCIA + " AS TEXT), COUNT(*)" + FROM_ACTIVE + HAS_USER
+            + " GROUP BY " + DbHelper.COLUMN_USER_EMAIL + ", " + DbHelper.COLUMN_URGENCIA
+            + ") WHERE v > 0";
+
+    // Contadores actuales (los que han bajado a cero equivalen a no existir)
+    private static final String ACTUAL_SQL = "SELECT " + DbHelper.COLUMN_COUNTER_SCOPE + ", "
+            + DbHelper.COLUMN_COUNTER_DIMENSION + ", " + DbHelper.COLUMN_COUNTER_KEY + ", "
+            + DbHelper.COLUMN_COUNTER_VALUE + " FROM " + DbHelper.TABLE_COUNTERS
+            + " WHERE " + DbHelper.COLUMN_COUNTER_VALUE + " != 0";
+
+    private IncidenciaCounters() {
+    }
+
+    /**
+     * Suma (o resta) una incidencia a todos los contadores que le afectan.
+     * Debe llamarse dentro de la transacción de la escritura correspondiente.
+     *
+     * @param db        Base de datos en transacción.
+     * @param userEmail Autor de la incidencia (puede ser null).
+     * @param estado    Estado de la incidencia.
+     * @param urgencia  Urgencia de la incidencia.
+     * @param delta     +1 al añadir una incidencia activa, -1 al retirarla.
+     */
+    static void apply(SQLiteDatabase db, String userEmail, EstadoIncidencia estado, UrgenciaIncidencia urgencia,
+            int delta) {
+        applyScope(db, SCOPE_GLOBAL, estado, urgencia, delta);
+        if (userEmail != null) {
+            applyScope(db, userEmail, estado, urgencia, delta);
+        }
+    }
+
+    private static void applyScope(SQLiteDatabase db, String scope, EstadoIncidencia estado,
+            UrgenciaIncidencia urgencia, int delta) {
+        increment(db, scope, DIMENSION_TOTAL, "", delta);
+        increment(db, scope, DIMENSION_ESTADO, key(estado), delta);
+        increment(db, scope, DIMENSION_URGENCIA, String.valueOf(urgencia.getCode()), delta);
+    }
+
+    /**
+     * Clave del contador de un estado.
+     */
+    static String key(EstadoIncidencia estado) {
+        return String.valueOf(estado.getCode());
+    }
+
+    private static void increment(SQLiteDatabase db, String scope, String dimension, String key, int delta) {
+        db.execSQL("INSERT OR IGNORE INTO " + DbHelper.TABLE_COUNTERS + " (" +
+                DbHelper.COLUMN_COUNTER_SCOPE + ", " + DbHelper.COLUMN_COUNTER_DIMENSION + ", " +
+                DbHelper.COLUMN_COUNTER_KEY + ", " + DbHelper.COLUMN_COUNTER_VALUE + ") VALUES (?, ?, ?, 0)",
+                new Object[] { scope, dimension, key });
+        db.execSQL("UPDATE " + DbHelper.TABLE_COUNTERS + " SET " + DbHelper.COLUMN_COUNTER_VALUE + " = " +
+                DbHelper.COLUMN_COUNTER_VALUE + " + ? WHERE " + DbHelper.COLUMN_COUNTER_SCOPE + " = ? AND " +
+                DbHelper.COLUMN_COUNTER_DIMENSION + " = ? AND " + DbHelper.COLUMN_COUNTER_KEY + " = ?",
+                new Object[] { delta, scope, dimension, key });
+    }
+
+    /**
+     * Lectura O(1) de un contador concreto.
+     *
+     * @return Valor del contador o 0 si no existe.
+     */
+    static int get(SQLiteDatabase db, String scope, String dimension, String key) {
+        Cursor cursor = db.query(DbHelper.TABLE_COUNTERS, new String[] { DbHelper.COLUMN_COUNTER_VALUE },
+                DbHelper.COLUMN_COUNTER_SCOPE + " = ? AND " + DbHelper.COLUMN_COUNTER_DIMENSION + " = ? AND " +
+                        DbHelper.COLUMN_COUNTER_KEY + " = ?",
+                new String[] { scope, dimension, key }, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Resumen por estado de un ámbito (usuario o global) leído de los contadores.
+     */
+    static IncidenciaStats getStats(SQLiteDatabase db, String scope) {
+        IncidenciaStats stats = new IncidenciaStats();
+        Cursor cursor = db.query(DbHelper.TABLE_COUNTERS,
+                new String[] { DbHelper.COLUMN_COUNTER_KEY, DbHelper.COLUMN_COUNTER_VALUE },
+                DbHelper.COLUMN_COUNTER_SCOPE + " = ? AND " + DbHelper.COLUMN_COUNTER_DIMENSION + " = ?",
+                new String[] { scope, DIMENSION_ESTADO }, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                stats.add(EstadoIncidencia.fromCode(cursor.getInt(0)), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return stats;
+    }
+
+    /**
+     * Comprueba que los contadores coinciden con un recálculo desde cero.
+     *
+     * @return true si son consistentes.
+     */
+    static boolean isConsistent(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT (SELECT COUNT(*) FROM (" + EXPECTED_SQL + " EXCEPT " + ACTUAL_SQL
+                + ")) + (SELECT COUNT(*) FROM (" + ACTUAL_SQL + " EXCEPT " + EXPECTED_SQL + "))", null);
+        try {
+            return cursor.moveToFirst() && cursor.getInt(0) == 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reconstruye todos los contadores a partir de la tabla incidencias.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.delete(DbHelper.TABLE_COUNTERS, null, null);
+            db.execSQL("INSERT INTO " + DbHelper.TABLE_COUNTERS + " (" +
+                    DbHelper.COLUMN_COUNTER_SCOPE + ", " + DbHelper.COLUMN_COUNTER_DIMENSION + ", " +
+                    DbHelper.COLUMN_COUNTER_KEY + ", " + DbHelper.COLUMN_COUNTER_VALUE + ") " + EXPECTED_SQL);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.ecocity.app.database;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.model.Incidencia;
+import com.ecocity.app.model.UrgenciaIncidencia;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Mapeador de filas de la tabla incidencias a objetos {@link Incidencia}.
+ * <p>
+ * Resuelve los índices de columna una única vez por Cursor (en lugar de llamar
+ * a getColumnIndexOrThrow por cada campo y fila) y admite proyecciones
+ * parciales: las columnas que no estén en el Cursor simplemente no se asignan.
+ * Lo comparten todas las rutas de lectura de {@link IncidenciaDAO}, tanto las
+ * que devuelven objetos ({@link #map}) como las columnares ({@link #mapInto}):
+ * una columna nueva se añade solo aquí.
+ * </p>
+ * <p>
+ * Los textos que se repiten entre filas (email, ruta de la foto, acción de
+ * sincronización) se leen a través de {@link StringPool#SHARED}, de modo que
+ * las filas con el mismo valor comparten una única instancia.
+ * </p>
+ */
+final class IncidenciaCursorMapper {
+
+    // Proyección completa: todas las columnas que se vuelcan en el modelo
+    static final String[] PROJECTION_ALL = {
+            DbHelper.COLUMN_LOCAL_ID,
+            DbHelper.COLUMN_FIRESTORE_ID,
+            DbHelper.COLUMN_TITULO,
+            DbHelper.COLUMN_DESCRIPCION,
+            DbHelper.COLUMN_URGENCIA,
+            DbHelper.COLUMN_FOTOPATH,
+            DbHelper.COLUMN_THUMB_PATH,
+            DbHelper.COLUMN_PREVIEW_PATH,
+            DbHelper.COLUMN_ESTADO,
+            DbHelper.COLUMN_LATITUD,
+            DbHelper.COLUMN_LONGITUD,
+            DbHelper.COLUMN_USER_EMAIL,
+            DbHelper.COLUMN_UPDATED_AT,
+            DbHelper.COLUMN_VERSION,
+            DbHelper.COLUMN_IS_SYNCED,
+            DbHelper.COLUMN_SYNC_ACTION
+    };
+
+    // Índices resueltos para el Cursor actual (-1 si la columna no se proyectó)
+    private final int idxLocalId;
+    private final int idxFirestoreId;
+    private final int idxTitulo;
+    private final int idxDescripcion;
+    private final int idxUrgencia;
+    private final int idxFotoPath;
+    private final int idxThumbPath;
+    private final int idxPreviewPath;
+    private final int idxEstado;
+    private final int idxLatitud;
+    private final int idxLongitud;
+    private final int idxUserEmail;
+    private final int idxUpdatedAt;
+    private final int idxVersion;
+    private final int idxIsSynced;
+    private final int idxSyncAction;
+
+    // Buffer de lectura para el pool de Strings (un mapeador = un hilo)
+    private final CharArrayBuffer buffer = new CharArrayBuffer(64);
+
+    /**
+     * Crea un mapeador ligado a la forma (columnas) del Cursor recibido.
+     *
+     * @param cursor Cursor sobre la tabla incidencias.
+     */
+    IncidenciaCursorMapper(Cursor cursor) {
+        idxLocalId = cursor.getColumnIndex(DbHelper.COLUMN_LOCAL_ID);
+        idxFirestoreId = cursor.getColumnIndex(DbHelper.COLUMN_FIRESTORE_ID);
+        idxTitulo = cursor.getColumnIndex(DbHelper.COLUMN_TITULO);
+        idxDescripcion = cursor.getColumnIndex(DbHelper.COLUMN_DESCRIPCION);
+        idxUrgencia = cursor.getColumnIndex(DbHelper.COLUMN_URGENCIA);
+        idxFotoPath = cursor.getColumnIndex(DbHelper.COLUMN_FOTOPATH);
+        idxThumbPath = cursor.getColumnIndex(DbHelper.COLUMN_THUMB_PATH);
+        idxPreviewPath = cursor.getColumnIndex(DbHelper.COLUMN_PREVIEW_PATH);
+        idxEstado = cursor.getColumnIndex(DbHelper.COLUMN_ESTADO);
+        idxLatitud = cursor.getColumnIndex(DbHelper.COLUMN_LATITUD);
+        idxLongitud = cursor.getColumnIndex(DbHelper.COLUMN_LONGITUD);
+        idxUserEmail = cursor.getColumnIndex(DbHelper.COLUMN_USER_EMAIL);
+        idxUpdatedAt = cursor.getColumnIndex(DbHelper.COLUMN_UPDATED_AT);
+        idxVersion = cursor.getColumnIndex(DbHelper.COLUMN_VERSION);
+        idxIsSynced = cursor.getColumnIndex(DbHelper.COLUMN_IS_SYNCED);
+        idxSyncAction = cursor.getColumnIndex(DbHelper.COLUMN_SYNC_ACTION);
+    }
+
+    /**
+     * Convierte la fila actual del Cursor en una Incidencia.
+     */
+    Incidencia map(Cursor cursor) {
+        Incidencia inc = new Incidencia();
+        if (idxLocalId >= 0)
+            inc.setLocalId(cursor.getLong(idxLocalId));
+        if (idxFirestoreId >= 0)
+            inc.setId(cursor.getString(idxFirestoreId));
+        if (idxTitulo >= 0)
+            inc.setTitulo(cursor.getString(idxTitulo));
+        if (idxDescripcion >= 0)
+            inc.setDescripcion(cursor.getString(idxDescripcion));
+        if (idxUrgencia >= 0)
+            inc.setUrgency(UrgenciaIncidencia.fromCode(cursor.getInt(idxUrgencia)));
+        if (idxFotoPath >= 0)
+            inc.setFotoPath(pooled(cursor, idxFotoPath));
+        if (idxThumbPath >= 0)
+            inc.setThumbPath(cursor.getString(idxThumbPath));
+        if (idxPreviewPath >= 0)
+            inc.setPreviewPath(cursor.getString(idxPreviewPath));
+        if (idxEstado >= 0)
+            inc.setStatus(EstadoIncidencia.fromCode(cursor.getInt(idxEstado)));
+        if (idxLatitud >= 0)
+            inc.setLatitud(cursor.getDouble(idxLatitud));
+        if (idxLongitud >= 0)
+            inc.setLongitud(cursor.getDouble(idxLongitud));
+        if (idxUserEmail >= 0)
+            inc.setUserEmail(pooled(cursor, idxUserEmail));
+        if (idxUpdatedAt >= 0 && cursor.getLong(idxUpdatedAt) > 0)
+            inc.setUpdatedAt(new Date(cursor.getLong(idxUpdatedAt)));
+        if (idxVersion >= 0)
+            inc.setVersion(cursor.getLong(idxVersion));
+        if (idxIsSynced >= 0)
+            inc.setIsSynced(cursor.getInt(idxIsSynced));
+        if (idxSyncAction >= 0)
+            inc.setSyncAction(pooled(cursor, idxSyncAction));
+        return inc;
+    }
+
+    /**
+     * Añade la fila actual del Cursor al final de un almacén en construcción (sin
+     * crear una Incidencia). Las columnas que no estén en el Cursor quedan a null
+     * o a cero.
+     */
+    void mapInto(Cursor cursor, IncidenciaStore.Builder builder) {
+        int row = builder.size++;
+        if (idxLocalId >= 0)
+            builder.localIds[row] = cursor.getLong(idxLocalId);
+        builder.firestoreIds[row] = builder.intern(idxFirestoreId >= 0 ? cursor.getString(idxFirestoreId) : null);
+        builder.titulos[row] = builder.intern(idxTitulo >= 0 ? cursor.getString(idxTitulo) : null);
+        builder.descripciones[row] = builder.intern(idxDescripcion >= 0 ? cursor.getString(idxDescripcion) : null);
+        if (idxUrgencia >= 0)
+            builder.urgencias[row] = (byte) cursor.getInt(idxUrgencia);
+        builder.fotoPaths[row] = builder.intern(pooled(cursor, idxFotoPath));
+        builder.thumbPaths[row] = builder.intern(idxThumbPath >= 0 ? cursor.getString(idxThumbPath) : null);
+        builder.previewPaths[row] = builder.intern(idxPreviewPath >= 0 ? cursor.getString(idxPreviewPath) : null);
+        if (idxEstado >= 0)
+            builder.estados[row] = (byte) cursor.getInt(idxEstado);
+        if (idxLatitud >= 0)
+            builder.latitudes[row] = cursor.getDouble(idxLatitud);
+        if (idxLongitud >= 0)
+            builder.longitudes[row] = cursor.getDouble(idxLongitud);
+        builder.userEmails[row] = builder.intern(pooled(cursor, idxUserEmail));
+        if (idxUpdatedAt >= 0)
+            builder.updatedAts[row] = cursor.getLong(idxUpdatedAt);
+        if (idxVersion >= 0)
+            builder.versions[row] = cursor.getLong(idxVersion);
+        if (idxIsSynced >= 0)
+            builder.synced[row] = (byte) cursor.getInt(idxIsSynced);
+        builder.syncActions[row] = builder.intern(pooled(cursor, idxSyncAction));
+        builder.contentHashes[row] = builder.contentHash(row);
+    }
+
+    // Texto repetido entre filas, leído a través del pool (null si no se proyectó)
+    private String pooled(Cursor cursor, int index) {
+        return index >= 0 ? StringPool.SHARED.get(cursor, index, buffer) : null;
+    }
+
+    /**
+     * Recorre el Cursor completo, lo convierte en lista y lo cierra.
+     *
+     * @param cursor Cursor a consumir (se cierra siempre).
+     * @return Lista de incidencias en el orden del Cursor.
+     */
+    static List<Incidencia> mapAll(Cursor cursor) {
+        try {
+            List<Incidencia> lista = new ArrayList<>(cursor.getCount());
+            if (cursor.moveToFirst()) {
+                IncidenciaCursorMapper mapper = new IncidenciaCursorMapper(cursor);
+                do {
+                    lista.add(mapper.map(cursor));
+                } while (cursor.moveToNext());
+            }
+            return lista;
+        } finally {
+            cursor.close();
+        }
+    }
+}
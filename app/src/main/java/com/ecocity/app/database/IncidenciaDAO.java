@@ -4,12 +4,44 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.ecocity.app.model.EstadoIncidencia;
 import com.ecocity.app.model.Incidencia;
+import com.ecocity.app.model.IncidenciaStats;
+import com.ecocity.app.utils.GeoUtils;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Data Access Object (DAO) para la entidad Incidencia con arquitectura
@@ -23,9 +55,62 @@ public class IncidenciaDAO {
     private com.google.firebase.firestore.FirebaseFirestore firestoreDB;
     private static final String COLLECTION_NAME = "incidencias_v2";
 
-    // SQLite
+    // Máximo de escrituras que admite un WriteBatch de Firestore
+    static final int FIRESTORE_BATCH_LIMIT = 500;
+
+    // Máximo de valores de un filtro whereIn de Firestore
+    static final int WHERE_IN_LIMIT = 30;
+
+    // Descarga incremental: campo marca de agua, tamaño de página y claves del
+    // cursor persistido en sync_state
+    private static final String FIELD_UPDATED_AT = "updatedAt";
+    private static final String FIELD_VERSION = "version";
+    // Marca de borrado: los documentos no se borran, para que la descarga
+    // incremental (por updatedAt) también se entere de los borrados
+    private static final String FIELD_DELETED = "deleted";
+    static final int PULL_PAGE_SIZE = 500;
+    private static final String STATE_PULL_SECONDS = "pull_cursor_seconds";
+    private static final String STATE_PULL_NANOS = "pull_cursor_nanos";
+    private static final String STATE_PULL_DOC_ID = "pull_cursor_doc_id";
+
+    // Ventana de agrupación de los cambios recibidos en tiempo real
+    static final long LIVE_DEBOUNCE_MS = 300;
+
+    // SQLite (helper compartido por el proceso; close() solo suelta la referencia)
+    private final Context appContext;
     private DbHelper dbHelper;
-    private SQLiteDatabase sqLiteDb;
+    private volatile SQLiteDatabase sqLiteDb;
+
+    // Hilo de fondo compartido para consultas que no deben bloquear la UI y
+    // Handler para devolver los resultados al hilo principal
+    private static final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Disponibilidad del R*Tree en esta BD (se resuelve al abrir)
+    private boolean hasRTree;
+
+    // La comprobación de consistencia de contadores se hace una vez por proceso
+    private static final AtomicBoolean countersChecked = new AtomicBoolean(false);
+
+    // DAO de aplicación: dueño de la sincronización del outbox. Nunca se cierra,
+    // así que su conexión sigue disponible aunque la pantalla que pidió la
+    // sincronización haya terminado
+    private static IncidenciaDAO shared;
+
+    // Estado de la sincronización del outbox (solo se usa en el DAO compartido:
+    // una sola en curso por proceso)
+    private final Object syncLock = new Object();
+    private boolean syncRunning;
+    private boolean syncAgain;
+    private final List<FirestoreCallback> syncWaiters = new ArrayList<>();
+    // Identifica la sincronización en curso: los resultados de una anterior (que
+    // venció por tiempo) se ignoran
+    private int syncGeneration;
+    private final Runnable syncWatchdog = this::onOutboxSyncTimeout;
+
+    // Tiempo máximo de una pasada de subida. Sin conexión, Firestore puede no
+    // responder nunca; al vencer se libera la sincronización y se avisa del fallo
+    static final long SYNC_TIMEOUT_MS = 60 * 1000;
 
     /**
      * Interfaz para recibir resultados asíncronos.
@@ -42,134 +127,226 @@ public class IncidenciaDAO {
         void onCountLoaded(int count);
     }
 
+    public interface StatsCallback {
+        void onStatsLoaded(IncidenciaStats stats);
+    }
+
+    public interface LiveUpdatesListener {
+        void onRemoteChangesApplied(int count);
+    }
+
+    public interface StoreCallback {
+        void onStoreLoaded(IncidenciaStore store);
+    }
+
     public IncidenciaDAO(Context context) {
         firestoreDB = com.google.firebase.firestore.FirebaseFirestore.getInstance();
-        dbHelper = new DbHelper(context);
+        appContext = context.getApplicationContext();
+        dbHelper = DbHelper.getInstance(appContext);
+    }
+
+    /**
+     * DAO con ámbito de aplicación, dueño de la sincronización del outbox. Se
+     * abre en el hilo de base de datos, así que todo lo que lo use debe pasar
+     * también por ese hilo (como hacen la subida y la descarga).
+     */
+    public static synchronized IncidenciaDAO getShared(Context context) {
+        if (shared == null) {
+            shared = new IncidenciaDAO(context);
+            dbExecutor.execute(shared::open);
+        }
+        return shared;
     }
 
     public void open() {
         sqLiteDb = dbHelper.getWritableDatabase();
+        hasRTree = DbHelper.hasRTree(sqLiteDb);
+        if (countersChecked.compareAndSet(false, true)) {
+            dbExecutor.execute(this::verifyCounters);
+        }
     }
 
+    /**
+     * Suelta la conexión de este DAO: sus consultas pendientes dejan de
+     * ejecutarse. La base de datos es compartida ({@link DbHelper#getInstance})
+     * y no se cierra, de modo que la sincronización en curso puede terminar.
+     * Cada operación lee la conexión una sola vez al empezar, así que la que ya
+     * estaba en marcha termina (y cierra su transacción) con la misma.
+     */
     public void close() {
-        if (dbHelper != null) {
-            dbHelper.close();
+        if (this != shared) {
+            sqLiteDb = null;
         }
     }
 
     // --- MÉTODOS OFFLINE-FIRST (SQLite -> Firestore) ---
 
     /**
-     * INSERT: Inserta primero en SQLite y luego intenta subir a Firestore.
+     * INSERT: Inserta primero en SQLite (junto con su operación en el outbox) y
+     * luego intenta subir los cambios pendientes a Firestore. La escritura local
+     * se hace en el hilo de base de datos; el callback llega en el hilo principal.
      */
     public void insertIncidencia(final Incidencia incidencia, final FirestoreCallback callback) {
         incidencia.setIsSynced(0);
-        incidencia.setSyncAction("INSERT");
-
-        long localId = insertIntoSQLite(incidencia);
-
-        if (localId != -1) {
-            incidencia.setLocalId(localId);
+        incidencia.setSyncAction(SyncOutbox.OP_INSERT);
 
-            // Intentar sincronizar con Firestore
-            firestoreDB.collection(COLLECTION_NAME)
-                    .add(incidencia)
-                    .addOnSuccessListener(documentReference -> {
-                        String firestoreId = documentReference.getId();
-                        incidencia.setId(firestoreId);
-                        // Confirmar en Firestore con el ID dentro del doc
-                        documentReference.set(incidencia);
+        // El ID de Firestore se genera en local: el documento se sube con una sola
+        // escritura y, al quedar guardado en SQLite, los reintentos no lo duplican
+        final String firestoreId = firestoreDB.collection(COLLECTION_NAME).document().getId();
+        incidencia.setId(firestoreId);
 
-                        // Actualizar SQLite como sincronizado
-                        markAsSyncedInSQLite(localId, firestoreId);
+        // La conexión se toma ahora: la actividad puede cerrar el DAO antes de
+        // que el hilo de base de datos llegue a esta escritura
+        final SQLiteDatabase db = sqLiteDb;
+        dbExecutor.execute(() -> {
+            long localId = -1;
+            if (db != null && db.isOpen()) {
+                beginWrite(db);
+                try {
+                    localId = insertIntoSQLite(db, incidencia);
+                    if (localId != -1) {
+                        SyncOutbox.enqueue(db, localId, SyncOutbox.OP_INSERT, SyncOutbox.FIELDS_ALL);
+                    }
+                    markWriteSuccessful(db);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error insertando en SQLite: " + e.getMessage());
+                    localId = -1;
+                } finally {
+                    endWrite(db);
+                }
+            }
 
-                        if (callback != null)
-                            callback.onSuccess(firestoreId);
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "No se pudo sincronizar INSERT. Se intentará luego. Error: " + e.getMessage());
-                        if (callback != null)
-                            callback.onFailure(e);
-                    });
-        } else {
-            if (callback != null)
-                callback.onFailure(new Exception("Error al insertar en SQLite local"));
-        }
+            final long insertedId = localId;
+            mainHandler.post(() -> {
+                if (insertedId != -1) {
+                    incidencia.setLocalId(insertedId);
+                    syncWithFirestore(resultAs(firestoreId, callback));
+                } else {
+                    if (callback != null)
+                        callback.onFailure(new Exception("Error al insertar en SQLite local"));
+                }
+            });
+        });
     }
 
     /**
-     * UPDATE: Actualiza primero en SQLite y luego intenta actualizar en Firestore.
+     * UPDATE: Actualiza primero en SQLite (junto con su operación en el outbox) y
+     * luego intenta subir los cambios pendientes a Firestore. La escritura local
+     * se hace en el hilo de base de datos; el callback llega en el hilo principal.
      */
     public void updateIncidencia(final Incidencia incidencia, final FirestoreCallback callback) {
         incidencia.setIsSynced(0);
-        incidencia.setSyncAction("UPDATE");
-
-        int rows = updateInSQLite(incidencia);
-
-        if (rows > 0) {
-            // Intentar sincronizar con Firestore (solo si ya tenía ID de Firestore)
-            if (incidencia.getId() != null && !incidencia.getId().isEmpty()) {
-                firestoreDB.collection(COLLECTION_NAME).document(incidencia.getId())
-                        .set(incidencia)
-                        .addOnSuccessListener(aVoid -> {
-                            markAsSyncedInSQLite(incidencia.getLocalId(), incidencia.getId());
-                            if (callback != null)
-                                callback.onSuccess("Actualizado en la nube");
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "No se pudo sincronizar UPDATE. Se intentará luego. Error: " + e.getMessage());
-                            if (callback != null)
-                                callback.onFailure(e);
-                        });
-            } else {
-                // Si aún no tenía ID de firestore (se creó offline y no se ha sincronizado),
-                // dejamos pendiente para la sincronización principal
-                if (callback != null)
-                    callback.onSuccess("Actualizado localmente (pendiente nube)");
+        incidencia.setSyncAction(SyncOutbox.OP_UPDATE);
+
+        final SQLiteDatabase db = sqLiteDb;
+        dbExecutor.execute(() -> {
+            int rows = 0;
+            int fields = 0;
+            if (db != null && db.isOpen()) {
+                beginWrite(db);
+                try {
+                    Incidencia old = findByLocalId(db, incidencia.getLocalId());
+                    if (old != null) {
+                        // La versión base es la guardada (una descarga pudo actualizarla
+                        // después de abrir el formulario)
+                        incidencia.setVersion(old.getVersion());
+                        incidencia.setUpdatedAt(old.getUpdatedAt());
+                        fields = SyncOutbox.changedFields(old, incidencia);
+                        rows = fields != 0 ? updateInSQLite(db, incidencia) : 1;
+                    }
+                    if (rows > 0 && fields != 0) {
+                        SyncOutbox.enqueue(db, incidencia.getLocalId(), SyncOutbox.OP_UPDATE, fields);
+                    }
+                    markWriteSuccessful(db);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error actualizando en SQLite: " + e.getMessage());
+                    rows = 0;
+                } finally {
+                    endWrite(db);
+                }
             }
-        } else {
-            if (callback != null)
-                callback.onFailure(new Exception("Error al actualizar en SQLite local"));
-        }
+
+            final int updated = rows;
+            final boolean unchanged = fields == 0;
+            mainHandler.post(() -> {
+                if (updated > 0 && unchanged) {
+                    // Nada cambió: no hay que escribir ni subir
+                    if (callback != null)
+                        callback.onSuccess("Sin cambios");
+                } else if (updated > 0) {
+                    syncWithFirestore(resultAs("Actualizado en la nube", callback));
+                } else {
+                    if (callback != null)
+                        callback.onFailure(new Exception("Error al actualizar en SQLite local"));
+                }
+            });
+        });
     }
 
     /**
-     * DELETE: Borra de Firestore primero si es posible, o marca para borrar en
-     * SQLite.
-     * Si no tiene ID de Firestore aún, la borra físicamente.
+     * DELETE: Marca la incidencia como borrada en SQLite (deja de mostrarse y de
+     * contar) y encola el borrado. Al sincronizar se borra de Firestore y después
+     * físicamente; si nunca llegó a subirse, se borra sin tocar la red. La
+     * escritura local se hace en el hilo de base de datos; el callback llega en
+     * el hilo principal.
      */
     public void deleteIncidencia(final Incidencia incidencia, final FirestoreCallback callback) {
-        if (incidencia.getId() == null || incidencia.getId().isEmpty()) {
-            // Nunca se subió a Firestore, borrar físicamente directo de SQLite
-            int rows = deleteFromSQLite(incidencia.getLocalId());
-            if (callback != null) {
-                if (rows > 0)
-                    callback.onSuccess("Eliminado localmente");
-                else
-                    callback.onFailure(new Exception("No se pudo eliminar localmente"));
+        incidencia.setIsSynced(0);
+        incidencia.setSyncAction(SyncOutbox.OP_DELETE);
+
+        final SQLiteDatabase db = sqLiteDb;
+        dbExecutor.execute(() -> {
+            int rows = 0;
+            if (db != null && db.isOpen()) {
+                beginWrite(db);
+                try {
+                    rows = updateInSQLite(db, incidencia);
+                    if (rows > 0) {
+                        SyncOutbox.enqueue(db, incidencia.getLocalId(), SyncOutbox.OP_DELETE, 0);
+                    }
+                    markWriteSuccessful(db);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error borrando en SQLite: " + e.getMessage());
+                    rows = 0;
+                } finally {
+                    endWrite(db);
+                }
             }
-            return;
-        }
 
-        // Marcar para borrar en local
-        incidencia.setIsSynced(0);
-        incidencia.setSyncAction("DELETE");
-        updateInSQLite(incidencia);
-
-        // Intentar borrar en Firestore
-        firestoreDB.collection(COLLECTION_NAME).document(incidencia.getId())
-                .delete()
-                .addOnSuccessListener(aVoid -> {
-                    // Si se borra de la nube, borrar físicamente en local
-                    deleteFromSQLite(incidencia.getLocalId());
-                    if (callback != null)
-                        callback.onSuccess("Eliminado de la nube y local");
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "No se pudo sincronizar DELETE. Se intentará luego. Error: " + e.getMessage());
+            final int deleted = rows;
+            mainHandler.post(() -> {
+                if (deleted > 0) {
+                    syncWithFirestore(resultAs("Eliminado de la nube y local", callback));
+                } else {
                     if (callback != null)
-                        callback.onFailure(e);
-                });
+                        callback.onFailure(new Exception("No se pudo eliminar localmente"));
+                }
+            });
+        });
+    }
+
+    /**
+     * Adapta el callback de la sincronización para que el llamante reciba su
+     * propio mensaje de éxito.
+     */
+    private static FirestoreCallback resultAs(final String result, final FirestoreCallback callback) {
+        if (callback == null)
+            return null;
+        return new FirestoreCallback() {
+            @Override
+            public void onSuccess(String ignored) {
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                callback.onFailure(e);
+            }
+
+            @Override
+            public void onDataLoaded(List<Incidencia> incidencias) {
+            }
+        };
     }
 
     // Sobrecarga para mantener firma antigua
@@ -183,111 +360,412 @@ public class IncidenciaDAO {
     }
 
     /**
-     * READ (All): Obtiene localmente desde SQLite priorizando modo offline.
+     * READ (All, columnar): Incidencias activas (sin borrados pendientes) en
+     * orden de prioridad (Estado > Urgencia), volcadas en un
+     * {@link IncidenciaStore} (arrays primitivos y pool de Strings) en lugar de
+     * un objeto por incidencia. Pensado para las listas con muchos miles de
+     * filas. Se lee en segundo plano y el resultado se entrega en el hilo
+     * principal.
+     */
+    public void getIncidenciaStore(StoreCallback callback) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            IncidenciaStore store = IncidenciaStore.EMPTY;
+            try {
+                if (db != null && db.isOpen()) {
+                    store = IncidenciaStore.fromCursor(db.query(DbHelper.TABLE_INCIDENCIAS,
+                            IncidenciaCursorMapper.PROJECTION_ALL, DbHelper.COLUMN_SYNC_ACTION + " != 'DELETE'",
+                            null, null, null, DbHelper.COLUMN_ESTADO + ", " + DbHelper.COLUMN_URGENCIA + ", "
+                                    + DbHelper.COLUMN_LOCAL_ID));
+                }
+            } catch (Exception e) {
+                // La BD puede haberse cerrado (onDestroy) mientras la consulta esperaba
+                Log.e(TAG, "Error cargando incidencias: " + e.getMessage());
+            }
+            final IncidenciaStore result = store;
+            if (callback != null)
+                mainHandler.post(() -> callback.onStoreLoaded(result));
+        });
+    }
+
+    /**
+     * READ (por local_id, columnar): Filas activas con los local_id indicados,
+     * para aplicar cambios concretos en una lista ya cargada. Los ids que no
+     * aparecen en el resultado ya no existen o están marcados como borrados.
+     * Se lee en segundo plano y el resultado se entrega en el hilo principal
+     * (null si no se pudo leer: el llamante debe recargar por completo).
      */
-    public void getAllIncidencias(final FirestoreCallback callback) {
-        List<Incidencia> lista = getAllFromSQLite();
-        // Filtrar las que están marcadas como DELETE
-        List<Incidencia> activas = new ArrayList<>();
-        for (Incidencia i : lista) {
-            if (!"DELETE".equals(i.getSyncAction())) {
-                activas.add(i);
+    public void getIncidenciaStore(long[] localIds, StoreCallback callback) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            IncidenciaStore store = null;
+            try {
+                if (db != null && db.isOpen()) {
+                    StringBuilder in = new StringBuilder();
+                    for (long id : localIds) {
+                        in.append(in.length() == 0 ? "" : ",").append(id);
+                    }
+                    store = IncidenciaStore.fromCursor(db.query(DbHelper.TABLE_INCIDENCIAS,
+                            IncidenciaCursorMapper.PROJECTION_ALL, DbHelper.COLUMN_LOCAL_ID + " IN (" + in + ") AND "
+                                    + DbHelper.COLUMN_SYNC_ACTION + " != 'DELETE'",
+                            null, null, null, null));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error cargando incidencias cambiadas: " + e.getMessage());
             }
+            final IncidenciaStore result = store;
+            if (callback != null)
+                mainHandler.post(() -> callback.onStoreLoaded(result));
+        });
+    }
+
+    /**
+     * SEARCH: Búsqueda de texto completo sobre título y descripción (índice FTS4).
+     * <p>
+     * Cada palabra se busca por prefijo ("alcan" encuentra "alcantarilla") y sin
+     * tener en cuenta tildes. Los resultados con coincidencia en el título van
+     * primero y, dentro de cada grupo, por prioridad de estado y urgencia.
+     * Se ejecuta en segundo plano y entrega la página pedida en el hilo principal.
+     * </p>
+     *
+     * @param query    Texto introducido por el usuario.
+     * @param limit    Tamaño de página.
+     * @param offset   Número de resultados a saltar (página * limit).
+     * @param callback Recibe los resultados en formato columnar (vacío si no hay
+     *                 palabras que buscar o la consulta falla).
+     */
+    public void searchIncidencias(String query, int limit, int offset, final StoreCallback callback) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            IncidenciaStore resultados = IncidenciaStore.EMPTY;
+            try {
+                List<String> tokens = SearchTokenizer.tokenize(query);
+                if (!tokens.isEmpty() && db != null && db.isOpen()) {
+                    resultados = searchInSQLite(db, tokens, limit, offset);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error en la búsqueda: " + e.getMessage());
+            }
+            final IncidenciaStore result = resultados;
+            if (callback != null)
+                mainHandler.post(() -> callback.onStoreLoaded(result));
+        });
+    }
+
+    private IncidenciaStore searchInSQLite(SQLiteDatabase db, List<String> tokens, int limit, int offset) {
+        // Expresión MATCH general y restringida al título (para el ranking)
+        StringBuilder match = new StringBuilder();
+        StringBuilder titleMatch = new StringBuilder();
+        for (String token : tokens) {
+            if (match.length() > 0) {
+                match.append(' ');
+                titleMatch.append(' ');
+            }
+            match.append(token).append('*');
+            titleMatch.append(DbHelper.COLUMN_TITULO).append(':').append(token).append('*');
         }
 
-        sortIncidencias(activas);
-        if (callback != null)
-            callback.onDataLoaded(activas);
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (String column : IncidenciaCursorMapper.PROJECTION_ALL) {
+            sql.append("i.").append(column).append(" AS ").append(column).append(", ");
+        }
+        sql.append("(i.").append(DbHelper.COLUMN_LOCAL_ID).append(" IN (SELECT docid FROM ")
+                .append(DbHelper.TABLE_INCIDENCIAS_FTS).append(" WHERE ").append(DbHelper.TABLE_INCIDENCIAS_FTS)
+                .append(" MATCH ?)) AS title_hit")
+                .append(" FROM ").append(DbHelper.TABLE_INCIDENCIAS).append(" i JOIN ")
+                .append(DbHelper.TABLE_INCIDENCIAS_FTS).append(" f ON f.docid = i.").append(DbHelper.COLUMN_LOCAL_ID)
+                .append(" WHERE f.").append(DbHelper.TABLE_INCIDENCIAS_FTS).append(" MATCH ?")
+                .append(" AND i.").append(DbHelper.COLUMN_SYNC_ACTION).append(" != 'DELETE'")
+                .append(" ORDER BY title_hit DESC, i.").append(DbHelper.COLUMN_ESTADO)
+                .append(", i.").append(DbHelper.COLUMN_URGENCIA)
+                .append(" LIMIT ").append(Math.max(limit, 1)).append(" OFFSET ").append(Math.max(offset, 0));
+
+        return IncidenciaStore.fromCursor(db.rawQuery(sql.toString(),
+                new String[] { titleMatch.toString(), match.toString() }));
+    }
+
+    /**
+     * VIEWPORT: Incidencias activas cuya ubicación cae dentro del rectángulo
+     * visible del mapa. Usa el índice espacial para no recorrer toda la tabla.
+     * No contempla rectángulos que crucen el antimeridiano (minLng > maxLng).
+     */
+    public void getIncidenciasInViewport(double minLat, double minLng, double maxLat, double maxLng,
+            final FirestoreCallback callback) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            List<Incidencia> resultados = new ArrayList<>();
+            try {
+                if (db != null && db.isOpen()) {
+                    resultados = queryBoundingBox(db, minLat, maxLat, minLng, maxLng);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error en consulta por área: " + e.getMessage());
+            }
+            final List<Incidencia> result = resultados;
+            if (callback != null)
+                mainHandler.post(() -> callback.onDataLoaded(result));
+        });
+    }
+
+    /**
+     * RADIUS: Incidencias activas a menos de radiusMeters del punto indicado,
+     * ordenadas de la más cercana a la más lejana. El índice espacial filtra por
+     * la caja que contiene el círculo y la distancia exacta se calcula solo sobre
+     * esos candidatos.
+     */
+    public void getIncidenciasWithinRadius(double lat, double lng, double radiusMeters,
+            final FirestoreCallback callback) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            List<Incidencia> resultados = new ArrayList<>();
+            try {
+                if (db != null && db.isOpen()) {
+                    double dLat = GeoUtils.metersToLatDegrees(radiusMeters);
+                    double dLng = GeoUtils.metersToLngDegrees(radiusMeters, lat);
+                    List<Incidencia> candidatas = queryBoundingBox(db, lat - dLat, lat + dLat, lng - dLng,
+                            lng + dLng);
+
+                    int n = candidatas.size();
+                    double[] distances = new double[n];
+                    Integer[] order = new Integer[n];
+                    int count = 0;
+                    for (int i = 0; i < n; i++) {
+                        Incidencia inc = candidatas.get(i);
+                        double d = GeoUtils.distanceMeters(lat, lng, inc.getLatitud(), inc.getLongitud());
+                        if (d <= radiusMeters) {
+                            distances[i] = d;
+                            order[count++] = i;
+                        }
+                    }
+                    Arrays.sort(order, 0, count, (a, b) -> Double.compare(distances[a], distances[b]));
+                    resultados = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        resultados.add(candidatas.get(order[i]));
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error en consulta por radio: " + e.getMessage());
+            }
+            final List<Incidencia> result = resultados;
+            if (callback != null)
+                mainHandler.post(() -> callback.onDataLoaded(result));
+        });
+    }
+
+    private List<Incidencia> queryBoundingBox(SQLiteDatabase db, double minLat, double maxLat, double minLng,
+            double maxLng) {
+        String[] bounds = { String.valueOf(minLat), String.valueOf(maxLat),
+                String.valueOf(minLng), String.valueOf(maxLng) };
+        String exact = DbHelper.COLUMN_LATITUD + " BETWEEN ? AND ? AND " +
+                DbHelper.COLUMN_LONGITUD + " BETWEEN ? AND ? AND " +
+                DbHelper.COLUMN_SYNC_ACTION + " != 'DELETE'";
+
+        if (!hasRTree) {
+            // Respaldo: índice B-tree (latitud, longitud); excluye las que no tienen
+            // ubicación (0,0)
+            return getAllFromSQLite(db, exact + " AND (" + DbHelper.COLUMN_LATITUD + " != 0 OR " +
+                    DbHelper.COLUMN_LONGITUD + " != 0)", bounds, null);
+        }
+
+        // El R*Tree guarda floats de 32 bits (cajas redondeadas hacia fuera), así que
+        // se repite el filtro exacto sobre las columnas REAL de la tabla principal.
+        // Los límites van como literales numéricos: el módulo rtree no aplica
+        // afinidad numérica a parámetros enlazados como texto
+        String inRTree = DbHelper.COLUMN_LOCAL_ID + " IN (SELECT " + DbHelper.COLUMN_RTREE_ID + " FROM " +
+                DbHelper.TABLE_INCIDENCIAS_RTREE + " WHERE " +
+                DbHelper.COLUMN_RTREE_MAX_LAT + " >= " + minLat + " AND " +
+                DbHelper.COLUMN_RTREE_MIN_LAT + " <= " + maxLat + " AND " +
+                DbHelper.COLUMN_RTREE_MAX_LNG + " >= " + minLng + " AND " +
+                DbHelper.COLUMN_RTREE_MIN_LNG + " <= " + maxLng + ")";
+        return getAllFromSQLite(db, inRTree + " AND " + exact, bounds, null);
     }
 
     // --- OPERACIONES SQLITE BASE ---
 
-    private long insertIntoSQLite(Incidencia inc) {
-        if (sqLiteDb == null || !sqLiteDb.isOpen())
+    private long insertIntoSQLite(SQLiteDatabase db, Incidencia inc) {
+        if (db == null || !db.isOpen())
             return -1;
 
-        ContentValues values = new ContentValues();
-        values.put(DbHelper.COLUMN_FIRESTORE_ID, inc.getId());
-        values.put(DbHelper.COLUMN_TITULO, inc.getTitulo());
-        values.put(DbHelper.COLUMN_DESCRIPCION, inc.getDescripcion());
-        values.put(DbHelper.COLUMN_URGENCIA, inc.getUrgencia());
-        values.put(DbHelper.COLUMN_FOTOPATH, inc.getFotoPath());
-        values.put(DbHelper.COLUMN_ESTADO, inc.getEstado());
-        values.put(DbHelper.COLUMN_LATITUD, inc.getLatitud());
-        values.put(DbHelper.COLUMN_LONGITUD, inc.getLongitud());
-        values.put(DbHelper.COLUMN_USER_EMAIL, inc.getUserEmail());
-        values.put(DbHelper.COLUMN_IS_SYNCED, inc.getIsSynced());
-        values.put(DbHelper.COLUMN_SYNC_ACTION, inc.getSyncAction());
+        beginWrite(db);
+        try {
+            long localId = db.insert(DbHelper.TABLE_INCIDENCIAS, null, toContentValues(inc));
+            if (localId != -1) {
+                if (isActive(inc.getSyncAction())) {
+                    IncidenciaCounters.apply(db, inc.getUserEmail(), inc.getStatus(), inc.getUrgency(), 1);
+                }
+                invalidateRow(localId, RowChanges.INSERTED);
+            }
+            markWriteSuccessful(db);
+            return localId;
+        } finally {
+            endWrite(db);
+        }
+    }
+
+    private int updateInSQLite(SQLiteDatabase db, Incidencia inc) {
+        if (db == null || !db.isOpen() || inc.getLocalId() == -1)
+            return 0;
 
-        return sqLiteDb.insert(DbHelper.TABLE_INCIDENCIAS, null, values);
+        beginWrite(db);
+        try {
+            // Fila anterior para retirar su aportación a los contadores
+            Incidencia old = findByLocalId(db, inc.getLocalId());
+            int rows = db.update(DbHelper.TABLE_INCIDENCIAS, toContentValues(inc),
+                    DbHelper.COLUMN_LOCAL_ID + "=?", new String[] { String.valueOf(inc.getLocalId()) });
+            if (rows > 0) {
+                if (old != null && isActive(old.getSyncAction())) {
+                    IncidenciaCounters.apply(db, old.getUserEmail(), old.getStatus(), old.getUrgency(), -1);
+                }
+                if (isActive(inc.getSyncAction())) {
+                    IncidenciaCounters.apply(db, inc.getUserEmail(), inc.getStatus(), inc.getUrgency(), 1);
+                }
+                invalidateRow(inc.getLocalId(), RowChanges.UPDATED);
+            }
+            markWriteSuccessful(db);
+            return rows;
+        } finally {
+            endWrite(db);
+        }
     }
 
-    private int updateInSQLite(Incidencia inc) {
-        if (sqLiteDb == null || !sqLiteDb.isOpen() || inc.getLocalId() == -1)
+    private int deleteFromSQLite(SQLiteDatabase db, long localId) {
+        if (db == null || !db.isOpen())
             return 0;
 
+        beginWrite(db);
+        try {
+            Incidencia old = findByLocalId(db, localId);
+            int rows = db.delete(DbHelper.TABLE_INCIDENCIAS,
+                    DbHelper.COLUMN_LOCAL_ID + "=?", new String[] { String.valueOf(localId) });
+            if (rows > 0) {
+                if (old != null && isActive(old.getSyncAction())) {
+                    IncidenciaCounters.apply(db, old.getUserEmail(), old.getStatus(), old.getUrgency(), -1);
+                }
+                invalidateRow(localId, RowChanges.DELETED);
+            }
+            markWriteSuccessful(db);
+            return rows;
+        } finally {
+            endWrite(db);
+        }
+    }
+
+    /**
+     * Abre una transacción de escritura. Las invalidaciones que se produzcan
+     * dentro se publican juntas al cerrarla con {@link #endWrite}, solo si se
+     * confirmó ({@link #markWriteSuccessful}); si se deshace, se descartan.
+     * <p>
+     * Las tres reciben la conexión que la operación leyó al empezar: un close()
+     * concurrente no puede dejar la transacción a medias.
+     * </p>
+     */
+    private static void beginWrite(SQLiteDatabase db) {
+        db.beginTransaction();
+        InvalidationTracker.getInstance().beginBatch();
+    }
+
+    private static void markWriteSuccessful(SQLiteDatabase db) {
+        db.setTransactionSuccessful();
+        InvalidationTracker.getInstance().markBatchSuccessful();
+    }
+
+    private static void endWrite(SQLiteDatabase db) {
+        boolean committed = false;
+        try {
+            db.endTransaction();
+            committed = true;
+        } finally {
+            InvalidationTracker.getInstance().endBatch(committed);
+        }
+    }
+
+    /**
+     * Publica que una fila de incidencias cambió (para las actualizaciones
+     * incrementales de la lista) junto con sus contadores.
+     */
+    private static void invalidateRow(long localId, int change) {
+        InvalidationTracker tracker = InvalidationTracker.getInstance();
+        tracker.notifyRowChanged(localId, change);
+        tracker.notifyChanged(DbHelper.TABLE_COUNTERS);
+    }
+
+    /**
+     * Publica que una tabla cambió. Las escrituras en incidencias también
+     * modifican los contadores en la misma transacción.
+     */
+    private static void invalidate(String table) {
+        InvalidationTracker tracker = InvalidationTracker.getInstance();
+        tracker.notifyChanged(table);
+        if (DbHelper.TABLE_INCIDENCIAS.equals(table)) {
+            tracker.notifyChanged(DbHelper.TABLE_COUNTERS);
+        }
+    }
+
+    private ContentValues toContentValues(Incidencia inc) {
         ContentValues values = new ContentValues();
         values.put(DbHelper.COLUMN_FIRESTORE_ID, inc.getId());
         values.put(DbHelper.COLUMN_TITULO, inc.getTitulo());
         values.put(DbHelper.COLUMN_DESCRIPCION, inc.getDescripcion());
-        values.put(DbHelper.COLUMN_URGENCIA, inc.getUrgencia());
+        values.put(DbHelper.COLUMN_URGENCIA, inc.getUrgency().getCode());
         values.put(DbHelper.COLUMN_FOTOPATH, inc.getFotoPath());
-        values.put(DbHelper.COLUMN_ESTADO, inc.getEstado());
+        // Las versiones reducidas solo existen en este dispositivo: las incidencias
+        // descargadas no las traen y no deben borrar las ya generadas
+        if (inc.getThumbPath() != null)
+            values.put(DbHelper.COLUMN_THUMB_PATH, inc.getThumbPath());
+        if (inc.getPreviewPath() != null)
+            values.put(DbHelper.COLUMN_PREVIEW_PATH, inc.getPreviewPath());
+        values.put(DbHelper.COLUMN_ESTADO, inc.getStatus().getCode());
         values.put(DbHelper.COLUMN_LATITUD, inc.getLatitud());
         values.put(DbHelper.COLUMN_LONGITUD, inc.getLongitud());
         values.put(DbHelper.COLUMN_USER_EMAIL, inc.getUserEmail());
+        values.put(DbHelper.COLUMN_UPDATED_AT, inc.getUpdatedAt() != null ? inc.getUpdatedAt().getTime() : 0);
+        values.put(DbHelper.COLUMN_VERSION, inc.getVersion());
         values.put(DbHelper.COLUMN_IS_SYNCED, inc.getIsSynced());
         values.put(DbHelper.COLUMN_SYNC_ACTION, inc.getSyncAction());
+        return values;
+    }
 
-        return sqLiteDb.update(DbHelper.TABLE_INCIDENCIAS, values,
-                DbHelper.COLUMN_LOCAL_ID + "=?", new String[] { String.valueOf(inc.getLocalId()) });
+    private Incidencia findByLocalId(SQLiteDatabase db, long localId) {
+        Cursor cursor = db.query(DbHelper.TABLE_INCIDENCIAS, IncidenciaCursorMapper.PROJECTION_ALL,
+                DbHelper.COLUMN_LOCAL_ID + "=?", new String[] { String.valueOf(localId) }, null, null, null);
+        List<Incidencia> found = IncidenciaCursorMapper.mapAll(cursor);
+        return found.isEmpty() ? null : found.get(0);
     }
 
-    private int deleteFromSQLite(long localId) {
-        if (sqLiteDb == null || !sqLiteDb.isOpen())
-            return 0;
-        return sqLiteDb.delete(DbHelper.TABLE_INCIDENCIAS,
-                DbHelper.COLUMN_LOCAL_ID + "=?", new String[] { String.valueOf(localId) });
+    private static boolean isActive(String syncAction) {
+        return !"DELETE".equals(syncAction);
     }
 
-    private void markAsSyncedInSQLite(long localId, String firestoreId) {
-        if (sqLiteDb == null || !sqLiteDb.isOpen())
+    private void markAsSyncedInSQLite(SQLiteDatabase db, long localId, String firestoreId, long version,
+            boolean synced) {
+        if (db == null || !db.isOpen())
             return;
         ContentValues values = new ContentValues();
-        values.put(DbHelper.COLUMN_IS_SYNCED, 1);
+        if (synced)
+            values.put(DbHelper.COLUMN_IS_SYNCED, 1);
         values.put(DbHelper.COLUMN_FIRESTORE_ID, firestoreId);
-        sqLiteDb.update(DbHelper.TABLE_INCIDENCIAS, values,
+        values.put(DbHelper.COLUMN_VERSION, version);
+        db.update(DbHelper.TABLE_INCIDENCIAS, values,
                 DbHelper.COLUMN_LOCAL_ID + "=?", new String[] { String.valueOf(localId) });
     }
 
-    private List<Incidencia> getAllFromSQLite() {
-        List<Incidencia> lista = new ArrayList<>();
-        if (sqLiteDb == null || !sqLiteDb.isOpen())
-            return lista;
-
-        Cursor cursor = sqLiteDb.query(DbHelper.TABLE_INCIDENCIAS, null, null, null, null, null, null);
+    private void assignFirestoreIdInSQLite(SQLiteDatabase db, long localId, String firestoreId) {
+        if (db == null || !db.isOpen())
+            return;
+        ContentValues values = new ContentValues();
+        values.put(DbHelper.COLUMN_FIRESTORE_ID, firestoreId);
+        db.update(DbHelper.TABLE_INCIDENCIAS, values,
+                DbHelper.COLUMN_LOCAL_ID + "=?", new String[] { String.valueOf(localId) });
+    }
 
-        if (cursor.moveToFirst()) {
-            do {
-                Incidencia inc = new Incidencia();
-                inc.setLocalId(cursor.getLong(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LOCAL_ID)));
-                inc.setId(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_FIRESTORE_ID)));
-                inc.setTitulo(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_TITULO)));
-                inc.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_DESCRIPCION)));
-                inc.setUrgencia(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_URGENCIA)));
-                inc.setFotoPath(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_FOTOPATH)));
-                inc.setEstado(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_ESTADO)));
-                inc.setLatitud(cursor.getDouble(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LATITUD)));
-                inc.setLongitud(cursor.getDouble(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LONGITUD)));
-                inc.setUserEmail(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_USER_EMAIL)));
-                inc.setIsSynced(cursor.getInt(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_IS_SYNCED)));
-                inc.setSyncAction(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_SYNC_ACTION)));
+    private List<Incidencia> getAllFromSQLite(SQLiteDatabase db, String selection, String[] selectionArgs,
+            String orderBy) {
+        if (db == null || !db.isOpen())
+            return new ArrayList<>();
 
-                lista.add(inc);
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        return lista;
+        Cursor cursor = db.query(DbHelper.TABLE_INCIDENCIAS, IncidenciaCursorMapper.PROJECTION_ALL,
+                selection, selectionArgs, null, null, orderBy);
+        return IncidenciaCursorMapper.mapAll(cursor);
     }
 
     // --- LÓGICA DE SINCRONIZACIÓN EN SEGUNDO PLANO ---
@@ -297,137 +775,786 @@ public class IncidenciaDAO {
      * Idealmente se llama desde un NetworkCallback.
      */
     public void syncWithFirestore() {
-        if (sqLiteDb == null || !sqLiteDb.isOpen())
-            return;
+        syncWithFirestore(null);
+    }
+
+    /**
+     * Sube a Firestore los cambios del outbox, agrupados por incidencia y en
+     * lotes (WriteBatch) de hasta {@link #FIRESTORE_BATCH_LIMIT} escrituras.
+     * Antes de cada lote se leen, con unas pocas consultas whereIn, los
+     * documentos que se van a editar; cada edición se decide según la versión
+     * leída ({@link #writeVersioned}), así que repetir una subida ya aplicada no
+     * vuelve a incrementar la versión ni pisa ediciones posteriores de otros
+     * usuarios.
+     * <p>
+     * La ejecuta siempre el DAO de aplicación ({@link #getShared}), sea cual sea
+     * la instancia que la pide, de modo que el estado de la sincronización y la
+     * conexión que usa viven y mueren juntos. Solo hay una en curso por proceso:
+     * si se pide otra mientras tanto, se ejecuta una pasada más al terminar la
+     * actual (para recoger los cambios encolados entre medias) y todos los
+     * llamantes reciben el resultado conjunto en el hilo principal. Las
+     * inserciones usan el ID de Firestore guardado en SQLite, así que repetir una
+     * subida tras un cierre inesperado no duplica el documento.
+     * </p>
+     *
+     * @param callback Opcional. onSuccess recibe el número de cambios subidos;
+     *                 onFailure, el primer error.
+     */
+    public void syncWithFirestore(final FirestoreCallback callback) {
+        getShared(appContext).startOutboxSync(callback);
+    }
 
+    private void startOutboxSync(final FirestoreCallback callback) {
+        final int generation;
+        synchronized (syncLock) {
+            if (callback != null)
+                syncWaiters.add(callback);
+            if (syncRunning) {
+                syncAgain = true;
+                return;
+            }
+            syncRunning = true;
+            generation = ++syncGeneration;
+        }
         Log.d(TAG, "Iniciando sincronización SQLite -> Firestore");
+        mainHandler.postDelayed(syncWatchdog, SYNC_TIMEOUT_MS);
+        runOutboxPass(generation, 0);
+    }
 
-        // Obtener pendietes
-        Cursor cursor = sqLiteDb.query(DbHelper.TABLE_INCIDENCIAS, null,
-                DbHelper.COLUMN_IS_SYNCED + "=0", null, null, null, null);
-
-        List<Incidencia> pendientes = new ArrayList<>();
-        if (cursor.moveToFirst()) {
-            do {
-                Incidencia inc = new Incidencia();
-                inc.setLocalId(cursor.getLong(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LOCAL_ID)));
-                inc.setId(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_FIRESTORE_ID)));
-                inc.setTitulo(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_TITULO)));
-                inc.setDescripcion(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_DESCRIPCION)));
-                inc.setUrgencia(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_URGENCIA)));
-                inc.setFotoPath(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_FOTOPATH)));
-                inc.setEstado(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_ESTADO)));
-                inc.setLatitud(cursor.getDouble(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LATITUD)));
-                inc.setLongitud(cursor.getDouble(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_LONGITUD)));
-                inc.setUserEmail(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_USER_EMAIL)));
-                inc.setIsSynced(cursor.getInt(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_IS_SYNCED)));
-                inc.setSyncAction(cursor.getString(cursor.getColumnIndexOrThrow(DbHelper.COLUMN_SYNC_ACTION)));
-                pendientes.add(inc);
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-
-        for (Incidencia inc : pendientes) {
-            String act = inc.getSyncAction();
-            if ("INSERT".equals(act)) {
-                firestoreDB.collection(COLLECTION_NAME).add(inc).addOnSuccessListener(doc -> {
-                    inc.setId(doc.getId());
-                    doc.set(inc);
-                    markAsSyncedInSQLite(inc.getLocalId(), doc.getId());
-                });
-            } else if ("UPDATE".equals(act)) {
-                if (inc.getId() != null) {
-                    firestoreDB.collection(COLLECTION_NAME).document(inc.getId()).set(inc).addOnSuccessListener(v -> {
-                        markAsSyncedInSQLite(inc.getLocalId(), inc.getId());
-                    });
+    /**
+     * La pasada en curso no terminó a tiempo: se da por fallida para todos los que
+     * esperaban y se permite empezar otra. Lo que ya se subió queda en el outbox y
+     * se repetirá sin efecto (ver {@link #writeVersioned}).
+     */
+    private void onOutboxSyncTimeout() {
+        List<FirestoreCallback> waiters;
+        synchronized (syncLock) {
+            if (!syncRunning)
+                return;
+            syncGeneration++;
+            syncRunning = false;
+            syncAgain = false;
+            waiters = new ArrayList<>(syncWaiters);
+            syncWaiters.clear();
+        }
+        Log.e(TAG, "La sincronización no terminó en " + SYNC_TIMEOUT_MS + " ms. Se reintentará luego.");
+        Exception error = new TimeoutException("Sin respuesta de Firestore");
+        for (FirestoreCallback waiter : waiters) {
+            waiter.onFailure(error);
+        }
+    }
+
+    /**
+     * Prepara el outbox en el hilo de base de datos y sube el resultado desde el
+     * hilo principal.
+     */
+    private void runOutboxPass(final int generation, final int syncedSoFar) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            final List<SyncOutbox.Change> subir;
+            try {
+                if (db == null || !db.isOpen())
+                    throw new IllegalStateException("Base de datos local no disponible");
+                subir = prepareOutboxForUpload(db);
+            } catch (Exception e) {
+                Log.e(TAG, "Error preparando la sincronización: " + e.getMessage());
+                mainHandler.post(() -> finishOutboxPass(generation, syncedSoFar, e));
+                return;
+            }
+            mainHandler.post(() -> uploadOutbox(generation, subir, syncedSoFar));
+        });
+    }
+
+    private void uploadOutbox(final int generation, final List<SyncOutbox.Change> subir, final int syncedSoFar) {
+        if (subir.isEmpty()) {
+            finishOutboxPass(generation, syncedSoFar, null);
+            return;
+        }
+
+        int totalBatches = (subir.size() + FIRESTORE_BATCH_LIMIT - 1) / FIRESTORE_BATCH_LIMIT;
+        final AtomicInteger remaining = new AtomicInteger(totalBatches);
+        final AtomicInteger synced = new AtomicInteger(syncedSoFar);
+        final AtomicReference<Exception> firstError = new AtomicReference<>();
+
+        for (int from = 0; from < subir.size(); from += FIRESTORE_BATCH_LIMIT) {
+            final List<SyncOutbox.Change> lote = subir.subList(from,
+                    Math.min(from + FIRESTORE_BATCH_LIMIT, subir.size()));
+
+            final OnFailureListener onFailure = e -> {
+                Log.e(TAG, "No se pudo sincronizar un lote de " + lote.size()
+                        + " cambios. Se intentará luego. Error: " + e.getMessage());
+                firstError.compareAndSet(null, e);
+                if (remaining.decrementAndGet() == 0)
+                    finishOutboxPass(generation, synced.get(), firstError.get());
+            };
+
+            readEditedDocuments(lote)
+                    .addOnSuccessListener(current -> writeVersionedBatch(lote, current).commit()
+                            .addOnSuccessListener(ignored -> dbExecutor.execute(() -> {
+                                SQLiteDatabase db = sqLiteDb;
+                                try {
+                                    acknowledgeBatchInSQLite(db, lote);
+                                    synced.addAndGet(lote.size());
+                                } catch (Exception e) {
+                                    // Los cambios siguen en el outbox; al repetirlos, writeVersioned
+                                    // detecta que ya están en el servidor
+                                    Log.e(TAG, "Error confirmando un lote en SQLite: " + e.getMessage());
+                                    firstError.compareAndSet(null, e);
+                                }
+                                mainHandler.post(() -> {
+                                    if (remaining.decrementAndGet() == 0)
+                                        finishOutboxPass(generation, synced.get(), firstError.get());
+                                });
+                            }))
+                            .addOnFailureListener(onFailure))
+                    .addOnFailureListener(onFailure);
+        }
+    }
+
+    /**
+     * Lee del servidor los documentos que editan los UPDATE de un lote, en
+     * consultas whereIn de hasta {@link #WHERE_IN_LIMIT} ID lanzadas a la vez.
+     * Las altas y los borrados no necesitan lectura: su ID se generó en local y
+     * escribirlos otra vez tiene el mismo resultado.
+     *
+     * @return Documentos existentes por ID (los borrados en el servidor no
+     *         aparecen).
+     */
+    private Task<Map<String, DocumentSnapshot>> readEditedDocuments(List<SyncOutbox.Change> lote) {
+        List<String> ids = new ArrayList<>();
+        for (SyncOutbox.Change change : lote) {
+            if (SyncOutbox.OP_UPDATE.equals(change.operation))
+                ids.add(change.incidencia.getId());
+        }
+        List<Task<QuerySnapshot>> reads = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += WHERE_IN_LIMIT) {
+            // Solo del servidor: una versión de la caché podría estar desfasada
+            reads.add(firestoreDB.collection(COLLECTION_NAME)
+                    .whereIn(FieldPath.documentId(), ids.subList(from, Math.min(from + WHERE_IN_LIMIT, ids.size())))
+                    .get(Source.SERVER));
+        }
+        return Tasks.<QuerySnapshot>whenAllSuccess(reads).continueWith(task -> {
+            if (!task.isSuccessful())
+                throw task.getException();
+            Map<String, DocumentSnapshot> current = new HashMap<>();
+            for (QuerySnapshot snapshot : task.getResult()) {
+                for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                    current.put(doc.getId(), doc);
+                }
+            }
+            return current;
+        });
+    }
+
+    /**
+     * Prepara las escrituras de un lote a partir de los documentos leídos por
+     * {@link #readEditedDocuments}.
+     */
+    private WriteBatch writeVersionedBatch(List<SyncOutbox.Change> lote, Map<String, DocumentSnapshot> current) {
+        WriteBatch batch = firestoreDB.batch();
+        for (SyncOutbox.Change change : lote) {
+            if (SyncOutbox.OP_DELETE.equals(change.operation)) {
+                batch.set(documentOf(change), tombstone(), SetOptions.merge());
+            } else {
+                change.committedVersion = writeVersioned(batch, change, current.get(change.incidencia.getId()));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Borrado lógico: el documento queda marcado como borrado con una marca de
+     * tiempo nueva, así que la descarga incremental de los demás dispositivos
+     * lo recibe y retira su copia ({@link #applyRemoteDocument}). Repetirlo no
+     * cambia el resultado.
+     */
+    private static Map<String, Object> tombstone() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(FIELD_DELETED, true);
+        data.put(FIELD_VERSION, FieldValue.increment(1));
+        data.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+        return data;
+    }
+
+    private static boolean isTombstone(DocumentSnapshot doc) {
+        return Boolean.TRUE.equals(doc.getBoolean(FIELD_DELETED));
+    }
+
+    private DocumentReference documentOf(SyncOutbox.Change change) {
+        return firestoreDB.collection(COLLECTION_NAME).document(change.incidencia.getId());
+    }
+
+    /**
+     * Alta o edición según la versión del servidor: si el documento sigue en la
+     * versión sobre la que se hizo el cambio (baseVersion), queda con
+     * baseVersion + 1.
+     * <ul>
+     * <li>Alta, o edición de un documento que se borró en el servidor (no existe
+     * o está marcado como borrado): se escribe completo, sin la marca. Repetir un
+     * alta ya subida escribe lo mismo.</li>
+     * <li>Versión distinta con los mismos valores: es una repetición de una
+     * subida ya aplicada; no se escribe nada. Si el documento avanzó más de una
+     * versión desde la base, otro usuario lo editó después y la copia local no
+     * tiene sus cambios: se trata como edición concurrente al confirmar.</li>
+     * <li>Versión distinta con otros valores: edición concurrente. Ganan los
+     * campos editados aquí (merge).</li>
+     * </ul>
+     * En las ediciones la versión se incrementa en el servidor (no se fija): si
+     * otro usuario escribe entre la lectura y el commit, el documento queda una
+     * versión por delante de la guardada aquí y la próxima descarga lo trae.
+     *
+     * @param snapshot Documento leído antes del lote, o null si no se leyó (alta)
+     *                 o no existe.
+     * @return Versión que queda en el servidor si nadie más escribe a la vez.
+     */
+    private long writeVersioned(WriteBatch batch, SyncOutbox.Change change, DocumentSnapshot snapshot) {
+        DocumentReference ref = documentOf(change);
+        Incidencia local = change.incidencia;
+        change.mergedConcurrent = false;
+        Long stored = snapshot != null ? snapshot.getLong(FIELD_VERSION) : null;
+        long remoteVersion = stored != null ? stored : 0;
+        if (snapshot == null || isTombstone(snapshot)) {
+            // Documento completo; updatedAt a null para que lo asigne el servidor
+            long version = Math.max(remoteVersion, change.baseVersion) + 1;
+            local.setUpdatedAt(null);
+            local.setVersion(version);
+            batch.set(ref, local);
+            return version;
+        }
+
+        int fields = change.fields;
+        if (remoteVersion != change.baseVersion) {
+            Incidencia remote = snapshot.toObject(Incidencia.class);
+            if ((SyncOutbox.changedFields(remote, local) & fields) == 0) {
+                change.mergedConcurrent = remoteVersion != change.baseVersion + 1;
+                return remoteVersion;
+            }
+            Log.w(TAG, "Edición concurrente en " + ref.getId() + " (versión " + remoteVersion + ", base "
+                    + change.baseVersion + "): se conserva la edición local");
+            change.mergedConcurrent = true;
+        }
+
+        // Solo los campos editados (merge): no pisa los que otro usuario haya
+        // cambiado a la vez
+        Map<String, Object> data = SyncOutbox.toFirestoreFields(local, fields);
+        data.put(FIELD_VERSION, FieldValue.increment(1));
+        data.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+        batch.set(ref, data, SetOptions.merge());
+        return remoteVersion + 1;
+    }
+
+    /**
+     * Cierra una pasada: lanza otra si se pidió una sincronización mientras tanto
+     * (y esta no falló) o entrega el resultado a todos los que esperaban. Se
+     * ignora si la sincronización ya venció por tiempo.
+     */
+    private void finishOutboxPass(int generation, int synced, Exception error) {
+        List<FirestoreCallback> waiters;
+        synchronized (syncLock) {
+            if (generation != syncGeneration)
+                return;
+            mainHandler.removeCallbacks(syncWatchdog);
+            if (error == null && syncAgain) {
+                syncAgain = false;
+                waiters = null;
+            } else {
+                syncRunning = false;
+                syncAgain = false;
+                waiters = new ArrayList<>(syncWaiters);
+                syncWaiters.clear();
+            }
+        }
+        if (waiters == null) {
+            // Cada pasada tiene su propio plazo
+            mainHandler.postDelayed(syncWatchdog, SYNC_TIMEOUT_MS);
+            runOutboxPass(generation, synced);
+            return;
+        }
+        for (FirestoreCallback waiter : waiters) {
+            if (error != null) {
+                waiter.onFailure(error);
+            } else {
+                waiter.onSuccess(String.valueOf(synced));
+            }
+        }
+    }
+
+    /**
+     * Agrupa el outbox y, en una transacción, resuelve en local lo que no
+     * necesita red (cambios que se anulan o borrados de incidencias sin ID de
+     * Firestore, ver {@link SyncOutbox#uploadOperation}) y asigna ID a las que
+     * aún no lo tienen.
+     *
+     * @return Cambios que deben subirse, con el estado actual de cada fila.
+     */
+    private List<SyncOutbox.Change> prepareOutboxForUpload(SQLiteDatabase db) {
+        List<SyncOutbox.Change> subir = new ArrayList<>();
+        beginWrite(db);
+        try {
+            for (SyncOutbox.Change pending : SyncOutbox.loadCoalesced(db)) {
+                Incidencia inc = findByLocalId(db, pending.localId);
+                boolean hasFirestoreId = inc != null && inc.getId() != null && !inc.getId().isEmpty();
+                String operation = SyncOutbox.uploadOperation(pending.operation, hasFirestoreId);
+
+                if (inc == null || operation == null) {
+                    // Nada que subir: retirar de la cola y borrar la fila si estaba borrada
+                    SyncOutbox.acknowledge(db, pending.localId, pending.maxSeq);
+                    if (inc != null)
+                        deleteFromSQLite(db, pending.localId);
+                    continue;
+                }
+                SyncOutbox.Change change = operation.equals(pending.operation) ? pending
+                        : new SyncOutbox.Change(pending.localId, operation, pending.fields, pending.minSeq,
+                                pending.maxSeq);
+                if (!hasFirestoreId) {
+                    String firestoreId = firestoreDB.collection(COLLECTION_NAME).document().getId();
+                    inc.setId(firestoreId);
+                    assignFirestoreIdInSQLite(db, change.localId, firestoreId);
                 }
-            } else if ("DELETE".equals(act)) {
-                if (inc.getId() != null) {
-                    firestoreDB.collection(COLLECTION_NAME).document(inc.getId()).delete().addOnSuccessListener(v -> {
-                        deleteFromSQLite(inc.getLocalId());
+                change.incidencia = inc;
+                change.baseVersion = inc.getVersion();
+                subir.add(change);
+            }
+            markWriteSuccessful(db);
+        } finally {
+            endWrite(db);
+        }
+        return subir;
+    }
+
+    /**
+     * Refleja en SQLite un lote confirmado por Firestore en una única transacción:
+     * retira sus operaciones del outbox, borra físicamente las eliminadas, guarda
+     * la versión que quedó en el servidor (base de los cambios siguientes) y marca
+     * como sincronizadas las que no tienen cambios posteriores.
+     *
+     * @throws IllegalStateException si la base de datos no está disponible: el
+     *                               lote no puede darse por confirmado.
+     */
+    private void acknowledgeBatchInSQLite(SQLiteDatabase db, List<SyncOutbox.Change> lote) {
+        if (db == null || !db.isOpen())
+            throw new IllegalStateException("Base de datos local no disponible al confirmar un lote");
+
+        beginWrite(db);
+        try {
+            for (SyncOutbox.Change change : lote) {
+                boolean morePending = SyncOutbox.acknowledge(db, change.localId, change.maxSeq);
+                if (SyncOutbox.OP_DELETE.equals(change.operation)) {
+                    deleteFromSQLite(db, change.localId);
+                } else {
+                    // Si el servidor tiene ediciones de otro usuario (fusionadas con esta o
+                    // posteriores a una subida repetida), la copia local no tiene sus
+                    // campos: se guarda la versión anterior para que la próxima descarga
+                    // traiga el documento completo
+                    long version = change.mergedConcurrent ? change.committedVersion - 1 : change.committedVersion;
+                    markAsSyncedInSQLite(db, change.localId, change.incidencia.getId(), version, !morePending);
+                }
+            }
+            markWriteSuccessful(db);
+        } finally {
+            endWrite(db);
+        }
+    }
+
+    /**
+     * Descarga de Firestore solo los documentos modificados desde la última
+     * descarga (campo updatedAt posterior al cursor guardado) y los aplica a
+     * SQLite. Pagina de {@link #PULL_PAGE_SIZE} en {@link #PULL_PAGE_SIZE}
+     * documentos; cada página se aplica, junto con el avance del cursor, en una
+     * única transacción en segundo plano.
+     * <p>
+     * Las incidencias con cambios locales pendientes en el outbox no se
+     * sobrescriben: se resolverán cuando se suban. Los borrados llegan como
+     * documentos marcados ({@link #tombstone}); los documentos borrados
+     * físicamente (p. ej. desde la consola) no aparecen en la consulta y solo
+     * los detecta la escucha en tiempo real.
+     * </p>
+     *
+     * @param callback Opcional. onSuccess recibe el número de incidencias
+     *                 aplicadas.
+     */
+    public void pullFromFirestore(final FirestoreCallback callback) {
+        pullPage(0, callback);
+    }
+
+    private void pullPage(final int appliedSoFar, final FirestoreCallback callback) {
+        loadDeltaQuery(query -> {
+            if (query == null) {
+                if (callback != null)
+                    callback.onFailure(new Exception("Base de datos local no disponible"));
+                return;
+            }
+            fetchPage(query, appliedSoFar, callback);
+        });
+    }
+
+    private void fetchPage(Query query, final int appliedSoFar, final FirestoreCallback callback) {
+        query.limit(PULL_PAGE_SIZE).get()
+                .addOnSuccessListener(snapshot -> dbExecutor.execute(() -> {
+                    SQLiteDatabase db = sqLiteDb;
+                    int applied;
+                    try {
+                        if (db == null || !db.isOpen())
+                            throw new IllegalStateException("Base de datos local no disponible");
+                        applied = applyRemoteChanges(db, snapshot.getDocuments(), new ArrayList<>());
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error aplicando cambios remotos: " + e.getMessage());
+                        if (callback != null)
+                            mainHandler.post(() -> callback.onFailure(e));
+                        return;
+                    }
+                    final int total = appliedSoFar + applied;
+                    mainHandler.post(() -> {
+                        if (snapshot.size() == PULL_PAGE_SIZE) {
+                            pullPage(total, callback);
+                        } else if (callback != null) {
+                            callback.onSuccess(String.valueOf(total));
+                        }
                     });
+                }))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "No se pudieron descargar cambios de Firestore: " + e.getMessage());
+                    if (callback != null)
+                        callback.onFailure(e);
+                });
+    }
+
+    /**
+     * LIVE: Escucha en tiempo real los cambios de incidencias_v2 posteriores al
+     * cursor de descarga y los vuelca en SQLite.
+     * <p>
+     * Los cambios se acumulan durante {@link #LIVE_DEBOUNCE_MS} ms (por documento
+     * solo cuenta el último) y se aplican juntos en una transacción en segundo
+     * plano; después se avisa una sola vez al listener, de modo que una ráfaga de
+     * cambios produce un único refresco de la interfaz. Se ignoran las
+     * escrituras locales aún no confirmadas por el servidor.
+     * </p>
+     *
+     * @param listener Recibe en el hilo principal el número de incidencias
+     *                 modificadas en cada aplicación.
+     * @return Registro a cancelar con remove() (p. ej. en onStop).
+     */
+    public ListenerRegistration startLiveUpdates(final LiveUpdatesListener listener) {
+        final LiveUpdateBuffer buffer = new LiveUpdateBuffer(listener);
+        // La escucha empieza cuando se ha leído el cursor; si se cancela antes, no
+        // llega a registrarse
+        final ListenerRegistration[] registration = new ListenerRegistration[1];
+        loadDeltaQuery(query -> {
+            if (query == null || buffer.cancelled)
+                return;
+            registration[0] = query.addSnapshotListener((snapshots, e) -> {
+                if (e != null) {
+                    Log.e(TAG, "Error en la escucha en tiempo real: " + e.getMessage());
+                    return;
+                }
+                if (snapshots != null)
+                    buffer.add(snapshots.getDocumentChanges());
+            });
+        });
+        return () -> {
+            if (registration[0] != null)
+                registration[0].remove();
+            buffer.cancel();
+        };
+    }
+
+    /**
+     * Acumula (en el hilo principal) los cambios recibidos por el snapshot
+     * listener hasta que vence la ventana de agrupación.
+     */
+    private class LiveUpdateBuffer implements Runnable {
+        private final LiveUpdatesListener listener;
+        private final Map<String, DocumentSnapshot> changed = new LinkedHashMap<>();
+        private final Set<String> removed = new LinkedHashSet<>();
+        private boolean scheduled;
+        private boolean cancelled;
+
+        LiveUpdateBuffer(LiveUpdatesListener listener) {
+            this.listener = listener;
+        }
+
+        void add(List<DocumentChange> changes) {
+            for (DocumentChange change : changes) {
+                DocumentSnapshot doc = change.getDocument();
+                if (doc.getMetadata().hasPendingWrites())
+                    continue;
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    changed.remove(doc.getId());
+                    removed.add(doc.getId());
                 } else {
-                    deleteFromSQLite(inc.getLocalId());
+                    removed.remove(doc.getId());
+                    changed.put(doc.getId(), doc);
                 }
             }
+            if (!scheduled && !cancelled && (!changed.isEmpty() || !removed.isEmpty())) {
+                scheduled = true;
+                mainHandler.postDelayed(this, LIVE_DEBOUNCE_MS);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            mainHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            scheduled = false;
+            final List<DocumentSnapshot> docs = new ArrayList<>(changed.values());
+            final List<String> removedIds = new ArrayList<>(removed);
+            changed.clear();
+            removed.clear();
+
+            dbExecutor.execute(() -> {
+                SQLiteDatabase db = sqLiteDb;
+                int applied = 0;
+                try {
+                    if (db != null && db.isOpen())
+                        applied = applyRemoteChanges(db, docs, removedIds);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error aplicando cambios en tiempo real: " + e.getMessage());
+                }
+                final int result = applied;
+                mainHandler.post(() -> {
+                    if (!cancelled && result > 0 && listener != null)
+                        listener.onRemoteChangesApplied(result);
+                });
+            });
         }
     }
 
-    // --- MÉTODOS AUXILIARES Y COUNT ---
+    private interface QueryCallback {
+        void onQueryReady(Query query);
+    }
 
-    private void sortIncidencias(List<Incidencia> lista) {
-        java.util.Collections.sort(lista, new java.util.Comparator<Incidencia>() {
-            @Override
-            public int compare(Incidencia i1, Incidencia i2) {
-                int s1 = getStatusPriority(i1.getEstado());
-                int s2 = getStatusPriority(i2.getEstado());
-                if (s1 != s2)
-                    return Integer.compare(s1, s2);
-                int u1 = getUrgencyPriority(i1.getUrgencia());
-                int u2 = getUrgencyPriority(i2.getUrgencia());
-                return Integer.compare(u1, u2);
+    /**
+     * Documentos de la colección modificados después del cursor guardado. El
+     * orden total (updatedAt, id) evita saltar documentos con la misma marca de
+     * tiempo. El cursor se lee en el hilo de base de datos y la consulta se
+     * entrega en el hilo principal (null si no se pudo leer).
+     */
+    private void loadDeltaQuery(QueryCallback callback) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            Query query = null;
+            try {
+                if (db != null && db.isOpen()) {
+                    query = firestoreDB.collection(COLLECTION_NAME)
+                            .orderBy(FIELD_UPDATED_AT)
+                            .orderBy(FieldPath.documentId());
+                    String seconds = getSyncState(db, STATE_PULL_SECONDS);
+                    String docId = getSyncState(db, STATE_PULL_DOC_ID);
+                    if (seconds != null && docId != null) {
+                        String nanos = getSyncState(db, STATE_PULL_NANOS);
+                        Timestamp cursor = new Timestamp(Long.parseLong(seconds),
+                                nanos != null ? Integer.parseInt(nanos) : 0);
+                        query = query.startAfter(cursor, docId);
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error leyendo el cursor de descarga: " + e.getMessage());
+                query = null;
             }
+            final Query result = query;
+            mainHandler.post(() -> callback.onQueryReady(result));
         });
     }
 
-    private int getStatusPriority(String status) {
-        if (status == null)
-            return 4;
-        switch (status) {
-            case "En proceso":
-                return 1;
-            case "Pendiente":
-                return 2;
-            case "Resuelta":
-                return 3;
-            default:
-                return 4;
+    /**
+     * Aplica documentos remotos (y borrados) y avanza el cursor de descarga hasta
+     * el más reciente, todo en una sola transacción.
+     *
+     * @return Número de incidencias insertadas, actualizadas o borradas.
+     */
+    private int applyRemoteChanges(SQLiteDatabase db, List<DocumentSnapshot> documents,
+            List<String> removedIds) {
+        int applied = 0;
+        beginWrite(db);
+        try {
+            Timestamp maxUpdatedAt = null;
+            String maxDocId = null;
+            for (DocumentSnapshot doc : documents) {
+                if (applyRemoteDocument(db, doc))
+                    applied++;
+                Timestamp updatedAt = doc.getTimestamp(FIELD_UPDATED_AT);
+                if (updatedAt != null && (maxUpdatedAt == null || updatedAt.compareTo(maxUpdatedAt) > 0
+                        || (updatedAt.equals(maxUpdatedAt) && doc.getId().compareTo(maxDocId) > 0))) {
+                    maxUpdatedAt = updatedAt;
+                    maxDocId = doc.getId();
+                }
+            }
+            for (String firestoreId : removedIds) {
+                if (applyRemoteRemoval(db, firestoreId))
+                    applied++;
+            }
+            if (maxUpdatedAt != null) {
+                putSyncState(db, STATE_PULL_SECONDS, String.valueOf(maxUpdatedAt.getSeconds()));
+                putSyncState(db, STATE_PULL_NANOS, String.valueOf(maxUpdatedAt.getNanoseconds()));
+                putSyncState(db, STATE_PULL_DOC_ID, maxDocId);
+            }
+            markWriteSuccessful(db);
+        } finally {
+            endWrite(db);
+        }
+        return applied;
+    }
+
+    /**
+     * Inserta o actualiza en SQLite la versión remota de una incidencia, o la
+     * borra si el documento está marcado como borrado. Debe llamarse dentro de
+     * una transacción.
+     *
+     * @return true si se modificó la copia local.
+     */
+    private boolean applyRemoteDocument(SQLiteDatabase db, DocumentSnapshot doc) {
+        if (isTombstone(doc))
+            return applyRemoteRemoval(db, doc.getId());
+        Incidencia remote = doc.toObject(Incidencia.class);
+        if (remote == null)
+            return false;
+        remote.setId(doc.getId());
+        remote.setIsSynced(1);
+
+        Incidencia local = findByFirestoreId(db, doc.getId());
+        if (local == null) {
+            // Incidencia nueva de otro usuario (el localId remoto no aplica aquí)
+            remote.setLocalId(-1);
+            remote.setSyncAction(SyncOutbox.OP_INSERT);
+            return insertIntoSQLite(db, remote) != -1;
+        }
+        remote.setLocalId(local.getLocalId());
+        remote.setSyncAction(local.getSyncAction());
+
+        SyncOutbox.Change pending = SyncOutbox.pendingChange(db, local.getLocalId());
+        if (pending == null) {
+            // Sin cambios locales: se aplica la versión remota si es más nueva
+            if (remote.getVersion() != 0 && remote.getVersion() <= local.getVersion())
+                return false;
+            return updateInSQLite(db, remote) > 0;
+        }
+        if (!SyncOutbox.OP_UPDATE.equals(pending.operation) || remote.getVersion() <= local.getVersion()) {
+            // Alta o borrado local pendiente, o nada nuevo en el servidor
+            return false;
+        }
+
+        // Edición concurrente: fusión campo a campo. Se toman los campos remotos
+        // salvo los editados aquí, que se subirán después con un merge parcial
+        int conflicts = SyncOutbox.changedFields(local, remote) & pending.fields;
+        if (conflicts != 0) {
+            Log.w(TAG, "Edición concurrente en " + doc.getId() + " (campos " + Integer.toBinaryString(conflicts)
+                    + "): se conserva la edición local");
         }
+        SyncOutbox.copyFields(local, remote, pending.fields);
+        remote.setIsSynced(0);
+        return updateInSQLite(db, remote) > 0;
     }
 
-    private int getUrgencyPriority(String urgency) {
-        if (urgency == null)
-            return 4;
-        switch (urgency) {
-            case "Alta":
-                return 1;
-            case "Media":
-                return 2;
-            case "Baja":
-                return 3;
-            default:
-                return 4;
+    /**
+     * Borra la copia local de un documento eliminado en Firestore, salvo que
+     * tenga cambios locales pendientes. Debe llamarse dentro de una transacción.
+     */
+    private boolean applyRemoteRemoval(SQLiteDatabase db, String firestoreId) {
+        Incidencia local = findByFirestoreId(db, firestoreId);
+        if (local == null || SyncOutbox.hasPending(db, local.getLocalId()))
+            return false;
+        return deleteFromSQLite(db, local.getLocalId()) > 0;
+    }
+
+    private Incidencia findByFirestoreId(SQLiteDatabase db, String firestoreId) {
+        Cursor cursor = db.query(DbHelper.TABLE_INCIDENCIAS, IncidenciaCursorMapper.PROJECTION_ALL,
+                DbHelper.COLUMN_FIRESTORE_ID + "=?", new String[] { firestoreId }, null, null, null, "1");
+        List<Incidencia> found = IncidenciaCursorMapper.mapAll(cursor);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private String getSyncState(SQLiteDatabase db, String key) {
+        Cursor cursor = db.query(DbHelper.TABLE_SYNC_STATE, new String[] { DbHelper.COLUMN_SYNC_STATE_VALUE },
+                DbHelper.COLUMN_SYNC_STATE_KEY + "=?", new String[] { key }, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
         }
     }
 
+    private void putSyncState(SQLiteDatabase db, String key, String value) {
+        ContentValues values = new ContentValues();
+        values.put(DbHelper.COLUMN_SYNC_STATE_KEY, key);
+        values.put(DbHelper.COLUMN_SYNC_STATE_VALUE, value);
+        db.insertWithOnConflict(DbHelper.TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // --- MÉTODOS AUXILIARES Y COUNT ---
+
     /**
      * COUNT: Cuenta incidencias activas (no DELETE) en Local.
+     * Lectura directa de los contadores incrementales (O(1)).
      */
-    public void getIncidenciasCount(String userEmail, String estado, CountCallback callback) {
-        if (sqLiteDb == null || !sqLiteDb.isOpen()) {
+    public void getIncidenciasCount(String userEmail, EstadoIncidencia estado, CountCallback callback) {
+        SQLiteDatabase db = sqLiteDb;
+        if (db == null || !db.isOpen()) {
             if (callback != null)
                 callback.onCountLoaded(0);
             return;
         }
 
-        StringBuilder selection = new StringBuilder(DbHelper.COLUMN_SYNC_ACTION + " != 'DELETE'");
-        List<String> argsList = new ArrayList<>();
-
-        if (userEmail != null) {
-            selection.append(" AND ").append(DbHelper.COLUMN_USER_EMAIL).append(" = ?");
-            argsList.add(userEmail);
-        }
+        String scope = userEmail != null ? userEmail : IncidenciaCounters.SCOPE_GLOBAL;
+        int count;
         if (estado != null) {
-            selection.append(" AND ").append(DbHelper.COLUMN_ESTADO).append(" = ?");
-            argsList.add(estado);
+            count = IncidenciaCounters.get(db, scope, IncidenciaCounters.DIMENSION_ESTADO,
+                    IncidenciaCounters.key(estado));
+        } else {
+            count = IncidenciaCounters.get(db, scope, IncidenciaCounters.DIMENSION_TOTAL, "");
         }
-
-        Cursor cursor = sqLiteDb.query(DbHelper.TABLE_INCIDENCIAS, null,
-                selection.toString(), argsList.toArray(new String[0]), null, null, null);
-
-        int count = cursor.getCount();
-        cursor.close();
         if (callback != null)
             callback.onCountLoaded(count);
     }
+
+    /**
+     * STATS: Recuento por estado de las incidencias activas de un usuario (o de
+     * todas si userEmail es null), leído de los contadores incrementales.
+     * Se ejecuta en segundo plano y el resultado se entrega en el hilo principal.
+     */
+    public void getIncidenciasStats(String userEmail, StatsCallback callback) {
+        dbExecutor.execute(() -> {
+            SQLiteDatabase db = sqLiteDb;
+            IncidenciaStats stats = new IncidenciaStats();
+            try {
+                if (db != null && db.isOpen()) {
+                    stats = IncidenciaCounters.getStats(db,
+                            userEmail != null ? userEmail : IncidenciaCounters.SCOPE_GLOBAL);
+                }
+            } catch (Exception e) {
+                // La BD puede haberse cerrado (onDestroy) mientras la consulta esperaba
+                Log.e(TAG, "Error calculando estadísticas: " + e.getMessage());
+            }
+            final IncidenciaStats result = stats;
+            if (callback != null)
+                mainHandler.post(() -> callback.onStatsLoaded(result));
+        });
+    }
+
+    /**
+     * Comprueba que los contadores incrementales coinciden con los datos reales y
+     * los reconstruye si no es así (p. ej. tras un fallo a mitad de escritura en
+     * versiones anteriores o una migración).
+     *
+     * @return true si hubo que reconstruirlos.
+     */
+    public boolean verifyCounters() {
+        SQLiteDatabase db = sqLiteDb;
+        try {
+            if (db == null || !db.isOpen())
+                return false;
+            if (IncidenciaCounters.isConsistent(db))
+                return false;
+            Log.w(TAG, "Contadores inconsistentes. Reconstruyendo desde la tabla de incidencias.");
+            IncidenciaCounters.rebuild(db);
+            invalidate(DbHelper.TABLE_COUNTERS);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error verificando contadores: " + e.getMessage());
+            return false;
+        }
+    }
 }
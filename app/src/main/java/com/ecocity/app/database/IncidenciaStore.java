@@ -0,0 +1,629 @@
+package com.ecocity.app.database;
+
+import android.database.Cursor;
+
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.model.Incidencia;
+import com.ecocity.app.model.UrgenciaIncidencia;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Almacén de solo lectura de incidencias en formato columnar.
+ * <p>
+ * En lugar de un objeto {@link Incidencia} por fila, cada campo se guarda en
+ * un array primitivo paralelo (double[] para coordenadas, byte[] para los
+ * códigos de estado y urgencia, long[] para ids y versiones) y los textos se
+ * guardan como índices int[] a un único pool de Strings sin duplicados
+ * (emails, acciones de sincronización y rutas repetidas ocupan una sola vez).
+ * Por fila solo quedan vivos los textos que no se repiten (ID de Firestore,
+ * título y descripción); el objeto Incidencia, su Date y los textos repetidos
+ * desaparecen, y con ellos buena parte de la memoria y de las pausas de GC
+ * (lo mide heap_50kRows en IncidenciaReadBenchmarkTest). El índice
+ * texto -> posición solo existe mientras se construye.
+ * </p>
+ * <p>
+ * Es inmutable: las reordenaciones ({@link #select}) y los cambios de una fila
+ * ({@link #withRow}) devuelven un almacén nuevo que comparte el pool. Los arrays devueltos por {@link #getLocalIds()},
+ * {@link #getLatitudes()} y {@link #getLongitudes()} son los internos y no
+ * deben modificarse. Para abrir una incidencia concreta (Intent, edición) se
+ * materializa con {@link #toIncidencia(int)}.
+ * </p>
+ */
+public final class IncidenciaStore {
+
+    // Índice de pool para valores null
+    private static final int NULL_STRING = -1;
+
+    // Textos añadidos por withRow a partir de los cuales se compacta el pool
+    // (como mínimo, y como fracción de su tamaño tras la última compactación)
+    static final int COMPACT_MIN_APPENDED = 64;
+
+    public static final IncidenciaStore EMPTY = new Builder(0).build();
+
+    private final int size;
+    private final SharedPool pool;
+    // Textos del pool que existían al crear este almacén (los únicos que usa)
+    private final int poolSize;
+
+    private final long[] localIds;
+    private final int[] firestoreIds;
+    private final int[] titulos;
+    private final int[] descripciones;
+    private final int[] fotoPaths;
+    // Versiones reducidas de la foto generadas en el dispositivo
+    private final int[] thumbPaths;
+    private final int[] previewPaths;
+    private final int[] userEmails;
+    private final int[] syncActions;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final byte[] estados;
+    private final byte[] urgencias;
+    private final byte[] synced;
+    private final long[] updatedAts;
+    private final long[] versions;
+    // Hash de los campos visibles en la lista (ver contentHash)
+    private final int[] contentHashes;
+
+    private IncidenciaStore(int size, SharedPool pool, int poolSize, long[] localIds, int[] firestoreIds, int[] titulos,
+            int[] descripciones, int[] fotoPaths, int[] thumbPaths, int[] previewPaths, int[] userEmails,
+            int[] syncActions, double[] latitudes, double[] longitudes, byte[] estados, byte[] urgencias,
+            byte[] synced, long[] updatedAts, long[] versions, int[] contentHashes) {
+        this.size = size;
+        this.pool = pool;
+        this.poolSize = poolSize;
+        this.localIds = localIds;
+        this.firestoreIds = firestoreIds;
+        this.titulos = titulos;
+        this.descripciones = descripciones;
+        this.fotoPaths = fotoPaths;
+        this.thumbPaths = thumbPaths;
+        this.previewPaths = previewPaths;
+        this.userEmails = userEmails;
+        this.syncActions = syncActions;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.estados = estados;
+        this.urgencias = urgencias;
+        this.synced = synced;
+        this.updatedAts = updatedAts;
+        this.versions = versions;
+        this.contentHashes = contentHashes;
+    }
+
+    /**
+     * Recorre el Cursor completo, lo vuelca en un almacén y lo cierra.
+     *
+     * @param cursor Cursor sobre la tabla incidencias con
+     *               {@link IncidenciaCursorMapper#PROJECTION_ALL}.
+     */
+    static IncidenciaStore fromCursor(Cursor cursor) {
+        try {
+            Builder builder = new Builder(cursor.getCount());
+            if (cursor.moveToFirst()) {
+                IncidenciaCursorMapper mapper = new IncidenciaCursorMapper(cursor);
+                do {
+                    mapper.mapInto(cursor, builder);
+                } while (cursor.moveToNext());
+            }
+            return builder.build();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Número de incidencias (filas).
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // --- Acceso por fila ---
+
+    public long getLocalId(int row) {
+        return localIds[row];
+    }
+
+    public String getFirestoreId(int row) {
+        return string(firestoreIds[row]);
+    }
+
+    public String getTitulo(int row) {
+        return string(titulos[row]);
+    }
+
+    public String getDescripcion(int row) {
+        return string(descripciones[row]);
+    }
+
+    public String getFotoPath(int row) {
+        return string(fotoPaths[row]);
+    }
+
+    public String getThumbPath(int row) {
+        return string(thumbPaths[row]);
+    }
+
+    public String getPreviewPath(int row) {
+        return string(previewPaths[row]);
+    }
+
+    public String getUserEmail(int row) {
+        return string(userEmails[row]);
+    }
+
+    public double getLatitud(int row) {
+        return latitudes[row];
+    }
+
+    public double getLongitud(int row) {
+        return longitudes[row];
+    }
+
+    public EstadoIncidencia getStatus(int row) {
+        return EstadoIncidencia.fromCode(estados[row]);
+    }
+
+    public UrgenciaIncidencia getUrgency(int row) {
+        return UrgenciaIncidencia.fromCode(urgencias[row]);
+    }
+
+    /**
+     * Código de estado (comparación directa de bytes al agrupar).
+     */
+    public int getStatusCode(int row) {
+        return estados[row];
+    }
+
+    /**
+     * Código de urgencia (comparación directa de bytes al ordenar).
+     */
+    public int getUrgencyCode(int row) {
+        return urgencias[row];
+    }
+
+    public long getVersion(int row) {
+        return versions[row];
+    }
+
+    /**
+     * Hash de lo que muestra la fila en la lista (título, descripción, foto,
+     * estado, urgencia y ubicación). Dos filas con distinto hash seguro que se
+     * ven distintas.
+     */
+    public int getContentHash(int row) {
+        return contentHashes[row];
+    }
+
+    // --- Columnas completas (solo lectura) ---
+
+    public long[] getLocalIds() {
+        return localIds;
+    }
+
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    /**
+     * Materializa una fila como {@link Incidencia} (para pasarla en un Intent o
+     * editarla). Crea un objeto nuevo en cada llamada.
+     */
+    public Incidencia toIncidencia(int row) {
+        Incidencia inc = new Incidencia();
+        inc.setLocalId(localIds[row]);
+        inc.setId(getFirestoreId(row));
+        inc.setTitulo(getTitulo(row));
+        inc.setDescripcion(getDescripcion(row));
+        inc.setUrgency(getUrgency(row));
+        inc.setFotoPath(getFotoPath(row));
+        inc.setThumbPath(getThumbPath(row));
+        inc.setPreviewPath(getPreviewPath(row));
+        inc.setStatus(getStatus(row));
+        inc.setLatitud(latitudes[row]);
+        inc.setLongitud(longitudes[row]);
+        inc.setUserEmail(getUserEmail(row));
+        if (updatedAts[row] > 0)
+            inc.setUpdatedAt(new Date(updatedAts[row]));
+        inc.setVersion(versions[row]);
+        inc.setIsSynced(synced[row]);
+        inc.setSyncAction(string(syncActions[row]));
+        return inc;
+    }
+
+    /**
+     * Almacén con las incidencias dadas, en ese orden (inverso de
+     * {@link #toIncidencia}).
+     */
+    static IncidenciaStore fromIncidencias(List<Incidencia> incidencias) {
+        Builder builder = new Builder(incidencias.size());
+        for (Incidencia inc : incidencias) {
+            int row = builder.size++;
+            builder.localIds[row] = inc.getLocalId();
+            builder.firestoreIds[row] = builder.intern(inc.getId());
+            builder.titulos[row] = builder.intern(inc.getTitulo());
+            builder.descripciones[row] = builder.intern(inc.getDescripcion());
+            builder.urgencias[row] = (byte) inc.getUrgency().getCode();
+            builder.fotoPaths[row] = builder.intern(inc.getFotoPath());
+            builder.thumbPaths[row] = builder.intern(inc.getThumbPath());
+            builder.previewPaths[row] = builder.intern(inc.getPreviewPath());
+            builder.estados[row] = (byte) inc.getStatus().getCode();
+            builder.latitudes[row] = inc.getLatitud();
+            builder.longitudes[row] = inc.getLongitud();
+            builder.userEmails[row] = builder.intern(inc.getUserEmail());
+            builder.updatedAts[row] = inc.getUpdatedAt() != null ? inc.getUpdatedAt().getTime() : 0;
+            builder.versions[row] = inc.getVersion();
+            builder.synced[row] = (byte) inc.getIsSynced();
+            builder.syncActions[row] = builder.intern(inc.getSyncAction());
+            builder.contentHashes[row] = builder.contentHash(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Almacén nuevo con las filas indicadas, en ese orden (p. ej. el resultado de
+     * ordenar por cercanía). Comparte el pool de Strings con este.
+     *
+     * @param rows Filas de este almacén.
+     */
+    public IncidenciaStore select(int[] rows) {
+        int n = rows.length;
+        long[] sLocalIds = new long[n];
+        int[] sFirestoreIds = new int[n];
+        int[] sTitulos = new int[n];
+        int[] sDescripciones = new int[n];
+        int[] sFotoPaths = new int[n];
+        int[] sThumbPaths = new int[n];
+        int[] sPreviewPaths = new int[n];
+        int[] sUserEmails = new int[n];
+        int[] sSyncActions = new int[n];
+        double[] sLatitudes = new double[n];
+        double[] sLongitudes = new double[n];
+        byte[] sEstados = new byte[n];
+        byte[] sUrgencias = new byte[n];
+        byte[] sSynced = new byte[n];
+        long[] sUpdatedAts = new long[n];
+        long[] sVersions = new long[n];
+        int[] sContentHashes = new int[n];
+        for (int i = 0; i < n; i++) {
+            int r = rows[i];
+            sLocalIds[i] = localIds[r];
+            sFirestoreIds[i] = firestoreIds[r];
+            sTitulos[i] = titulos[r];
+            sDescripciones[i] = descripciones[r];
+            sFotoPaths[i] = fotoPaths[r];
+            sThumbPaths[i] = thumbPaths[r];
+            sPreviewPaths[i] = previewPaths[r];
+            sUserEmails[i] = userEmails[r];
+            sSyncActions[i] = syncActions[r];
+            sLatitudes[i] = latitudes[r];
+            sLongitudes[i] = longitudes[r];
+            sEstados[i] = estados[r];
+            sUrgencias[i] = urgencias[r];
+            sSynced[i] = synced[r];
+            sUpdatedAts[i] = updatedAts[r];
+            sVersions[i] = versions[r];
+            sContentHashes[i] = contentHashes[r];
+        }
+        return new IncidenciaStore(n, pool, poolSize, sLocalIds, sFirestoreIds, sTitulos, sDescripciones, sFotoPaths,
+                sThumbPaths, sPreviewPaths, sUserEmails, sSyncActions, sLatitudes, sLongitudes, sEstados, sUrgencias, sSynced, sUpdatedAts,
+                sVersions, sContentHashes);
+    }
+
+    /**
+     * Fila de una incidencia por su local_id, o -1 si no está. Recorre la
+     * columna de ids (array primitivo, sin asignar memoria).
+     */
+    public int indexOf(long localId) {
+        for (int row = 0; row < size; row++) {
+            if (localIds[row] == localId)
+                return row;
+        }
+        return -1;
+    }
+
+    /**
+     * Almacén nuevo en el que la incidencia localId se sustituye por la fila
+     * srcRow de src, o se retira si src es null. La fila nueva se coloca en su
+     * sitio del orden de la lista (estado, urgencia, local_id), el mismo que
+     * devuelve {@link IncidenciaDAO#getIncidenciaStore(IncidenciaDAO.StoreCallback)}.
+     * <p>
+     * Copia las columnas (coste lineal, sin objetos por fila) pero no el pool:
+     * los textos de la fila nueva se buscan en él y solo se añaden los que no
+     * estaban. Si este almacén no es el último que añadió textos a su pool (p. ej.
+     * se deriva dos veces del mismo), se parte de una copia. Cuando los textos
+     * añadidos superan {@link #COMPACT_MIN_APPENDED} y la mitad del pool, se
+     * reconstruye con solo los textos en uso.
+     * </p>
+     * <p>
+     * Debe llamarse siempre desde el mismo hilo (el adaptador lo hace en el
+     * principal).
+     * </p>
+     */
+    public IncidenciaStore withRow(long localId, IncidenciaStore src, int srcRow) {
+        int removed = indexOf(localId);
+        int capacity = size - (removed >= 0 ? 1 : 0) + (src != null ? 1 : 0);
+        SharedPool target = poolSize > 0 && pool.isTip(poolSize) ? pool : pool.copyPrefix(poolSize);
+        Builder builder = new Builder(capacity, target);
+        boolean inserted = src == null;
+        for (int row = 0; row < size; row++) {
+            if (row == removed)
+                continue;
+            if (!inserted && compareOrder(src, srcRow, this, row) < 0) {
+                builder.appendFrom(src, srcRow);
+                inserted = true;
+            }
+            builder.copyRow(this, row);
+        }
+        if (!inserted)
+            builder.appendFrom(src, srcRow);
+        IncidenciaStore result = builder.build();
+        return target.needsCompaction() ? result.compact() : result;
+    }
+
+    /**
+     * Copia de este almacén con un pool nuevo que solo contiene los textos en
+     * uso.
+     */
+    IncidenciaStore compact() {
+        Builder builder = new Builder(size);
+        for (int row = 0; row < size; row++) {
+            builder.appendFrom(this, row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Número de textos del pool que usa este almacén (en uso o no).
+     */
+    int poolSize() {
+        return poolSize;
+    }
+
+    // Orden de la lista: estado, urgencia y, a igualdad, local_id (orden del índice)
+    private static int compareOrder(IncidenciaStore a, int rowA, IncidenciaStore b, int rowB) {
+        if (a.estados[rowA] != b.estados[rowB])
+            return a.estados[rowA] - b.estados[rowB];
+        if (a.urgencias[rowA] != b.urgencias[rowB])
+            return a.urgencias[rowA] - b.urgencias[rowB];
+        return Long.compare(a.localIds[rowA], b.localIds[rowB]);
+    }
+
+    /**
+     * Indica si la fila de este almacén y la de otro muestran lo mismo (mismos
+     * textos, estado, urgencia y ubicación). Si los hashes de contenido difieren
+     * responde sin comparar textos.
+     */
+    public boolean sameContent(int row, IncidenciaStore other, int otherRow) {
+        return contentHashes[row] == other.contentHashes[otherRow]
+                && estados[row] == other.estados[otherRow]
+                && urgencias[row] == other.urgencias[otherRow]
+                && latitudes[row] == other.latitudes[otherRow]
+                && longitudes[row] == other.longitudes[otherRow]
+                && equal(getTitulo(row), other.getTitulo(otherRow))
+                && equal(getDescripcion(row), other.getDescripcion(otherRow))
+                && equal(getFotoPath(row), other.getFotoPath(otherRow));
+    }
+
+    private String string(int index) {
+        return index == NULL_STRING ? null : pool.strings[index];
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Pool de textos compartido por un almacén y los que derivan de él. Solo se
+     * añade al final: cada almacén recuerda cuántos textos había al crearse y
+     * nunca lee más allá, así que lo que se añade para un almacén nuevo no
+     * afecta a los anteriores.
+     * <p>
+     * El índice texto -> posición solo se usa al construir desde cero (miles de
+     * textos) y se suelta al terminar: con él, el pool ocuparía varias veces
+     * más que los propios textos durante toda la vida del almacén. Las pocas
+     * búsquedas de {@link #withRow} recorren el array.
+     * </p>
+     */
+    private static final class SharedPool {
+        volatile String[] strings;
+        int size;
+        // Texto -> índice; solo mientras un Builder llena un pool nuevo
+        private Map<String, Integer> index;
+        // Textos añadidos desde que se construyó o compactó, y tamaño en ese momento
+        private int appended;
+        private int baseSize;
+
+        SharedPool(String[] strings, int size, Map<String, Integer> index) {
+            this.strings = strings;
+            this.size = size;
+            this.index = index;
+            this.baseSize = size;
+        }
+
+        /**
+         * Indica si un almacén que usa limit textos puede añadir directamente
+         * (nadie ha añadido después de él).
+         */
+        synchronized boolean isTip(int limit) {
+            return limit == size;
+        }
+
+        synchronized SharedPool copyPrefix(int limit) {
+            return new SharedPool(Arrays.copyOf(strings, Math.max(16, limit * 2)), limit, null);
+        }
+
+        synchronized int intern(String value) {
+            if (index != null) {
+                Integer found = index.get(value);
+                if (found != null)
+                    return found;
+                index.put(value, size);
+            } else {
+                for (int i = 0; i < size; i++) {
+                    if (value.equals(strings[i]))
+                        return i;
+                }
+            }
+            if (size == strings.length)
+                strings = Arrays.copyOf(strings, size * 2);
+            strings[size] = value;
+            appended++;
+            return size++;
+        }
+
+        synchronized void markBuilt() {
+            index = null;
+            appended = 0;
+            baseSize = size;
+        }
+
+        synchronized boolean needsCompaction() {
+            return appended > Math.max(COMPACT_MIN_APPENDED, baseSize / 2);
+        }
+    }
+
+    /**
+     * Construye un almacén fila a fila, deduplicando los textos en el pool. Las
+     * filas leídas de un Cursor las añade {@link IncidenciaCursorMapper#mapInto}.
+     */
+    static final class Builder {
+        int size;
+        final long[] localIds;
+        final int[] firestoreIds;
+        final int[] titulos;
+        final int[] descripciones;
+        final int[] fotoPaths;
+        final int[] thumbPaths;
+        final int[] previewPaths;
+        final int[] userEmails;
+        final int[] syncActions;
+        final double[] latitudes;
+        final double[] longitudes;
+        final byte[] estados;
+        final byte[] urgencias;
+        final byte[] synced;
+        final long[] updatedAts;
+        final long[] versions;
+        final int[] contentHashes;
+
+        private final SharedPool pool;
+        // El pool es nuevo (no se comparte con almacenes anteriores)
+        private final boolean freshPool;
+
+        Builder(int capacity) {
+            this(capacity, new SharedPool(new String[16], 0, new HashMap<>()), true);
+        }
+
+        /**
+         * @param basePool Pool del almacén del que se copiarán filas con
+         *                 {@link #copyRow}; los textos nuevos se añaden a él.
+         */
+        private Builder(int capacity, SharedPool basePool) {
+            this(capacity, basePool, false);
+        }
+
+        private Builder(int capacity, SharedPool pool, boolean freshPool) {
+            this.pool = pool;
+            this.freshPool = freshPool;
+            localIds = new long[capacity];
+            firestoreIds = new int[capacity];
+            titulos = new int[capacity];
+            descripciones = new int[capacity];
+            fotoPaths = new int[capacity];
+            thumbPaths = new int[capacity];
+            previewPaths = new int[capacity];
+            userEmails = new int[capacity];
+            syncActions = new int[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+            estados = new byte[capacity];
+            urgencias = new byte[capacity];
+            synced = new byte[capacity];
+            updatedAts = new long[capacity];
+            versions = new long[capacity];
+            contentHashes = new int[capacity];
+        }
+
+        /**
+         * Copia una fila de un almacén que comparte el pool base.
+         */
+        void copyRow(IncidenciaStore from, int row) {
+            int r = size++;
+            localIds[r] = from.localIds[row];
+            firestoreIds[r] = from.firestoreIds[row];
+            titulos[r] = from.titulos[row];
+            descripciones[r] = from.descripciones[row];
+            fotoPaths[r] = from.fotoPaths[row];
+            thumbPaths[r] = from.thumbPaths[row];
+            previewPaths[r] = from.previewPaths[row];
+            userEmails[r] = from.userEmails[row];
+            syncActions[r] = from.syncActions[row];
+            latitudes[r] = from.latitudes[row];
+            longitudes[r] = from.longitudes[row];
+            estados[r] = from.estados[row];
+            urgencias[r] = from.urgencias[row];
+            synced[r] = from.synced[row];
+            updatedAts[r] = from.updatedAts[row];
+            versions[r] = from.versions[row];
+            contentHashes[r] = from.contentHashes[row];
+        }
+
+        /**
+         * Copia una fila de cualquier almacén, añadiendo sus textos al pool.
+         */
+        void appendFrom(IncidenciaStore from, int row) {
+            int r = size;
+            copyRow(from, row);
+            firestoreIds[r] = intern(from.getFirestoreId(row));
+            titulos[r] = intern(from.getTitulo(row));
+            descripciones[r] = intern(from.getDescripcion(row));
+            fotoPaths[r] = intern(from.getFotoPath(row));
+            thumbPaths[r] = intern(from.getThumbPath(row));
+            previewPaths[r] = intern(from.getPreviewPath(row));
+            userEmails[r] = intern(from.getUserEmail(row));
+            syncActions[r] = intern(from.string(from.syncActions[row]));
+        }
+
+        int contentHash(int row) {
+            int h = estados[row];
+            h = 31 * h + urgencias[row];
+            h = 31 * h + Double.hashCode(latitudes[row]);
+            h = 31 * h + Double.hashCode(longitudes[row]);
+            h = 31 * h + hash(titulos[row]);
+            h = 31 * h + hash(descripciones[row]);
+            h = 31 * h + hash(fotoPaths[row]);
+            return h;
+        }
+
+        private int hash(int index) {
+            return index == NULL_STRING ? 0 : pool.strings[index].hashCode();
+        }
+
+        int intern(String value) {
+            return value == null ? NULL_STRING : pool.intern(value);
+        }
+
+        IncidenciaStore build() {
+            if (freshPool)
+                pool.markBuilt();
+            return new IncidenciaStore(size, pool, pool.size, localIds, firestoreIds, titulos, descripciones, fotoPaths,
+                    thumbPaths, previewPaths, userEmails, syncActions, latitudes, longitudes, estados, urgencias, synced, updatedAts,
+                    versions, contentHashes);
+        }
+    }
+}
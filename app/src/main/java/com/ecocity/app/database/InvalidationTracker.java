@@ -0,0 +1,195 @@
+package com.ecocity.app.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registro global (por proceso) de las tablas modificadas por
+ * {@link IncidenciaDAO}.
+ * <p>
+ * Cada escritura marca sus tablas como invalidadas. Dentro de una transacción
+ * del DAO las marcas se acumulan y se publican una sola vez al confirmarla, de
+ * modo que un lote de 500 filas produce un único aviso; si la transacción se
+ * deshace, se descartan. Los observadores
+ * siempre se notifican en el hilo principal y, si llegan varias invalidaciones
+ * antes de que este las procese, se entregan juntas.
+ * </p>
+ * <p>
+ * Para la tabla incidencias se registra además qué filas cambiaron
+ * ({@link RowChanges}), de modo que una pantalla puede aplicar solo esos
+ * cambios en lugar de repetir la consulta completa.
+ * </p>
+ */
+public final class InvalidationTracker {
+
+    /**
+     * Recibe las tablas modificadas desde el último aviso.
+     */
+    public interface Observer {
+        void onInvalidated(Set<String> tables);
+
+        /**
+         * Igual que {@link #onInvalidated(Set)}, con el detalle de las filas de
+         * incidencias cambiadas (vacío si esa tabla no cambió).
+         */
+        default void onInvalidated(Set<String> tables, RowChanges rows) {
+            onInvalidated(tables);
+        }
+    }
+
+    private static final InvalidationTracker INSTANCE = new InvalidationTracker();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+
+    // Lote (transacción) abierto en el hilo actual
+    // (subclase en vez de ThreadLocal.withInitial, que requiere API 26)
+    private final ThreadLocal<Batch> batch = new ThreadLocal<Batch>() {
+        @Override
+        protected Batch initialValue() {
+            return new Batch();
+        }
+    };
+
+    /**
+     * Estado del lote de un hilo: profundidad de anidamiento, qué niveles se
+     * marcaron como correctos y lo acumulado hasta ahora.
+     */
+    private static final class Batch {
+        int depth;
+        // Nivel d correcto = bit d (el nivel 1 es la transacción externa)
+        final BitSet successful = new BitSet();
+        // Algún nivel terminó sin marcarse: SQLite deshará la transacción entera
+        boolean failed;
+        final Set<String> tables = new HashSet<>();
+        final RowChanges rows = new RowChanges();
+    }
+
+    // Tablas y filas publicadas pendientes de entregar en el hilo principal
+    private final Set<String> pendingTables = new HashSet<>();
+    private final RowChanges pendingRows = new RowChanges();
+    private boolean dispatchPosted;
+
+    private final Runnable dispatch = this::dispatchPending;
+
+    private InvalidationTracker() {
+    }
+
+    public static InvalidationTracker getInstance() {
+        return INSTANCE;
+    }
+
+    public void addObserver(Observer observer) {
+        observers.addIfAbsent(observer);
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Marca una tabla como modificada. Si hay una transacción abierta en este
+     * hilo, el aviso se retrasa hasta {@link #endBatch()}.
+     */
+    void notifyChanged(String table) {
+        RowChanges rows = new RowChanges();
+        if (DbHelper.TABLE_INCIDENCIAS.equals(table)) {
+            // Cambio en incidencias sin detalle de filas
+            rows.markOverflow();
+        }
+        record(table, rows);
+    }
+
+    /**
+     * Marca una fila de incidencias como insertada, actualizada o borrada (ver
+     * {@link RowChanges}). Implica también la invalidación de la tabla.
+     */
+    void notifyRowChanged(long localId, int change) {
+        RowChanges rows = new RowChanges();
+        rows.add(localId, change);
+        record(DbHelper.TABLE_INCIDENCIAS, rows);
+    }
+
+    private void record(String table, RowChanges rows) {
+        Batch current = batch.get();
+        if (current.depth > 0) {
+            current.tables.add(table);
+            current.rows.addAll(rows);
+        } else {
+            Set<String> single = new HashSet<>();
+            single.add(table);
+            publish(single, rows);
+        }
+    }
+
+    /**
+     * Abre un lote (admite anidamiento). Se llama justo después de que
+     * beginTransaction() haya tenido éxito.
+     */
+    void beginBatch() {
+        Batch current = batch.get();
+        current.depth++;
+        current.successful.clear(current.depth);
+    }
+
+    /**
+     * Marca como correcto el lote más interno. Se llama junto con
+     * setTransactionSuccessful().
+     */
+    void markBatchSuccessful() {
+        Batch current = batch.get();
+        if (current.depth > 0)
+            current.successful.set(current.depth);
+    }
+
+    /**
+     * Cierra un lote. Al cerrar el más externo publica lo acumulado, salvo que la
+     * transacción se haya deshecho: algún nivel no se marcó como correcto o
+     * endTransaction() falló (committed a false).
+     */
+    void endBatch(boolean committed) {
+        Batch current = batch.get();
+        if (current.depth == 0)
+            return;
+        if (!committed || !current.successful.get(current.depth))
+            current.failed = true;
+        if (--current.depth > 0)
+            return;
+        if (!current.failed && !current.tables.isEmpty())
+            publish(new HashSet<>(current.tables), current.rows.copy());
+        current.failed = false;
+        current.tables.clear();
+        current.rows.clear();
+    }
+
+    private void publish(Set<String> tables, RowChanges rows) {
+        synchronized (pendingTables) {
+            pendingTables.addAll(tables);
+            pendingRows.addAll(rows);
+            if (dispatchPosted)
+                return;
+            dispatchPosted = true;
+        }
+        mainHandler.post(dispatch);
+    }
+
+    private void dispatchPending() {
+        Set<String> tables;
+        RowChanges rows;
+        synchronized (pendingTables) {
+            tables = new HashSet<>(pendingTables);
+            rows = pendingRows.copy();
+            pendingTables.clear();
+            pendingRows.clear();
+            dispatchPosted = false;
+        }
+        for (Observer observer : observers) {
+            observer.onInvalidated(tables, rows);
+        }
+    }
+}
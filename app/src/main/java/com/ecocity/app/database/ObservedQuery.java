@@ -0,0 +1,132 @@
+package com.ecocity.app.database;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Consulta de pantalla que solo se vuelve a ejecutar cuando cambian las tablas
+ * de las que depende.
+ * <p>
+ * Mientras la pantalla está activa ({@link #start()} ... {@link #stop()}), una
+ * invalidación de sus tablas relanza la consulta en el hilo principal. Si la
+ * invalidación llega con la pantalla en segundo plano, solo se marca como
+ * sucia y se relanza en el siguiente {@link #start()}. Volver a la pantalla sin
+ * cambios no consulta nada.
+ * </p>
+ * <p>
+ * Opcionalmente, un {@link RowChangeHandler} puede aplicar los cambios de filas
+ * de incidencias de forma incremental; la consulta completa solo se relanza si
+ * el manejador no puede (demasiados cambios, pantalla en segundo plano...).
+ * </p>
+ */
+public class ObservedQuery implements InvalidationTracker.Observer {
+
+    /**
+     * Aplica cambios concretos de filas sin repetir la consulta.
+     */
+    public interface RowChangeHandler {
+        /**
+         * @return true si los cambios se aplicaron; false para relanzar la consulta
+         *         completa.
+         */
+        boolean onRowsChanged(RowChanges rows);
+    }
+
+    private final Runnable query;
+    private RowChangeHandler rowChangeHandler;
+    private final Set<String> tables;
+    private boolean registered;
+    private boolean active;
+    private boolean dirty = true;
+
+    /**
+     * @param query  Consulta a ejecutar (en el hilo principal; puede delegar en
+     *               los métodos asíncronos del DAO).
+     * @param tables Tablas observadas (p. ej. {@link DbHelper#TABLE_INCIDENCIAS}).
+     */
+    public ObservedQuery(Runnable query, String... tables) {
+        this.query = query;
+        this.tables = new HashSet<>(Arrays.asList(tables));
+    }
+
+    /**
+     * Fija el manejador de cambios incrementales (null para recargar siempre).
+     */
+    public void setRowChangeHandler(RowChangeHandler handler) {
+        this.rowChangeHandler = handler;
+    }
+
+    /**
+     * Activa la consulta (llamar en onStart). La ejecuta si hubo cambios desde la
+     * última vez o si nunca se ejecutó.
+     */
+    public void start() {
+        if (!registered) {
+            InvalidationTracker.getInstance().addObserver(this);
+            registered = true;
+        }
+        active = true;
+        if (dirty) {
+            dirty = false;
+            query.run();
+        }
+    }
+
+    /**
+     * Pausa la consulta (llamar en onStop). Los cambios se siguen anotando.
+     */
+    public void stop() {
+        active = false;
+    }
+
+    /**
+     * Deja de observar (llamar en onDestroy).
+     */
+    public void release() {
+        InvalidationTracker.getInstance().removeObserver(this);
+        registered = false;
+        active = false;
+        dirty = true;
+    }
+
+    /**
+     * Fuerza una nueva ejecución (p. ej. al cambiar el orden elegido).
+     */
+    public void invalidate() {
+        if (active) {
+            dirty = false;
+            query.run();
+        } else {
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void onInvalidated(Set<String> changed) {
+        onInvalidated(changed, new RowChanges());
+    }
+
+    @Override
+    public void onInvalidated(Set<String> changed, RowChanges rows) {
+        boolean affected = false;
+        boolean onlyIncidencias = true;
+        for (String table : changed) {
+            if (tables.contains(table)) {
+                affected = true;
+                if (!DbHelper.TABLE_INCIDENCIAS.equals(table))
+                    onlyIncidencias = false;
+            }
+        }
+        if (!affected)
+            return;
+
+        // Con la pantalla activa y solo filas de incidencias cambiadas, se intenta
+        // aplicar el detalle antes de repetir la consulta
+        if (active && !dirty && onlyIncidencias && rowChangeHandler != null && !rows.isOverflow()
+                && !rows.isEmpty() && rowChangeHandler.onRowsChanged(rows)) {
+            return;
+        }
+        invalidate();
+    }
+}
@@ -0,0 +1,120 @@
+package com.ecocity.app.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Filas de incidencias (por local_id) modificadas desde el último aviso de
+ * {@link InvalidationTracker}, con el tipo de cambio neto de cada una.
+ * <p>
+ * Varios cambios de la misma fila se combinan: alta + edición = alta, alta +
+ * borrado = nada, edición + borrado = borrado. Para no acumular sin límite
+ * (p. ej. una descarga de 500 documentos), a partir de {@link #MAX_ROWS} filas
+ * solo se anota que hubo demasiados cambios ({@link #isOverflow()}) y el
+ * observador debe recargar por completo.
+ * </p>
+ */
+public final class RowChanges {
+
+    public static final int INSERTED = 1;
+    public static final int UPDATED = 2;
+    public static final int DELETED = 3;
+
+    // Filas detalladas como máximo; por encima compensa recargar todo
+    static final int MAX_ROWS = 64;
+
+    private final Map<Long, Integer> changes = new LinkedHashMap<>();
+    private boolean overflow;
+
+    RowChanges() {
+    }
+
+    /**
+     * Anota un cambio de una fila, combinándolo con el que ya tuviera.
+     */
+    void add(long localId, int change) {
+        if (overflow)
+            return;
+        Integer previous = changes.get(localId);
+        if (previous == null) {
+            changes.put(localId, change);
+        } else if (previous == INSERTED && change == DELETED) {
+            changes.remove(localId);
+        } else if (previous != INSERTED) {
+            // Edición o borrado sobre una fila ya existente: manda el último
+            changes.put(localId, change == INSERTED ? UPDATED : change);
+        }
+        if (changes.size() > MAX_ROWS) {
+            markOverflow();
+        }
+    }
+
+    /**
+     * Anota un cambio sin detalle de filas (obliga a recargar).
+     */
+    void markOverflow() {
+        overflow = true;
+        changes.clear();
+    }
+
+    /**
+     * Añade todos los cambios de otro conjunto (posteriores a los de este).
+     */
+    void addAll(RowChanges other) {
+        if (other.overflow) {
+            markOverflow();
+            return;
+        }
+        for (Map.Entry<Long, Integer> entry : other.changes.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    RowChanges copy() {
+        RowChanges copy = new RowChanges();
+        copy.overflow = overflow;
+        copy.changes.putAll(changes);
+        return copy;
+    }
+
+    void clear() {
+        overflow = false;
+        changes.clear();
+    }
+
+    /**
+     * true si hubo más cambios de los que se detallan: no hay ids disponibles.
+     */
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    public boolean isEmpty() {
+        return !overflow && changes.isEmpty();
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * local_id de las filas cambiadas, en el orden del primer cambio.
+     */
+    public long[] getLocalIds() {
+        long[] ids = new long[changes.size()];
+        int i = 0;
+        for (Long id : changes.keySet()) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Tipo de cambio neto de una fila ({@link #INSERTED}, {@link #UPDATED},
+     * {@link #DELETED}) o 0 si no cambió.
+     */
+    public int getChange(long localId) {
+        Integer change = changes.get(localId);
+        return change != null ? change : 0;
+    }
+}
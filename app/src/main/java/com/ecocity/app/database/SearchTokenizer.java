@@ -0,0 +1,40 @@
+package com.ecocity.app.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Divide el texto del usuario en palabras seguras para una expresión MATCH de
+ * FTS: descarta la sintaxis de FTS (comillas, guiones, asteriscos,
+ * paréntesis...) y los operadores reservados.
+ */
+final class SearchTokenizer {
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * @param query Texto introducido por el usuario (puede ser null).
+     * @return Palabras en el orden escrito (vacía si no hay ninguna).
+     */
+    static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        if (query == null)
+            return tokens;
+
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                current.append(c);
+            } else if (current.length() > 0) {
+                String token = current.toString();
+                if (!token.equals("AND") && !token.equals("OR") && !token.equals("NOT") && !token.equals("NEAR")) {
+                    tokens.add(token);
+                }
+                current.setLength(0);
+            }
+        }
+        return tokens;
+    }
+}
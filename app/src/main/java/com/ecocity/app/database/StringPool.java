@@ -0,0 +1,84 @@
+package com.ecocity.app.database;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+/**
+ * Pool acotado de Strings para los valores que se repiten en miles de filas
+ * (email del autor, ruta de la foto, acción de sincronización).
+ * <p>
+ * Es una tabla de tamaño fijo con una entrada por posición (direct-mapped): un
+ * valor ocupa la posición de su hash y, si otro distinto cae en la misma, lo
+ * sustituye. Así la memoria está acotada sin contadores ni listas LRU, y los
+ * valores frecuentes se quedan porque vuelven a insertarse en cuanto se
+ * expulsan.
+ * </p>
+ * <p>
+ * {@link #get} lee la columna en un {@link CharArrayBuffer} reutilizable y la
+ * compara con la entrada del pool antes de crear ningún String: si el valor ya
+ * está, no se asigna memoria. Puede usarse desde varios hilos a la vez (en el
+ * peor caso dos hilos crean la misma cadena y una se descarta); cada hilo debe
+ * usar su propio buffer.
+ * </p>
+ */
+final class StringPool {
+
+    // Pool compartido por las lecturas de IncidenciaDAO
+    static final StringPool SHARED = new StringPool(1024);
+
+    // Los textos más largos (descripciones) no suelen repetirse: no se guardan
+    private static final int MAX_LENGTH = 256;
+
+    private final String[] slots;
+    private final int mask;
+
+    /**
+     * @param capacity Número de entradas (se redondea a potencia de dos).
+     */
+    StringPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Valor de la columna como String compartido, o null si es NULL.
+     *
+     * @param cursor Cursor posicionado en la fila.
+     * @param column Índice de la columna.
+     * @param buffer Buffer del hilo llamante.
+     */
+    String get(Cursor cursor, int column, CharArrayBuffer buffer) {
+        if (cursor.isNull(column))
+            return null;
+        cursor.copyStringToBuffer(column, buffer);
+        char[] chars = buffer.data;
+        int length = buffer.sizeCopied;
+        if (length > MAX_LENGTH)
+            return new String(chars, 0, length);
+
+        // Mismo hash que String.hashCode()
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        String cached = slots[slot];
+        if (cached != null && cached.hashCode() == hash && matches(cached, chars, length))
+            return cached;
+        String value = new String(chars, 0, length);
+        slots[slot] = value;
+        return value;
+    }
+
+    private static boolean matches(String value, char[] chars, int length) {
+        if (value.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,318 @@
+package com.ecocity.app.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.ecocity.app.model.Incidencia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cola persistente (outbox) de cambios locales pendientes de subir a
+ * Firestore, guardada en {@link DbHelper#TABLE_OUTBOX}. Cada operación anota
+ * además qué campos modificó, para subir solo esos.
+ * <p>
+ * Cada escritura de {@link IncidenciaDAO} añade su operación dentro de la
+ * misma transacción que modifica la incidencia, así que la cola sobrevive a
+ * cierres inesperados. Antes de subir, las operaciones de cada incidencia se
+ * agrupan en una sola:
+ * </p>
+ * <ul>
+ * <li>INSERT + UPDATE... = INSERT</li>
+ * <li>INSERT + ... + DELETE = nada, o DELETE si la fila ya tiene ID de
+ * Firestore (ver {@link #uploadOperation})</li>
+ * <li>UPDATE + UPDATE... = UPDATE</li>
+ * <li>UPDATE + ... + DELETE = DELETE</li>
+ * </ul>
+ * <p>
+ * Solo se borran de la cola las operaciones con secuencia menor o igual a la
+ * subida, de modo que un cambio hecho mientras el lote estaba en vuelo se sube
+ * en la siguiente pasada.
+ * </p>
+ */
+final class SyncOutbox {
+
+    static final String OP_INSERT = "INSERT";
+    static final String OP_UPDATE = "UPDATE";
+    static final String OP_DELETE = "DELETE";
+
+    // Campos modificados (máscara de bits guardada con cada operación)
+    static final int FIELD_TITULO = 1;
+    static final int FIELD_DESCRIPCION = 1 << 1;
+    static final int FIELD_URGENCIA = 1 << 2;
+    static final int FIELD_FOTO = 1 << 3;
+    static final int FIELD_ESTADO = 1 << 4;
+    static final int FIELD_UBICACION = 1 << 5;
+    static final int FIELD_USER_EMAIL = 1 << 6;
+    static final int FIELDS_ALL = (1 << 7) - 1;
+
+    private static final String[] OUTBOX_COLUMNS = {
+            DbHelper.COLUMN_OUTBOX_LOCAL_ID,
+            DbHelper.COLUMN_OUTBOX_SEQ,
+            DbHelper.COLUMN_OUTBOX_OPERATION,
+            DbHelper.COLUMN_OUTBOX_FIELDS
+    };
+
+    /**
+     * Cambio agrupado de una incidencia, listo para subir.
+     */
+    static final class Change {
+        final long localId;
+        // Operación resultante; null si los cambios se anulan entre sí
+        final String operation;
+        // Unión de los campos modificados por las operaciones agrupadas
+        final int fields;
+        // Menor y mayor secuencia incluidas en el cambio
+        final long minSeq;
+        final long maxSeq;
+        // Estado actual de la fila (se rellena al preparar la subida)
+        Incidencia incidencia;
+        // Versión del servidor sobre la que se hizo el cambio (la guardada en
+        // SQLite al preparar la subida) y la que queda tras subirlo
+        long baseVersion;
+        long committedVersion;
+        // El servidor tiene ediciones de otro usuario que la copia local no
+        // incluye (fusionadas con esta o hechas después de una subida repetida)
+        boolean mergedConcurrent;
+
+        Change(long localId, String operation, int fields, long minSeq, long maxSeq) {
+            this.localId = localId;
+            this.operation = operation;
+            this.fields = fields;
+            this.minSeq = minSeq;
+            this.maxSeq = maxSeq;
+        }
+    }
+
+    private SyncOutbox() {
+    }
+
+    /**
+     * Añade una operación a la cola. Debe llamarse dentro de la transacción de la
+     * escritura correspondiente.
+     */
+    static void enqueue(SQLiteDatabase db, long localId, String operation, int fields) {
+        ContentValues values = new ContentValues();
+        values.put(DbHelper.COLUMN_OUTBOX_LOCAL_ID, localId);
+        values.put(DbHelper.COLUMN_OUTBOX_OPERATION, operation);
+        values.put(DbHelper.COLUMN_OUTBOX_FIELDS, fields);
+        values.put(DbHelper.COLUMN_OUTBOX_CREATED_AT, System.currentTimeMillis());
+        db.insert(DbHelper.TABLE_OUTBOX, null, values);
+    }
+
+    /**
+     * Lee la cola y devuelve un cambio agrupado por incidencia, en el orden de su
+     * primera operación pendiente.
+     */
+    static List<Change> loadCoalesced(SQLiteDatabase db) {
+        List<Change> changes = coalesceRows(db.query(DbHelper.TABLE_OUTBOX, OUTBOX_COLUMNS, null, null, null, null,
+                DbHelper.COLUMN_OUTBOX_LOCAL_ID + ", " + DbHelper.COLUMN_OUTBOX_SEQ));
+        Collections.sort(changes, (a, b) -> Long.compare(a.minSeq, b.minSeq));
+        return changes;
+    }
+
+    /**
+     * Cambio agrupado pendiente de una incidencia, o null si no tiene ninguno.
+     */
+    static Change pendingChange(SQLiteDatabase db, long localId) {
+        List<Change> changes = coalesceRows(db.query(DbHelper.TABLE_OUTBOX, OUTBOX_COLUMNS,
+                DbHelper.COLUMN_OUTBOX_LOCAL_ID + " = ?", new String[] { String.valueOf(localId) },
+                null, null, DbHelper.COLUMN_OUTBOX_SEQ));
+        return changes.isEmpty() ? null : changes.get(0);
+    }
+
+    // Agrupa filas del outbox ordenadas por (local_id, seq) y cierra el cursor
+    private static List<Change> coalesceRows(Cursor cursor) {
+        Grouper grouper = new Grouper();
+        try {
+            while (cursor.moveToNext()) {
+                grouper.add(cursor.getLong(0), cursor.getLong(1), cursor.getString(2), cursor.getInt(3));
+            }
+        } finally {
+            cursor.close();
+        }
+        return grouper.finish();
+    }
+
+    /**
+     * Agrupa operaciones recibidas en orden (local_id, seq) en un cambio por
+     * incidencia.
+     */
+    static final class Grouper {
+        private final List<Change> changes = new ArrayList<>();
+        private boolean open;
+        private long currentId;
+        private String first;
+        private String last;
+        private int fields;
+        private long minSeq;
+        private long maxSeq;
+
+        void add(long localId, long seq, String operation, int operationFields) {
+            if (open && localId != currentId) {
+                close();
+            }
+            if (!open) {
+                open = true;
+                currentId = localId;
+                first = operation;
+                fields = 0;
+                minSeq = seq;
+            }
+            last = operation;
+            fields |= operationFields;
+            maxSeq = seq;
+        }
+
+        List<Change> finish() {
+            if (open) {
+                close();
+            }
+            return changes;
+        }
+
+        private void close() {
+            changes.add(new Change(currentId, coalesce(first, last), fields, minSeq, maxSeq));
+            open = false;
+        }
+    }
+
+    /**
+     * Campos que difieren entre dos versiones de una incidencia.
+     */
+    static int changedFields(Incidencia before, Incidencia after) {
+        if (before == null)
+            return FIELDS_ALL;
+        int fields = 0;
+        if (!Objects.equals(before.getTitulo(), after.getTitulo()))
+            fields |= FIELD_TITULO;
+        if (!Objects.equals(before.getDescripcion(), after.getDescripcion()))
+            fields |= FIELD_DESCRIPCION;
+        if (before.getUrgency() != after.getUrgency())
+            fields |= FIELD_URGENCIA;
+        if (!Objects.equals(before.getFotoPath(), after.getFotoPath()))
+            fields |= FIELD_FOTO;
+        if (before.getStatus() != after.getStatus())
+            fields |= FIELD_ESTADO;
+        if (before.getLatitud() != after.getLatitud() || before.getLongitud() != after.getLongitud())
+            fields |= FIELD_UBICACION;
+        if (!Objects.equals(before.getUserEmail(), after.getUserEmail()))
+            fields |= FIELD_USER_EMAIL;
+        return fields;
+    }
+
+    /**
+     * Copia en target los campos indicados de source.
+     */
+    static void copyFields(Incidencia source, Incidencia target, int fields) {
+        if ((fields & FIELD_TITULO) != 0)
+            target.setTitulo(source.getTitulo());
+        if ((fields & FIELD_DESCRIPCION) != 0)
+            target.setDescripcion(source.getDescripcion());
+        if ((fields & FIELD_URGENCIA) != 0)
+            target.setUrgency(source.getUrgency());
+        if ((fields & FIELD_FOTO) != 0)
+            target.setFotoPath(source.getFotoPath());
+        if ((fields & FIELD_ESTADO) != 0)
+            target.setStatus(source.getStatus());
+        if ((fields & FIELD_UBICACION) != 0) {
+            target.setLatitud(source.getLatitud());
+            target.setLongitud(source.getLongitud());
+        }
+        if ((fields & FIELD_USER_EMAIL) != 0)
+            target.setUserEmail(source.getUserEmail());
+    }
+
+    /**
+     * Campos indicados en formato de documento de Firestore (para una escritura
+     * parcial con merge).
+     */
+    static Map<String, Object> toFirestoreFields(Incidencia inc, int fields) {
+        Map<String, Object> map = new HashMap<>();
+        if ((fields & FIELD_TITULO) != 0)
+            map.put("titulo", inc.getTitulo());
+        if ((fields & FIELD_DESCRIPCION) != 0)
+            map.put("descripcion", inc.getDescripcion());
+        if ((fields & FIELD_URGENCIA) != 0)
+            map.put("urgencia", inc.getUrgencia());
+        if ((fields & FIELD_FOTO) != 0)
+            map.put("fotoPath", inc.getFotoPath());
+        if ((fields & FIELD_ESTADO) != 0)
+            map.put("estado", inc.getEstado());
+        if ((fields & FIELD_UBICACION) != 0) {
+            map.put("latitud", inc.getLatitud());
+            map.put("longitud", inc.getLongitud());
+        }
+        if ((fields & FIELD_USER_EMAIL) != 0)
+            map.put("userEmail", inc.getUserEmail());
+        return map;
+    }
+
+    /**
+     * Operación equivalente a una secuencia que empieza por first y termina en
+     * last (las intermedias no cambian el resultado).
+     *
+     * @return INSERT, UPDATE, DELETE o null si no hay nada que subir.
+     */
+    static String coalesce(String first, String last) {
+        boolean created = OP_INSERT.equals(first);
+        boolean deleted = OP_DELETE.equals(last);
+        if (created && deleted)
+            return null;
+        if (created)
+            return OP_INSERT;
+        if (deleted)
+            return OP_DELETE;
+        return OP_UPDATE;
+    }
+
+    /**
+     * Operación que hay que subir para un cambio agrupado, según si la fila ya
+     * tiene ID de Firestore. Los ID se generan en local antes de subir, así que
+     * un alta borrada antes de confirmarse pudo llegar a crear el documento (la
+     * subida se aplicó, pero no se confirmó aquí): se borra en el servidor para
+     * que la descarga no la recupere. Sin ID, nunca llegó a la nube.
+     *
+     * @param operation Resultado de {@link #coalesce}.
+     * @return INSERT, UPDATE, DELETE o null si basta con resolverlo en local.
+     */
+    static String uploadOperation(String operation, boolean hasFirestoreId) {
+        if (operation == null)
+            return hasFirestoreId ? OP_DELETE : null;
+        if (OP_DELETE.equals(operation) && !hasFirestoreId)
+            return null;
+        return operation;
+    }
+
+    /**
+     * Retira de la cola las operaciones ya subidas de una incidencia.
+     *
+     * @return true si quedan operaciones posteriores pendientes.
+     */
+    static boolean acknowledge(SQLiteDatabase db, long localId, long maxSeq) {
+        db.delete(DbHelper.TABLE_OUTBOX,
+                DbHelper.COLUMN_OUTBOX_LOCAL_ID + " = ? AND " + DbHelper.COLUMN_OUTBOX_SEQ + " <= ?",
+                new String[] { String.valueOf(localId), String.valueOf(maxSeq) });
+        return hasPending(db, localId);
+    }
+
+    /**
+     * Indica si una incidencia tiene cambios locales sin subir.
+     */
+    static boolean hasPending(SQLiteDatabase db, long localId) {
+        Cursor cursor = db.query(DbHelper.TABLE_OUTBOX, new String[] { DbHelper.COLUMN_OUTBOX_SEQ },
+                DbHelper.COLUMN_OUTBOX_LOCAL_ID + " = ?", new String[] { String.valueOf(localId) },
+                null, null, null, "1");
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
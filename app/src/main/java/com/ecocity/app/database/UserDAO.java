@@ -21,7 +21,7 @@ public class UserDAO {
      * @param context Contexto de la aplicación.
      */
     public UserDAO(Context context) {
-        dbHelper = new DbHelper(context);
+        dbHelper = DbHelper.getInstance(context);
     }
 
     /**
@@ -32,10 +32,11 @@ public class UserDAO {
     }
 
     /**
-     * Cierra conexión.
+     * Suelta la conexión. La base de datos es compartida por todo el proceso
+     * ({@link DbHelper#getInstance}), así que no se cierra.
      */
     public void close() {
-        dbHelper.close();
+        database = null;
     }
 
     /**
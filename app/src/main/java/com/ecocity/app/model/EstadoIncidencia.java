@@ -0,0 +1,77 @@
+package com.ecocity.app.model;
+
+/**
+ * Estado de una incidencia.
+ * <p>
+ * En SQLite se guarda el {@link #getCode() código} (un entero pequeño) y en
+ * Firestore la {@link #getLabel() etiqueta}. La conversión desde texto se hace
+ * una sola vez, al leer de Firestore; el resto de la app agrupa, ordena y
+ * cuenta comparando constantes.
+ * </p>
+ * <p>
+ * El código coincide con la prioridad de ordenación de la lista (1 = En
+ * proceso, lo más urgente de atender), de modo que ORDER BY estado ya devuelve
+ * el orden deseado.
+ * </p>
+ */
+public enum EstadoIncidencia {
+
+    EN_PROCESO(1, "En proceso"),
+    PENDIENTE(2, "Pendiente"),
+    RESUELTA(3, "Resuelta");
+
+    // Estado asignado a las incidencias nuevas y a los valores desconocidos
+    public static final EstadoIncidencia DEFAULT = PENDIENTE;
+
+    private static final EstadoIncidencia[] VALUES = values();
+
+    private final int code;
+    private final String label;
+
+    EstadoIncidencia(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    /**
+     * Código persistido en la columna estado de SQLite.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Texto guardado en Firestore (y mostrado por defecto en la interfaz).
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Estado correspondiente a un código de SQLite ({@link #DEFAULT} si no
+     * existe).
+     */
+    public static EstadoIncidencia fromCode(int code) {
+        for (EstadoIncidencia estado : VALUES) {
+            if (estado.code == code)
+                return estado;
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * Estado correspondiente a un texto de Firestore. Acepta cualquier
+     * combinación de mayúsculas ("En Proceso", "EN PROCESO"...) sin depender del
+     * Locale; null o un texto desconocido devuelven {@link #DEFAULT}.
+     */
+    public static EstadoIncidencia fromLabel(String label) {
+        if (label != null) {
+            String trimmed = label.trim();
+            for (EstadoIncidencia estado : VALUES) {
+                if (estado.label.equalsIgnoreCase(trimmed))
+                    return estado;
+            }
+        }
+        return DEFAULT;
+    }
+}
@@ -1,15 +1,19 @@
 package com.ecocity.app.model;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.google.firebase.firestore.Exclude;
+import com.google.firebase.firestore.ServerTimestamp;
+
+import java.util.Date;
 
 /**
  * Clase Modelo que representa una Incidencia en el sistema EcoCity.
- * Implementa Serializable para poder pasar objetos de esta clase entre
- * Actividades a través de Intents.
+ * Implementa Parcelable (escrito a mano, sin reflexión) para poder pasar
+ * objetos de esta clase entre Actividades a través de Intents.
  */
-public class Incidencia implements Serializable {
-
-    private static final long serialVersionUID = 1L;
+public class Incidencia implements Parcelable {
 
     // Identificador único de la incidencia en la base de datos (Firestore usa
     // String)
@@ -21,14 +25,19 @@ public class Incidencia implements Serializable {
     // Descripción detallada del problema reportado
     private String descripcion;
 
-    // Nivel de urgencia: Alta, Media, Baja
-    private String urgencia;
+    // Nivel de urgencia: Alta, Media, Baja (en Firestore se guarda la etiqueta)
+    private UrgenciaIncidencia urgencia = UrgenciaIncidencia.DEFAULT;
 
     // Ruta del archivo de la foto adjunta
     private String fotoPath;
 
+    // Miniatura y vista previa mediana de la foto, generadas en este dispositivo
+    // tras la captura (solo locales: no se suben a Firestore)
+    private String thumbPath;
+    private String previewPath;
+
     // Estado actual de la incidencia: Pendiente, En proceso, Resuelta
-    private String estado;
+    private EstadoIncidencia estado = EstadoIncidencia.DEFAULT;
 
     // Coordenadas geográficas
     private double latitud;
@@ -37,6 +46,15 @@ public class Incidencia implements Serializable {
     // Email del usuario que reportó la incidencia
     private String userEmail;
 
+    // Momento de la última escritura en Firestore. Lo asigna el servidor al subir
+    // (null = pendiente) y sirve de marca de agua para descargar solo los cambios
+    @ServerTimestamp
+    private Date updatedAt;
+
+    // Versión del documento: el servidor la incrementa en cada escritura y
+    // permite detectar ediciones concurrentes al sincronizar
+    private long version;
+
     // --- Campos de Sincronización Local (SQLite) ---
     // ID autonumérico local
     private long localId = -1;
@@ -51,6 +69,30 @@ public class Incidencia implements Serializable {
     public Incidencia() {
     }
 
+    /**
+     * Reconstruye la incidencia desde un Parcel. El orden de lectura debe
+     * coincidir con {@link #writeToParcel}.
+     */
+    protected Incidencia(Parcel in) {
+        id = in.readString();
+        titulo = in.readString();
+        descripcion = in.readString();
+        urgencia = UrgenciaIncidencia.fromCode(in.readInt());
+        fotoPath = in.readString();
+        thumbPath = in.readString();
+        previewPath = in.readString();
+        estado = EstadoIncidencia.fromCode(in.readInt());
+        latitud = in.readDouble();
+        longitud = in.readDouble();
+        userEmail = in.readString();
+        long updatedAtMillis = in.readLong();
+        updatedAt = updatedAtMillis >= 0 ? new Date(updatedAtMillis) : null;
+        version = in.readLong();
+        localId = in.readLong();
+        isSynced = in.readInt();
+        syncAction = in.readString();
+    }
+
     /**
      * Constructor principal para crear una nueva incidencia.
      *
@@ -61,15 +103,15 @@ public class Incidencia implements Serializable {
      * @param latitud     Latitud geográfica.
      * @param longitud    Longitud geográfica.
      */
-    public Incidencia(String titulo, String descripcion, String urgencia, String fotoPath, double latitud,
-            double longitud) {
+    public Incidencia(String titulo, String descripcion, UrgenciaIncidencia urgencia, String fotoPath,
+            double latitud, double longitud) {
         this.titulo = titulo;
         this.descripcion = descripcion;
         this.urgencia = urgencia;
         this.fotoPath = fotoPath;
         this.latitud = latitud;
         this.longitud = longitud;
-        this.estado = "Pendiente"; // Estado inicial por defecto
+        this.estado = EstadoIncidencia.PENDIENTE; // Estado inicial por defecto
     }
 
     // --- Getters y Setters ---
@@ -98,12 +140,28 @@ public class Incidencia implements Serializable {
         this.descripcion = descripcion;
     }
 
+    /**
+     * Etiqueta de la urgencia (la que se guarda en Firestore).
+     */
     public String getUrgencia() {
-        return urgencia;
+        return urgencia.getLabel();
     }
 
+    /**
+     * Asigna la urgencia a partir de su etiqueta (al leer de Firestore).
+     */
     public void setUrgencia(String urgencia) {
-        this.urgencia = urgencia;
+        this.urgencia = UrgenciaIncidencia.fromLabel(urgencia);
+    }
+
+    @Exclude
+    public UrgenciaIncidencia getUrgency() {
+        return urgencia;
+    }
+
+    @Exclude
+    public void setUrgency(UrgenciaIncidencia urgencia) {
+        this.urgencia = urgencia != null ? urgencia : UrgenciaIncidencia.DEFAULT;
     }
 
     public String getFotoPath() {
@@ -114,12 +172,48 @@ public class Incidencia implements Serializable {
         this.fotoPath = fotoPath;
     }
 
+    @Exclude
+    public String getThumbPath() {
+        return thumbPath;
+    }
+
+    @Exclude
+    public void setThumbPath(String thumbPath) {
+        this.thumbPath = thumbPath;
+    }
+
+    @Exclude
+    public String getPreviewPath() {
+        return previewPath;
+    }
+
+    @Exclude
+    public void setPreviewPath(String previewPath) {
+        this.previewPath = previewPath;
+    }
+
+    /**
+     * Etiqueta del estado (la que se guarda en Firestore).
+     */
     public String getEstado() {
-        return estado;
+        return estado.getLabel();
     }
 
+    /**
+     * Asigna el estado a partir de su etiqueta (al leer de Firestore).
+     */
     public void setEstado(String estado) {
-        this.estado = estado;
+        this.estado = EstadoIncidencia.fromLabel(estado);
+    }
+
+    @Exclude
+    public EstadoIncidencia getStatus() {
+        return estado;
+    }
+
+    @Exclude
+    public void setStatus(EstadoIncidencia estado) {
+        this.estado = estado != null ? estado : EstadoIncidencia.DEFAULT;
     }
 
     public double getLatitud() {
@@ -146,6 +240,22 @@ public class Incidencia implements Serializable {
         this.userEmail = userEmail;
     }
 
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public long getLocalId() {
         return localId;
     }
@@ -169,4 +279,43 @@ public class Incidencia implements Serializable {
     public void setSyncAction(String syncAction) {
         this.syncAction = syncAction;
     }
+
+    // --- Parcelable ---
+
+    public static final Creator<Incidencia> CREATOR = new Creator<Incidencia>() {
+        @Override
+        public Incidencia createFromParcel(Parcel in) {
+            return new Incidencia(in);
+        }
+
+        @Override
+        public Incidencia[] newArray(int size) {
+            return new Incidencia[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(id);
+        dest.writeString(titulo);
+        dest.writeString(descripcion);
+        dest.writeInt(urgencia.getCode());
+        dest.writeString(fotoPath);
+        dest.writeString(thumbPath);
+        dest.writeString(previewPath);
+        dest.writeInt(estado.getCode());
+        dest.writeDouble(latitud);
+        dest.writeDouble(longitud);
+        dest.writeString(userEmail);
+        dest.writeLong(updatedAt != null ? updatedAt.getTime() : -1);
+        dest.writeLong(version);
+        dest.writeLong(localId);
+        dest.writeInt(isSynced);
+        dest.writeString(syncAction);
+    }
 }
@@ -0,0 +1,54 @@
+package com.ecocity.app.model;
+
+/**
+ * Recuento de incidencias activas agrupado por estado.
+ * Lo devuelve {@link com.ecocity.app.database.IncidenciaDAO#getIncidenciasStats}
+ * para pintar el panel de estadísticas del perfil con una sola consulta.
+ */
+public class IncidenciaStats {
+
+    private int total;
+    private int pendientes;
+    private int enProceso;
+    private int resueltas;
+
+    public IncidenciaStats() {
+    }
+
+    /**
+     * Suma un grupo (estado, recuento) al resumen.
+     *
+     * @param estado Estado del grupo.
+     * @param count  Número de incidencias en ese estado.
+     */
+    public void add(EstadoIncidencia estado, int count) {
+        total += count;
+        switch (estado) {
+            case PENDIENTE:
+                pendientes += count;
+                break;
+            case EN_PROCESO:
+                enProceso += count;
+                break;
+            case RESUELTA:
+                resueltas += count;
+                break;
+        }
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getPendientes() {
+        return pendientes;
+    }
+
+    public int getEnProceso() {
+        return enProceso;
+    }
+
+    public int getResueltas() {
+        return resueltas;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ecocity.app.model;
+
+/**
+ * Nivel de urgencia de una incidencia.
+ * <p>
+ * Igual que {@link EstadoIncidencia}: en SQLite se guarda el código y en
+ * Firestore la etiqueta. El código es la prioridad de ordenación (1 = Alta).
+ * </p>
+ */
+public enum UrgenciaIncidencia {
+
+    ALTA(1, "Alta"),
+    MEDIA(2, "Media"),
+    BAJA(3, "Baja");
+
+    // Urgencia asumida cuando falta o no se reconoce
+    public static final UrgenciaIncidencia DEFAULT = BAJA;
+
+    private static final UrgenciaIncidencia[] VALUES = values();
+
+    private final int code;
+    private final String label;
+
+    UrgenciaIncidencia(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    /**
+     * Código persistido en la columna urgencia de SQLite.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Texto guardado en Firestore (y mostrado por defecto en la interfaz).
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Urgencia correspondiente a un código de SQLite ({@link #DEFAULT} si no
+     * existe).
+     */
+    public static UrgenciaIncidencia fromCode(int code) {
+        for (UrgenciaIncidencia urgencia : VALUES) {
+            if (urgencia.code == code)
+                return urgencia;
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * Urgencia correspondiente a un texto de Firestore, sin distinguir
+     * mayúsculas ni depender del Locale; null o desconocido devuelven
+     * {@link #DEFAULT}.
+     */
+    public static UrgenciaIncidencia fromLabel(String label) {
+        if (label != null) {
+            String trimmed = label.trim();
+            for (UrgenciaIncidencia urgencia : VALUES) {
+                if (urgencia.label.equalsIgnoreCase(trimmed))
+                    return urgencia;
+            }
+        }
+        return DEFAULT;
+    }
+}
@@ -20,7 +20,11 @@ import androidx.core.content.FileProvider;
 
 import com.ecocity.app.R;
 import com.ecocity.app.database.IncidenciaDAO;
+import com.ecocity.app.model.EstadoIncidencia;
 import com.ecocity.app.model.Incidencia;
+import com.ecocity.app.model.UrgenciaIncidencia;
+import com.ecocity.app.utils.ImageLoader;
+import com.ecocity.app.utils.PhotoVariants;
 import com.google.android.material.textfield.TextInputEditText;
 
 import com.google.android.gms.maps.CameraUpdateFactory;
@@ -70,6 +74,12 @@ public class AddIncidenciaActivity extends AppCompatActivity {
     private Spinner spinnerUrgencia;
     private Spinner spinnerEstado;
 
+    // Valor de cada posición de los Spinners (mismo orden que sus etiquetas)
+    private static final UrgenciaIncidencia[] URGENCIAS = { UrgenciaIncidencia.BAJA, UrgenciaIncidencia.MEDIA,
+            UrgenciaIncidencia.ALTA };
+    private static final EstadoIncidencia[] ESTADOS = { EstadoIncidencia.PENDIENTE, EstadoIncidencia.EN_PROCESO,
+            EstadoIncidencia.RESUELTA };
+
     // Layout contenedor para el estado (solo visible en modo edición)
     private android.widget.LinearLayout layoutEstado;
 
@@ -177,8 +187,8 @@ public class AddIncidenciaActivity extends AppCompatActivity {
         // --- 4. Lógica de Modo Edición vs Creación ---
         // Verificamos si el Intent trae un objeto 'incidencia'
         if (getIntent().hasExtra("incidencia")) {
-            // MODO EDICIÓN: Recuperamos el objeto serializado
-            incidenciaToEdit = (Incidencia) getIntent().getSerializableExtra("incidencia");
+            // MODO EDICIÓN: Recuperamos el objeto (Parcelable)
+            incidenciaToEdit = getIntent().getParcelableExtra("incidencia");
             setupEditMode(); // Rellenamos el formulario con los datos existentes
         } else {
             // MODO CREACIÓN: Estado inicial por defecto
@@ -229,7 +239,10 @@ public class AddIncidenciaActivity extends AppCompatActivity {
                     if (success) {
                         // La foto se guardó exitosamente en 'currentPhotoUri'
                         ivFoto.setPadding(0, 0, 0, 0); // Ajuste visual
-                        ivFoto.setImageURI(currentPhotoUri); // Mostrar en UI
+                        ImageLoader.getInstance(this).load(currentPhotoPath, ivFoto); // Mostrar en UI
+                        // Miniatura y vista previa en segundo plano, para no decodificar el
+                        // original en cada visualización posterior
+                        PhotoVariants.generate(this, currentPhotoPath);
                     }
                 });
 
@@ -240,7 +253,7 @@ public class AddIncidenciaActivity extends AppCompatActivity {
                     if (uri != null) {
                         // Usuario seleccionó una imagen
                         ivFoto.setPadding(0, 0, 0, 0);
-                        ivFoto.setImageURI(uri);
+                        ImageLoader.getInstance(this).load(uri.toString(), ivFoto);
 
                         // Guardamos la URI como cadena.
                         // IMPORTANTE: En producción, se recomienda copiar el archivo a un directorio
@@ -256,6 +269,7 @@ public class AddIncidenciaActivity extends AppCompatActivity {
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
+                        PhotoVariants.generate(this, currentPhotoPath);
                     }
                 });
 
@@ -440,16 +454,14 @@ public class AddIncidenciaActivity extends AppCompatActivity {
             etDescripcion.setText(incidenciaToEdit.getDescripcion());
 
             // Seleccionar Urgencia
-            ArrayAdapter<String> adapter = (ArrayAdapter<String>) spinnerUrgencia.getAdapter();
-            int position = adapter.getPosition(incidenciaToEdit.getUrgencia());
+            int position = java.util.Arrays.asList(URGENCIAS).indexOf(incidenciaToEdit.getUrgency());
             if (position >= 0) {
                 spinnerUrgencia.setSelection(position);
             }
 
             // Mostrar y configurar Spinner Estado
             layoutEstado.setVisibility(View.VISIBLE);
-            ArrayAdapter<String> adapterEstado = (ArrayAdapter<String>) spinnerEstado.getAdapter();
-            int posEstado = adapterEstado.getPosition(incidenciaToEdit.getEstado());
+            int posEstado = java.util.Arrays.asList(ESTADOS).indexOf(incidenciaToEdit.getStatus());
             if (posEstado >= 0) {
                 spinnerEstado.setSelection(posEstado);
             }
@@ -457,17 +469,12 @@ public class AddIncidenciaActivity extends AppCompatActivity {
             // Cargar Imagen Previa
             if (incidenciaToEdit.getFotoPath() != null && !incidenciaToEdit.getFotoPath().isEmpty()) {
                 currentPhotoPath = incidenciaToEdit.getFotoPath();
-                try {
-                    // Gestionar carga según si es Content URI o File Path
-                    if (currentPhotoPath.startsWith("content://")) {
-                        ivFoto.setImageURI(Uri.parse(currentPhotoPath));
-                    } else {
-                        ivFoto.setImageURI(Uri.fromFile(new File(currentPhotoPath)));
-                    }
-                    ivFoto.setPadding(0, 0, 0, 0);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                // Content URI o File Path, decodificada en segundo plano al tamaño de la vista.
+                // Se prefiere la vista previa ya reducida (y se genera si la foto es anterior)
+                ImageLoader.getInstance(this).load(
+                        PhotoVariants.usable(this, incidenciaToEdit.getPreviewPath(), currentPhotoPath),
+                        currentPhotoPath, ivFoto, () -> ivFoto.setPadding(0, 0, 0, 0));
+                PhotoVariants.generate(this, currentPhotoPath);
             }
 
             // Configurar visualización de Ubicación
@@ -501,6 +508,7 @@ public class AddIncidenciaActivity extends AppCompatActivity {
             // Optimistic UI for delete
             Toast.makeText(this, getString(R.string.msg_deleted), Toast.LENGTH_SHORT).show();
             finish();
+            PhotoVariants.delete(this, incidenciaToEdit.getFotoPath());
 
             incidenciaDAO.deleteIncidencia(incidenciaToEdit, new IncidenciaDAO.FirestoreCallback() {
                 @Override
@@ -526,16 +534,15 @@ public class AddIncidenciaActivity extends AppCompatActivity {
      * <b>ASPECTO CLAVE: Uso de Hilos (Threads)</b><br>
      * Las operaciones de base de datos son bloqueantes. Para mantener la interfaz
      * fluida (ANR free),
-     * ejecutamos la inserción/actualización en un hilo separado (Worker Thread).
-     * Luego, usamos runOnUiThread() para volver al hilo principal y mostrar el
-     * resultado.
+     * el DAO ejecuta la inserción/actualización en su hilo de base de datos
+     * (Worker Thread) y entrega el resultado en el hilo principal.
      * </p>
      */
     private void saveIncidencia() {
         // 1. Recoger datos de la UI
         final String titulo = etTitulo.getText().toString().trim();
         final String descripcion = etDescripcion.getText().toString().trim();
-        final String urgencia = spinnerUrgencia.getSelectedItem().toString();
+        final UrgenciaIncidencia urgencia = URGENCIAS[spinnerUrgencia.getSelectedItemPosition()];
 
         // 2. Validación
         if (TextUtils.isEmpty(titulo) || TextUtils.isEmpty(descripcion)) {
@@ -545,7 +552,7 @@ public class AddIncidenciaActivity extends AppCompatActivity {
 
         // Datos opcionales
         final String fotoPath = currentPhotoPath != null ? currentPhotoPath : "";
-        final String estado = spinnerEstado.getSelectedItem().toString();
+        final EstadoIncidencia estado = ESTADOS[spinnerEstado.getSelectedItemPosition()];
 
         // 3. UI Optimista: Asumimos éxito y cerramos
         // Firestore maneja la persistencia offline y sincronización automáticamente.
@@ -577,19 +584,28 @@ public class AddIncidenciaActivity extends AppCompatActivity {
 
         if (incidenciaToEdit != null) {
             // Update
+            // Si cambia la foto, sus versiones reducidas anteriores ya no se usan
+            String oldFotoPath = incidenciaToEdit.getFotoPath();
+            if (oldFotoPath != null && !oldFotoPath.isEmpty() && !oldFotoPath.equals(fotoPath))
+                PhotoVariants.delete(this, oldFotoPath);
             incidenciaToEdit.setTitulo(titulo);
             incidenciaToEdit.setDescripcion(descripcion);
-            incidenciaToEdit.setUrgencia(urgencia);
+            incidenciaToEdit.setUrgency(urgencia);
             incidenciaToEdit.setFotoPath(fotoPath);
+            incidenciaToEdit.setThumbPath(PhotoVariants.thumbnailPath(this, fotoPath));
+            incidenciaToEdit.setPreviewPath(PhotoVariants.previewPath(this, fotoPath));
             incidenciaToEdit.setLatitud(currentLat);
             incidenciaToEdit.setLongitud(currentLng);
-            incidenciaToEdit.setEstado(estado);
+            incidenciaToEdit.setStatus(estado);
 
             incidenciaDAO.updateIncidencia(incidenciaToEdit, callback);
         } else {
             // Insert
             Incidencia incidencia = new Incidencia(titulo, descripcion, urgencia, fotoPath, currentLat,
                     currentLng);
+            // Rutas de las versiones reducidas (pueden estar aún generándose)
+            incidencia.setThumbPath(PhotoVariants.thumbnailPath(this, fotoPath));
+            incidencia.setPreviewPath(PhotoVariants.previewPath(this, fotoPath));
 
             // Asignar al usuario actual
             com.ecocity.app.utils.SessionManager session = new com.ecocity.app.utils.SessionManager(
@@ -608,6 +624,8 @@ public class AddIncidenciaActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // Una foto que aún se esté decodificando ya no se pinta
+        ImageLoader.getInstance(this).cancel(ivFoto);
         // Cerramos conexión a base de datos para evitar fugas de memoria
         if (incidenciaDAO != null) {
             incidenciaDAO.close();
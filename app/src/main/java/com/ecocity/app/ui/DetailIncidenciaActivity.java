@@ -9,11 +9,12 @@ import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
 import com.ecocity.app.R;
+import com.ecocity.app.model.EstadoIncidencia;
 import com.ecocity.app.model.Incidencia;
+import com.ecocity.app.utils.ImageLoader;
+import com.ecocity.app.utils.PhotoVariants;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import android.net.Uri;
-import java.io.File;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapView;
@@ -98,7 +99,7 @@ public class DetailIncidenciaActivity extends AppCompatActivity {
         // 3. Obtener Datos del Intent de forma segura
         try {
             if (getIntent().hasExtra("incidencia")) {
-                incidencia = (Incidencia) getIntent().getSerializableExtra("incidencia");
+                incidencia = getIntent().getParcelableExtra("incidencia");
             }
         } catch (Exception e) {
             android.util.Log.e("DetailIncidencia", "Error al recuperar incidencia del Intent: " + e.getMessage());
@@ -155,18 +156,14 @@ public class DetailIncidenciaActivity extends AppCompatActivity {
 
         // Cargar Imagen de Cabecera
         if (incidencia.getFotoPath() != null && !incidencia.getFotoPath().isEmpty()) {
-            try {
-                // Distinguir entre URI de contenido (galería/cámara) y ruta de archivo
-                if (incidencia.getFotoPath().startsWith("content://")) {
-                    ivHeader.setImageURI(Uri.parse(incidencia.getFotoPath()));
-                } else {
-                    ivHeader.setImageURI(Uri.fromFile(new File(incidencia.getFotoPath())));
-                }
-                ivHeader.setScaleType(ImageView.ScaleType.CENTER_CROP);
-            } catch (Exception e) {
-                e.printStackTrace();
-                // Si falla, se queda la imagen por defecto (placeholder) definida en XML
-            }
+            // Se decodifica en segundo plano y reducida al tamaño de la cabecera (URI de
+            // contenido o ruta de archivo), partiendo de la vista previa generada tras la
+            // captura si existe. Si falla, se queda la imagen por defecto (placeholder)
+            // definida en XML
+            ImageLoader.getInstance(this).load(
+                    PhotoVariants.usable(this, incidencia.getPreviewPath(), incidencia.getFotoPath()),
+                    incidencia.getFotoPath(), ivHeader,
+                    () -> ivHeader.setScaleType(ImageView.ScaleType.CENTER_CROP));
         }
 
         // Configurar chips de estado y urgencia
@@ -194,17 +191,16 @@ public class DetailIncidenciaActivity extends AppCompatActivity {
      * Configura el indicador visual de Urgencia (Color y Texto).
      */
     private void setupUrgencyChip() {
-        String urgency = incidencia.getUrgencia() != null ? incidencia.getUrgencia() : "Baja";
-        tvUrgencia.setText(urgency.toUpperCase(java.util.Locale.getDefault()));
+        tvUrgencia.setText(incidencia.getUrgencia().toUpperCase(java.util.Locale.getDefault()));
 
         int color;
         // Asignar colores según nivel de urgencia
-        switch (urgency.toLowerCase(java.util.Locale.getDefault())) {
-            case "alta":
+        switch (incidencia.getUrgency()) {
+            case ALTA:
                 color = androidx.core.content.ContextCompat.getColor(this, R.color.urgency_high_bg);
                 tvUrgencia.setTextColor(androidx.core.content.ContextCompat.getColor(this, R.color.urgency_high));
                 break;
-            case "media":
+            case MEDIA:
                 color = androidx.core.content.ContextCompat.getColor(this, R.color.urgency_medium_bg);
                 tvUrgencia.setTextColor(androidx.core.content.ContextCompat.getColor(this, R.color.urgency_medium));
                 break;
@@ -220,16 +216,16 @@ public class DetailIncidenciaActivity extends AppCompatActivity {
      * Configura el indicador visual de Estado (Color, Texto e Icono).
      */
     private void setupStatusChip() {
-        String estado = incidencia.getEstado() != null ? incidencia.getEstado() : "Pendiente";
-        tvEstado.setText(estado.toUpperCase(java.util.Locale.getDefault()));
+        EstadoIncidencia estado = incidencia.getStatus();
+        tvEstado.setText(incidencia.getEstado().toUpperCase(java.util.Locale.getDefault()));
 
         int bgRes, textRes, iconRes;
 
-        if (estado.equalsIgnoreCase("En proceso")) {
+        if (estado == EstadoIncidencia.EN_PROCESO) {
             bgRes = androidx.core.content.ContextCompat.getColor(this, R.color.colorStatProcessBg);
             textRes = androidx.core.content.ContextCompat.getColor(this, R.color.colorStatProcessText);
             iconRes = android.R.drawable.ic_popup_sync;
-        } else if (estado.equalsIgnoreCase("Resuelta")) {
+        } else if (estado == EstadoIncidencia.RESUELTA) {
             bgRes = androidx.core.content.ContextCompat.getColor(this, R.color.colorStatResolvedBg);
             textRes = androidx.core.content.ContextCompat.getColor(this, R.color.colorStatResolvedText);
             iconRes = android.R.drawable.checkbox_on_background;
@@ -341,6 +337,7 @@ public class DetailIncidenciaActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        ImageLoader.getInstance(this).cancel(ivHeader);
         if (mapView != null)
             mapView.onDestroy();
     }
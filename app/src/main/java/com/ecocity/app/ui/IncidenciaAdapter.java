@@ -1,6 +1,8 @@
 package com.ecocity.app.ui;
 
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,13 +10,15 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.ecocity.app.R;
-import com.ecocity.app.model.Incidencia;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import com.ecocity.app.database.IncidenciaStore;
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.utils.GeoHashIndex;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * <h1>IncidenciaAdapter</h1>
@@ -26,7 +30,8 @@ import java.util.Map;
  * <h2>Características Principales:</h2>
  * <ul>
  * <li><b>Lista Heterogénea:</b> Gestiona dos tipos de vistas: Cabeceras de
- * Sección (Strings) e Ítems de Incidencia (Objetos Incidencia).</li>
+ * Sección e Ítems de Incidencia, leídos directamente del
+ * {@link IncidenciaStore} columnar (sin un objeto por incidencia).</li>
  * <li><b>Secciones Agrupadas:</b> Agrupa las incidencias por estado (Pendiente,
  * En Proceso, Resuelta).</li>
  * <li><b>Expandible/Colapsable:</b> Permite al usuario abrir o cerrar secciones
@@ -39,158 +44,313 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     private static final int TYPE_HEADER = 0;
     private static final int TYPE_ITEM = 1;
 
-    // Lista principal de visualización (Contiene tanto Strings como Incidencias
-    // ordenados)
-    private List<Object> displayList;
-
-    // Mapa auxiliar para agrupar incidencias por estado
-    private Map<String, List<Incidencia>> groupedIncidencias;
-
-    // Mapa para controlar qué secciones están expandidas
-    private Map<String, Boolean> expandedSections;
-
     // Definición del orden de las secciones
-    private final String[] SECTIONS = { "Pendiente", "En Proceso", "Resuelta" };
+    private static final EstadoIncidencia[] SECTIONS = { EstadoIncidencia.PENDIENTE, EstadoIncidencia.EN_PROCESO,
+            EstadoIncidencia.RESUELTA };
+
+    // Hilo en segundo plano para agrupar y calcular diferencias (compartido por
+    // todos los adaptadores: los cálculos de una misma lista se ejecutan en orden)
+    private static final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Color de la cabecera de cada sección (mismo índice que SECTIONS), resuelto
+    // una sola vez
+    private static final int[] SECTION_COLORS = { Color.parseColor("#616161"), // Gris para pendiente
+            Color.parseColor("#1976D2"), Color.parseColor("#388E3C") };
+
+    // Datos mostrados (columnar, sin un objeto por incidencia)
+    private IncidenciaStore store;
+
+    // Lo que "ve" el RecyclerView: secciones, expansión y posiciones precalculadas
+    private DisplayModel model;
+
+    // Generación de la última actualización pedida (solo se incrementa en el hilo
+    // principal). Un resultado calculado en segundo plano solo se aplica si sigue
+    // siendo el de la última generación
+    private volatile int generation;
+    // Datos pedidos que aún no se han aplicado (null si no hay ninguno en curso)
+    private IncidenciaStore pendingStore;
+    private Runnable pendingCommit;
+
+    // Índice espacial en memoria de las incidencias cargadas y almacén con el que
+    // se sincronizó por última vez (ver getSpatialIndex)
+    private final GeoHashIndex spatialIndex = new GeoHashIndex();
+    private IncidenciaStore indexedStore;
 
     /**
      * Constructor del adaptador.
-     * Inicializa las estructuras de datos y procesa la lista inicial de
-     * incidencias.
+     * Inicializa las estructuras de datos y procesa el conjunto inicial de
+     * incidencias (sin diff, por lo que se hace directamente).
      * 
-     * @param allIncidencias Lista completa de incidencias a mostrar.
+     * @param incidencias Incidencias a mostrar.
      */
-    public IncidenciaAdapter(List<Incidencia> allIncidencias) {
-        this.groupedIncidencias = new HashMap<>();
-        this.expandedSections = new HashMap<>();
-        this.displayList = new ArrayList<>();
-
-        // 1. Inicializar grupos vacíos y estado de expansión por defecto
-        for (String section : SECTIONS) {
-            groupedIncidencias.put(section, new ArrayList<>());
-            // Por UX, colapsamos "Resuelta" para no saturar, y expandimos las activas
-            expandedSections.put(section, !section.equals("Resuelta"));
+    public IncidenciaAdapter(IncidenciaStore incidencias) {
+        // Ids estables (ver getItemId): el RecyclerView reutiliza las vistas de las
+        // filas que no cambian al refrescar
+        setHasStableIds(true);
+
+        // 1. Estado de expansión por defecto. Por UX, colapsamos "Resuelta" para no
+        // saturar, y expandimos las activas
+        boolean[] expanded = new boolean[SECTIONS.length];
+        for (int s = 0; s < SECTIONS.length; s++) {
+            expanded[s] = SECTIONS[s] != EstadoIncidencia.RESUELTA;
         }
 
-        // 2. Clasificar incidencias en los grupos correspondientes
-        for (Incidencia inc : allIncidencias) {
-            String statusRaw = inc.getEstado() != null ? inc.getEstado() : "Pendiente";
-            String statusKey = "Pendiente"; // Fallback
+        // 2. Clasificar incidencias en los grupos correspondientes y precalcular
+        // el modelo de visualización
+        this.store = incidencias;
+        this.model = new DisplayModel(groupRows(incidencias), expanded);
+    }
 
-            if (statusRaw.equalsIgnoreCase("En proceso")) {
-                statusKey = "En Proceso";
-            } else if (statusRaw.equalsIgnoreCase("Resuelta")) {
-                statusKey = "Resuelta";
-            }
+    /**
+     * Índice espacial de las incidencias actualmente cargadas, para consultas por
+     * radio y de vecinos más cercanos sin recorrer la lista (devuelve local_id).
+     * <p>
+     * Se sincroniza (de forma incremental) al pedirlo y no con cada cambio de
+     * datos: las actualizaciones de la lista, incluidas las páginas del orden
+     * por cercanía, no ordenan ni copian nada en el hilo principal para un
+     * índice que solo se consulta de vez en cuando.
+     * </p>
+     */
+    public GeoHashIndex getSpatialIndex() {
+        if (indexedStore != store) {
+            // El almacén ya guarda las columnas como arrays primitivos: sin copias
+            spatialIndex.update(store.getLocalIds(), store.getLatitudes(), store.getLongitudes(), store.size());
+            indexedStore = store;
+        }
+        return spatialIndex;
+    }
 
-            groupedIncidencias.get(statusKey).add(inc);
+    /**
+     * Reparte las filas del almacén por sección conservando su orden. Dos
+     * pasadas: contar por código de estado y después rellenar arrays del tamaño
+     * exacto.
+     */
+    private static int[][] groupRows(IncidenciaStore incidencias) {
+        int n = incidencias.size();
+        int[] counts = new int[SECTIONS.length];
+        for (int row = 0; row < n; row++) {
+            counts[sectionOf(incidencias.getStatus(row))]++;
         }
+        int[][] groups = new int[SECTIONS.length][];
+        for (int s = 0; s < SECTIONS.length; s++) {
+            groups[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int row = 0; row < n; row++) {
+            int s = sectionOf(incidencias.getStatus(row));
+            groups[s][counts[s]++] = row;
+        }
+        return groups;
+    }
 
-        // 3. Construir la lista lineal para el RecyclerView
-        buildDisplayList();
+    private static int sectionOf(EstadoIncidencia estado) {
+        switch (estado) {
+            case EN_PROCESO:
+                return 1;
+            case RESUELTA:
+                return 2;
+            default:
+                return 0;
+        }
     }
 
     /**
-     * Construye la lista lineal (displayList) basada en los grupos y su estado de
-     * expansión.
-     * Esta lista es la que "ve" el RecyclerView.
+     * Título de la cabecera de una sección.
      */
-    private void buildDisplayList() {
-        displayList.clear();
-        for (String section : SECTIONS) {
-            List<Incidencia> items = groupedIncidencias.get(section);
-            // Paso A: Añadir Cabecera de Sección
-            displayList.add(section);
-
-            // Paso B: Si la sección está expandida y tiene items, añadirlos
-            if (items != null && !items.isEmpty() && expandedSections.get(section)) {
-                displayList.addAll(items);
-            }
+    private static String getSectionTitle(EstadoIncidencia section) {
+        switch (section) {
+            case EN_PROCESO:
+                return "En Proceso";
+            case RESUELTA:
+                return "Resuelta";
+            default:
+                return "Pendiente";
         }
     }
 
     /**
-     * Actualiza los datos del adaptador con una nueva lista.
+     * Actualiza los datos con animación suave usando DiffUtil.
      * Mantiene el estado de expansión de las secciones.
      * 
-     * @param newIncidencias Nueva lista de incidencias.
+     * @param newIncidencias Nuevas incidencias.
      */
+    public void updateData(IncidenciaStore newIncidencias) {
+        updateData(newIncidencias, null);
+    }
+
     /**
-     * Actualiza los datos con animación suave usando DiffUtil.
+     * Actualiza los datos calculando la agrupación y el DiffUtil en segundo plano
+     * (al estilo de AsyncListDiffer), para no bloquear el hilo principal con
+     * listas de miles de elementos. Si llega otra actualización antes de que
+     * termine el cálculo, el resultado antiguo se descarta.
+     * 
+     * @param newIncidencias Nuevas incidencias.
+     * @param commitCallback Se ejecuta en el hilo principal cuando los datos ya se
+     *                       han aplicado (p. ej. para hacer scroll); no se ejecuta
+     *                       si la actualización queda descartada.
      */
-    public void updateData(List<Incidencia> newIncidencias) {
-        // Guardar lista antigua para comparar
-        List<Object> oldDisplayList = new ArrayList<>(this.displayList);
+    public void updateData(IncidenciaStore newIncidencias, Runnable commitCallback) {
+        final int runGeneration = ++generation;
+        pendingStore = newIncidencias;
+        pendingCommit = commitCallback;
+
+        // Instantánea del estado actual: el cálculo no toca los campos del adaptador
+        final IncidenciaStore oldStore = this.store;
+        final DisplayModel oldModel = this.model;
+
+        diffExecutor.execute(() -> {
+            if (runGeneration != generation)
+                return; // Ya hay una petición más reciente: no calcular
+
+            // Reagrupar y construir la lista nueva
+            final DisplayModel newModel = oldModel.withGroups(groupRows(newIncidencias));
+
+            // Calcular diferencias
+            final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldModel.size;
+                }
 
-        // Limpiar agrupaciones y procesar nuevos datos
-        for (String section : SECTIONS) {
-            groupedIncidencias.put(section, new ArrayList<>());
-        }
-        for (Incidencia inc : newIncidencias) {
-            String statusRaw = inc.getEstado() != null ? inc.getEstado() : "Pendiente";
-            String statusKey = "Pendiente";
-            if (statusRaw.equalsIgnoreCase("En proceso"))
-                statusKey = "En Proceso";
-            else if (statusRaw.equalsIgnoreCase("Resuelta"))
-                statusKey = "Resuelta";
-            groupedIncidencias.get(statusKey).add(inc);
-        }
+                @Override
+                public int getNewListSize() {
+                    return newModel.size;
+                }
 
-        // Reconstruir lista nueva
-        buildDisplayList();
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    int oldRow = oldModel.entryAt(oldItemPosition);
+                    int newRow = newModel.entryAt(newItemPosition);
 
-        // Calcular diferencias y animar
-        androidx.recyclerview.widget.DiffUtil.DiffResult diffResult = androidx.recyclerview.widget.DiffUtil
-                .calculateDiff(new androidx.recyclerview.widget.DiffUtil.Callback() {
-                    @Override
-                    public int getOldListSize() {
-                        return oldDisplayList.size();
+                    // Si son cabeceras, comparar la sección
+                    if (oldRow < 0 || newRow < 0) {
+                        return oldRow == newRow;
                     }
 
-                    @Override
-                    public int getNewListSize() {
-                        return displayList.size();
-                    }
+                    // Si son incidencias, comparar ID local (único incluso antes de subir)
+                    return oldStore.getLocalId(oldRow) == newIncidencias.getLocalId(newRow);
+                }
 
-                    @Override
-                    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                        Object oldItem = oldDisplayList.get(oldItemPosition);
-                        Object newItem = displayList.get(newItemPosition);
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    int oldRow = oldModel.entryAt(oldItemPosition);
+                    int newRow = newModel.entryAt(newItemPosition);
 
-                        // Si son cabeceras (String), comparar texto
-                        if (oldItem instanceof String && newItem instanceof String) {
-                            return oldItem.equals(newItem);
-                        }
+                    if (oldRow < 0) // Cabeceras: solo cambia el contador
+                        return oldModel.headerLabel(-oldRow - 1).equals(newModel.headerLabel(-newRow - 1));
 
-                        // Si son incidencias, comparar ID único
-                        if (oldItem instanceof Incidencia && newItem instanceof Incidencia) {
-                            String id1 = ((Incidencia) oldItem).getId();
-                            String id2 = ((Incidencia) newItem).getId();
-                            return id1 != null && id1.equals(id2);
-                        }
+                    // Comparar campos relevantes para visualización (primero el hash de
+                    // contenido precalculado)
+                    return oldStore.sameContent(oldRow, newIncidencias, newRow);
+                }
+            });
 
-                        return false;
-                    }
+            // Aplicar y animar en el hilo principal, salvo que el resultado haya
+            // quedado obsoleto mientras se calculaba
+            mainHandler.post(() -> {
+                if (runGeneration != generation)
+                    return;
+                store = newIncidencias;
+                model = newModel;
+                Runnable commit = pendingCommit;
+                pendingStore = null;
+                pendingCommit = null;
+                diffResult.dispatchUpdatesTo(IncidenciaAdapter.this);
+                if (commit != null)
+                    commit.run();
+            });
+        });
+    }
 
-                    @Override
-                    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                        Object oldItem = oldDisplayList.get(oldItemPosition);
-                        Object newItem = displayList.get(newItemPosition);
-
-                        if (oldItem instanceof String)
-                            return true; // Cabeceras no cambian de contenido interno
-
-                        // Comparar campos relevantes para visualización
-                        Incidencia i1 = (Incidencia) oldItem;
-                        Incidencia i2 = (Incidencia) newItem;
-                        // Simplificación: si título y estado son iguales. Para exactitud, comparar
-                        // todo.
-                        return i1.getTitulo().equals(i2.getTitulo()) &&
-                                i1.getEstado().equals(i2.getEstado()) &&
-                                i1.getUrgencia().equals(i2.getUrgencia());
-                    }
-                });
+    /**
+     * Incidencias mostradas actualmente (sin contar una actualización en curso).
+     */
+    public IncidenciaStore getStore() {
+        return store;
+    }
 
-        diffResult.dispatchUpdatesTo(this);
+    /**
+     * true si hay una actualización pedida con {@link #updateData} que aún no se
+     * ha aplicado.
+     */
+    public boolean hasPendingUpdate() {
+        return pendingStore != null;
+    }
+
+    /**
+     * Aplica el cambio de una sola incidencia sin recalcular el DiffUtil: se
+     * localiza su posición antes y después del cambio y se notifica solo ese
+     * movimiento/alta/baja y las cabeceras cuyo contador cambia.
+     * <p>
+     * Solo es válido con la lista en el orden por estado y urgencia; si hay una
+     * actualización completa en curso no hace nada y devuelve false.
+     * </p>
+     *
+     * @param localId Incidencia cambiada.
+     * @param src     Almacén con la fila nueva, o null si se ha borrado.
+     * @param srcRow  Fila de la incidencia en src.
+     * @return false si no se ha podido aplicar (el llamante debe recargar).
+     */
+    public boolean applyRowChange(long localId, IncidenciaStore src, int srcRow) {
+        if (pendingStore != null)
+            return false;
+        // Cualquier cálculo en segundo plano ya no corresponde a estos datos
+        generation++;
+
+        final IncidenciaStore oldStore = store;
+        final DisplayModel oldModel = model;
+        final int oldRow = oldStore.indexOf(localId);
+        if (oldRow < 0 && src == null)
+            return true; // Borrado de una fila que no se mostraba
+
+        IncidenciaStore newStore = oldStore.withRow(localId, src, srcRow);
+        DisplayModel newModel = oldModel.withGroups(groupRows(newStore));
+        int newRow = src != null ? newStore.indexOf(localId) : -1;
+        int oldPosition = oldRow >= 0 ? oldModel.positionOf(sectionOf(oldStore.getStatus(oldRow)), oldRow) : -1;
+        int newPosition = newRow >= 0 ? newModel.positionOf(sectionOf(newStore.getStatus(newRow)), newRow) : -1;
+        boolean contentChanged = oldRow < 0 || newRow < 0 || !oldStore.sameContent(oldRow, newStore, newRow);
+
+        store = newStore;
+        model = newModel;
+
+        if (oldPosition >= 0 && newPosition >= 0) {
+            if (oldPosition != newPosition)
+                notifyItemMoved(oldPosition, newPosition);
+            if (contentChanged)
+                notifyItemChanged(newPosition);
+        } else if (oldPosition >= 0) {
+            notifyItemRemoved(oldPosition);
+        } else if (newPosition >= 0) {
+            notifyItemInserted(newPosition);
+        }
+
+        // Contadores de las cabeceras
+        for (int s = 0; s < SECTIONS.length; s++) {
+            if (oldModel.count(s) != newModel.count(s))
+                notifyItemChanged(newModel.headerPosition(s));
+        }
+        return true;
+    }
+
+    /**
+     * Fila del almacén que se muestra en una posición, o un valor negativo si la
+     * posición es una cabecera.
+     */
+    public int getStoreRow(int position) {
+        return model.entryAt(position);
+    }
+
+    /**
+     * Id estable de cada posición. Los ítems usan su local_id, que SQLite asigna
+     * al crear la fila y no cambia al sincronizar (las incidencias creadas sin
+     * conexión aún no tienen id de Firestore). Las cabeceras usan ids negativos,
+     * que nunca coinciden con un local_id.
+     */
+    @Override
+    public long getItemId(int position) {
+        int entry = model.entryAt(position);
+        return entry < 0 ? entry : store.getLocalId(entry);
     }
 
     /**
@@ -198,7 +358,7 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
      */
     @Override
     public int getItemViewType(int position) {
-        if (displayList.get(position) instanceof String) {
+        if (model.isHeader(position)) {
             return TYPE_HEADER;
         } else {
             return TYPE_ITEM;
@@ -225,18 +385,134 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
      */
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        if (getItemViewType(position) == TYPE_HEADER) {
-            String sectionTitle = (String) displayList.get(position);
-            ((HeaderViewHolder) holder).bind(sectionTitle);
+        int entry = model.entryAt(position);
+        if (entry < 0) {
+            ((HeaderViewHolder) holder).bind(-entry - 1);
         } else {
-            Incidencia incidencia = (Incidencia) displayList.get(position);
-            ((IncidenciaViewHolder) holder).bind(incidencia);
+            ((IncidenciaViewHolder) holder).bind(entry);
         }
     }
 
     @Override
     public int getItemCount() {
-        return displayList.size();
+        return model.size;
+    }
+
+    /**
+     * Modelo inmutable de lo que muestra la lista: las filas de cada sección, qué
+     * secciones están expandidas, la posición de cada cabecera y su texto ya
+     * formateado ("Pendiente (12)").
+     * <p>
+     * No guarda una lista lineal de posiciones: como solo hay tres secciones, la
+     * entrada de una posición se deduce de las posiciones de las cabeceras en
+     * tiempo constante. Así expandir o colapsar solo recalcula tres enteros y
+     * comparte los grupos y los textos con el modelo anterior.
+     * </p>
+     * <p>
+     * Una entrada de cabecera de la sección s se codifica como -(s + 1) y un ítem
+     * como su fila en el almacén.
+     * </p>
+     */
+    static final class DisplayModel {
+        // Filas del almacén agrupadas por sección (mismo índice que SECTIONS)
+        private final int[][] sectionRows;
+        private final boolean[] expanded;
+        private final int[] headerPositions;
+        private final String[] headerLabels;
+        final int size;
+
+        DisplayModel(int[][] sectionRows, boolean[] expanded) {
+            this(sectionRows, expanded, buildLabels(sectionRows));
+        }
+
+        private DisplayModel(int[][] sectionRows, boolean[] expanded, String[] headerLabels) {
+            this.sectionRows = sectionRows;
+            this.expanded = expanded;
+            this.headerLabels = headerLabels;
+            this.headerPositions = new int[SECTIONS.length];
+            int position = 0;
+            for (int s = 0; s < SECTIONS.length; s++) {
+                headerPositions[s] = position;
+                position += 1 + (expanded[s] ? sectionRows[s].length : 0);
+            }
+            this.size = position;
+        }
+
+        private static String[] buildLabels(int[][] groups) {
+            String[] labels = new String[SECTIONS.length];
+            for (int s = 0; s < SECTIONS.length; s++) {
+                labels[s] = getSectionTitle(SECTIONS[s]) + " (" + groups[s].length + ")";
+            }
+            return labels;
+        }
+
+        /**
+         * Mismo estado de expansión con otros grupos.
+         */
+        DisplayModel withGroups(int[][] groups) {
+            return new DisplayModel(groups, expanded);
+        }
+
+        /**
+         * Mismos grupos y textos con una sección expandida o colapsada.
+         */
+        DisplayModel withExpanded(int section, boolean value) {
+            boolean[] newExpanded = expanded.clone();
+            newExpanded[section] = value;
+            return new DisplayModel(sectionRows, newExpanded, headerLabels);
+        }
+
+        /**
+         * Sección a la que pertenece una posición (cabecera o ítem).
+         */
+        int sectionAt(int position) {
+            int s = SECTIONS.length - 1;
+            while (headerPositions[s] > position) {
+                s--;
+            }
+            return s;
+        }
+
+        boolean isHeader(int position) {
+            return headerPositions[sectionAt(position)] == position;
+        }
+
+        /**
+         * Entrada de una posición: -(s + 1) para la cabecera de s o la fila del
+         * almacén.
+         */
+        int entryAt(int position) {
+            int s = sectionAt(position);
+            int offset = position - headerPositions[s];
+            return offset == 0 ? -(s + 1) : sectionRows[s][offset - 1];
+        }
+
+        /**
+         * Posición de una fila de la sección indicada, o -1 si no se muestra. Los
+         * grupos conservan el orden del almacén, así que se busca por bisección.
+         */
+        int positionOf(int section, int row) {
+            if (!expanded[section])
+                return -1;
+            int index = Arrays.binarySearch(sectionRows[section], row);
+            return index >= 0 ? headerPositions[section] + 1 + index : -1;
+        }
+
+        int headerPosition(int section) {
+            return headerPositions[section];
+        }
+
+        String headerLabel(int section) {
+            return headerLabels[section];
+        }
+
+        boolean isExpanded(int section) {
+            return expanded[section];
+        }
+
+        int count(int section) {
+            return sectionRows[section].length;
+        }
     }
 
     // --- ViewHolders ---
@@ -259,78 +535,57 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             // Listener para expandir/colapsar al pulsar la cabecera completa
             itemView.setOnClickListener(v -> {
                 int pos = getAdapterPosition();
-                if (pos != RecyclerView.NO_POSITION) {
-                    String section = (String) displayList.get(pos);
-                    toggleSection(section);
+                if (pos != RecyclerView.NO_POSITION && model.isHeader(pos)) {
+                    toggleSection(model.sectionAt(pos));
                 }
             });
         }
 
-        void bind(String section) {
-            int count = groupedIncidencias.get(section).size();
-            tvStatusTitle.setText(section + " (" + count + ")");
+        void bind(int sectionIndex) {
+            // Texto y color ya calculados: el bind no crea objetos
+            tvStatusTitle.setText(model.headerLabel(sectionIndex));
 
-            boolean isExpanded = expandedSections.get(section);
+            boolean isExpanded = model.isExpanded(sectionIndex);
             ivExpand.setRotation(isExpanded ? 180f : 0f); // Rotar flecha si está expandido
 
             // Color distintivo para la cabecera
-            int color;
-            switch (section) {
-                case "En Proceso":
-                    color = Color.parseColor("#1976D2");
-                    break;
-                case "Resuelta":
-                    color = Color.parseColor("#388E3C");
-                    break;
-                default:
-                    color = Color.parseColor("#616161"); // Gris para pendiente
-                    break;
-            }
-            cardStatusColor.setCardBackgroundColor(color);
+            cardStatusColor.setCardBackgroundColor(SECTION_COLORS[sectionIndex]);
         }
 
         /**
          * Lógica para expandir o colapsar una sección.
-         * Modifica la lista displayList y notifica las animaciones de
-         * inserción/borrado.
+         * Solo recalcula las posiciones de las cabeceras (los grupos se comparten)
+         * y notifica las animaciones de inserción/borrado.
          */
-        private void toggleSection(String section) {
-            boolean isExpanded = expandedSections.get(section);
-            List<Incidencia> items = groupedIncidencias.get(section);
+        private void toggleSection(int sectionIndex) {
+            boolean isExpanded = model.isExpanded(sectionIndex);
+            int count = model.count(sectionIndex);
 
             int headerPosition = getAdapterPosition();
             if (headerPosition == RecyclerView.NO_POSITION)
                 return;
 
             // Invertir estado
-            expandedSections.put(section, !isExpanded);
+            model = model.withExpanded(sectionIndex, !isExpanded);
 
             // Animar rotación de flecha
             ivExpand.animate().rotation(!isExpanded ? 180f : 0f).setDuration(200).start();
 
             // Si no hay items, solo rotamos la flecha visualmente, no cambiamos la lista
-            if (items == null || items.isEmpty())
-                return;
-
-            if (isExpanded) {
-                // ACCIÓN: COLAPSAR
-                // Removemos los items que están debajo de la cabecera
-                int count = items.size();
-                // Eliminamos de la lista visual
-                for (int i = 0; i < count; i++) {
-                    displayList.remove(headerPosition + 1);
-                }
-                // Notificamos al adaptador para animar la eliminación
-                notifyItemRangeRemoved(headerPosition + 1, count);
-            } else {
-                // ACCIÓN: EXPANDIR
-                // Añadimos los items debajo de la cabecera
-                int count = items.size();
-                for (int i = 0; i < count; i++) {
-                    displayList.add(headerPosition + 1 + i, items.get(i));
+            if (count > 0) {
+                if (isExpanded) {
+                    // ACCIÓN: COLAPSAR. Animamos la eliminación de los items bajo la cabecera
+                    notifyItemRangeRemoved(headerPosition + 1, count);
+                } else {
+                    // ACCIÓN: EXPANDIR. Animamos la inserción debajo de la cabecera
+                    notifyItemRangeInserted(headerPosition + 1, count);
                 }
-                // Notificamos al adaptador para animar la inserción
-                notifyItemRangeInserted(headerPosition + 1, count);
+            }
+
+            // Una actualización en curso se calculó con la expansión y la lista
+            // anteriores: se vuelve a pedir sobre el estado actual
+            if (pendingStore != null) {
+                updateData(pendingStore, pendingCommit);
             }
         }
     }
@@ -360,27 +615,26 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             ivEstadoIcon = itemView.findViewById(R.id.ivEstadoIcon);
         }
 
-        void bind(Incidencia incidencia) {
-            tvTitulo.setText(incidencia.getTitulo());
-            tvDescripcion.setText(incidencia.getDescripcion());
-            tvUrgencia.setText(incidencia.getUrgencia());
-            tvEstado.setText(incidencia.getEstado());
+        void bind(int row) {
+            final IncidenciaStore incidencias = store;
+            tvTitulo.setText(incidencias.getTitulo(row));
+            tvDescripcion.setText(incidencias.getDescripcion(row));
+            tvUrgencia.setText(incidencias.getUrgency(row).getLabel());
+            tvEstado.setText(incidencias.getStatus(row).getLabel());
 
             // --- Lógica de Estilos Visuales ---
 
             // 1. Color según Urgencia
             int urgencyColor;
             int urgencyBgColor;
-            String urgencia = incidencia.getUrgencia() != null ? incidencia.getUrgencia() : "Baja";
-
-            switch (urgencia.toLowerCase(java.util.Locale.getDefault())) {
-                case "alta":
+            switch (incidencias.getUrgency(row)) {
+                case ALTA:
                     urgencyColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
                             R.color.urgency_high);
                     urgencyBgColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
                             R.color.urgency_high_bg);
                     break;
-                case "media":
+                case MEDIA:
                     urgencyColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
                             R.color.urgency_medium);
                     urgencyBgColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
@@ -399,7 +653,7 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             tvUrgencia.setTextColor(urgencyColor);
 
             // 2. Indicador de Ubicación
-            if (incidencia.getLatitud() != 0.0 || incidencia.getLongitud() != 0.0) {
+            if (incidencias.getLatitud(row) != 0.0 || incidencias.getLongitud(row) != 0.0) {
                 tvLocationStatus.setText("Ubicación registrada");
                 int colorGreen = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
                         R.color.urgency_low);
@@ -417,15 +671,15 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             int statusBgColor;
             int statusTextColor;
             int statusIconRes;
-            String estado = incidencia.getEstado() != null ? incidencia.getEstado() : "Pendiente";
+            EstadoIncidencia estado = incidencias.getStatus(row);
 
-            if (estado.equalsIgnoreCase("En proceso")) {
+            if (estado == EstadoIncidencia.EN_PROCESO) {
                 statusBgColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
                         R.color.colorStatProcessBg);
                 statusTextColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
                         R.color.colorStatProcessText);
                 statusIconRes = android.R.drawable.ic_popup_sync;
-            } else if (estado.equalsIgnoreCase("Resuelta")) {
+            } else if (estado == EstadoIncidencia.RESUELTA) {
                 statusBgColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
                         R.color.colorStatResolvedBg);
                 statusTextColor = androidx.core.content.ContextCompat.getColor(itemView.getContext(),
@@ -449,7 +703,8 @@ public class IncidenciaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
                 try {
                     android.content.Context context = v.getContext();
                     android.content.Intent intent = new android.content.Intent(context, DetailIncidenciaActivity.class);
-                    intent.putExtra("incidencia", incidencia);
+                    // Solo se materializa el objeto de la incidencia pulsada
+                    intent.putExtra("incidencia", incidencias.toIncidencia(row));
                     context.startActivity(intent);
                 } catch (Exception e) {
                     android.util.Log.e("IncidenciaAdapter", "Error al abrir detalle: " + e.getMessage());
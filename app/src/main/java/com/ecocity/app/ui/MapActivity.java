@@ -6,17 +6,24 @@ import android.view.View;
 import android.widget.Button;
 import androidx.appcompat.app.AppCompatActivity;
 import com.ecocity.app.R;
+import com.ecocity.app.database.IncidenciaDAO;
+import com.ecocity.app.model.Incidencia;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.Toast;
 import android.location.Geocoder;
 import android.location.Address;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import android.view.inputmethod.EditorInfo;
@@ -34,6 +41,8 @@ import android.view.inputmethod.EditorInfo;
  * <li>Búsqueda de direcciones por texto (Geocoding).</li>
  * <li>Detección de ubicación actual del usuario (GPS/Red).</li>
  * <li>Selección visual de coordenadas mediante el centro del mapa.</li>
+ * <li>Marcadores de las incidencias ya reportadas en la zona visible (evita
+ * duplicados).</li>
  * </ul>
  */
 public class MapActivity extends AppCompatActivity implements OnMapReadyCallback {
@@ -45,6 +54,13 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
     private EditText etSearch; // Barra de búsqueda
     private ImageButton btnSearch; // Lupa
 
+    // Máximo de marcadores de incidencias existentes pintados a la vez
+    private static final int MAX_VIEWPORT_MARKERS = 200;
+
+    // Acceso a datos para consultar solo las incidencias visibles (índice espacial)
+    private IncidenciaDAO incidenciaDAO;
+    private final List<Marker> incidenciaMarkers = new ArrayList<>();
+
     // Cliente de Ubicación de Google Play Services
     private com.google.android.gms.location.FusedLocationProviderClient fusedLocationClient;
 
@@ -92,6 +108,9 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
 
         findViewById(R.id.btnBack).setOnClickListener(v -> finish());
 
+        incidenciaDAO = new IncidenciaDAO(this);
+        incidenciaDAO.open();
+
         // Inicializar cliente de ubicación
         fusedLocationClient = com.google.android.gms.location.LocationServices.getFusedLocationProviderClient(this);
 
@@ -149,6 +168,9 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         // Habilitar controles de zoom (+/-)
         mMap.getUiSettings().setZoomControlsEnabled(true);
 
+        // Al terminar cada movimiento de cámara, pintar solo las incidencias visibles
+        mMap.setOnCameraIdleListener(this::loadIncidenciasInViewport);
+
         // Iniciar proceso de permisos y ubicación
         checkLocationPermission();
     }
@@ -201,6 +223,51 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         }
     }
 
+    /**
+     * Consulta al DAO las incidencias dentro del área visible del mapa y
+     * sustituye los marcadores anteriores por ellas.
+     */
+    private void loadIncidenciasInViewport() {
+        if (mMap == null || incidenciaDAO == null)
+            return;
+
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        incidenciaDAO.getIncidenciasInViewport(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude, new IncidenciaDAO.FirestoreCallback() {
+                    @Override
+                    public void onDataLoaded(List<Incidencia> incidencias) {
+                        if (mMap == null || isFinishing())
+                            return;
+                        for (Marker marker : incidenciaMarkers) {
+                            marker.remove();
+                        }
+                        incidenciaMarkers.clear();
+
+                        int limit = Math.min(incidencias.size(), MAX_VIEWPORT_MARKERS);
+                        for (int i = 0; i < limit; i++) {
+                            Incidencia inc = incidencias.get(i);
+                            Marker marker = mMap.addMarker(new MarkerOptions()
+                                    .position(new LatLng(inc.getLatitud(), inc.getLongitud()))
+                                    .title(inc.getTitulo())
+                                    .snippet(inc.getEstado())
+                                    .icon(BitmapDescriptorFactory
+                                            .defaultMarker(BitmapDescriptorFactory.HUE_ORANGE)));
+                            if (marker != null) {
+                                incidenciaMarkers.add(marker);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onSuccess(String result) {
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                    }
+                });
+    }
+
     /**
      * Realiza una búsqueda de dirección usando Geocoder.
      * Traduce texto (ej: "Calle Gran Vía 1") a coordenadas.
@@ -237,4 +304,12 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
             Toast.makeText(this, getString(R.string.map_msg_error), Toast.LENGTH_SHORT).show();
         }
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (incidenciaDAO != null) {
+            incidenciaDAO.close();
+        }
+    }
 }
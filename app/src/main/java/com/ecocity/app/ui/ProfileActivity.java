@@ -21,6 +21,8 @@ import java.util.HashMap;
  * <li>Visualización de Nombre y Email del usuario actual.</li>
  * <li>Estadísticas de incidencias (Total, Resueltas, En Proceso,
  * Pendientes).</li>
+ * <li>Interruptor de actualizaciones en tiempo real del listado (se aplica al
+ * volver a la pantalla principal).</li>
  * <li>Botón de Cerrar Sesión (Logout).</li>
  * </ul>
  */
@@ -36,6 +38,10 @@ public class ProfileActivity extends AppCompatActivity {
     // DAO para consultar estadísticas
     private com.ecocity.app.database.IncidenciaDAO incidenciaDAO;
 
+    // Recarga de estadísticas ligada a las invalidaciones de los contadores
+    private final com.ecocity.app.database.ObservedQuery statsQuery = new com.ecocity.app.database.ObservedQuery(
+            this::loadStats, com.ecocity.app.database.DbHelper.TABLE_COUNTERS);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -52,6 +58,7 @@ public class ProfileActivity extends AppCompatActivity {
 
         // Inicializar DAO
         incidenciaDAO = new com.ecocity.app.database.IncidenciaDAO(this);
+        incidenciaDAO.open();
 
         // Inicializar Sesión
         session = new SessionManager(getApplicationContext());
@@ -78,6 +85,11 @@ public class ProfileActivity extends AppCompatActivity {
         tvUserName.setText(name);
         tvUserEmail.setText(email);
 
+        // Modo en tiempo real: MainActivity lo consulta en cada onStart
+        com.google.android.material.switchmaterial.SwitchMaterial switchLive = findViewById(R.id.switchLiveUpdates);
+        switchLive.setChecked(session.isLiveUpdatesEnabled());
+        switchLive.setOnCheckedChangeListener((button, checked) -> session.setLiveUpdatesEnabled(checked));
+
         // Configurar Logout
         btnLogout.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -89,59 +101,39 @@ public class ProfileActivity extends AppCompatActivity {
     }
 
     /**
-     * onResume: Recarga las estadísticas cada vez que la pantalla se muestra.
-     * Esto asegura que si el usuario añade una incidencia y vuelve, el contador se
-     * actualiza.
+     * onStart: Activa la consulta observada de estadísticas. Solo se recalculan
+     * si los contadores cambiaron desde la última vez (p. ej. el usuario añadió
+     * una incidencia y vuelve); si no, se muestran las ya cargadas.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        statsQuery.start();
+    }
+
+    /**
+     * onStop: Pausa la consulta observada mientras la pantalla no es visible.
      */
     @Override
-    protected void onResume() {
-        super.onResume();
-        loadStats();
+    protected void onStop() {
+        super.onStop();
+        statsQuery.stop();
     }
 
     /**
      * Consulta la base de datos para obtener el recuento de incidencias por estado
      * y actualiza la interfaz de usuario.
+     * Todos los contadores llegan de una única consulta agrupada ejecutada en
+     * segundo plano.
      */
     private void loadStats() {
         String email = session.getUserDetails().get(SessionManager.KEY_EMAIL);
 
-        // Consultas COUNT asíncronas encadenadas (o paralelas, aquí encadenadas por
-        // simplicidad)
-
-        // 1. Total
-        incidenciaDAO.getIncidenciasCount(email, null, new com.ecocity.app.database.IncidenciaDAO.CountCallback() {
-            @Override
-            public void onCountLoaded(int total) {
-                tvCountTotal.setText(String.valueOf(total));
-
-                // 2. Resueltas
-                incidenciaDAO.getIncidenciasCount(email, "Resuelta",
-                        new com.ecocity.app.database.IncidenciaDAO.CountCallback() {
-                            @Override
-                            public void onCountLoaded(int resolved) {
-                                tvCountResolved.setText(String.valueOf(resolved));
-
-                                // 3. En Proceso
-                                incidenciaDAO.getIncidenciasCount(email, "En proceso",
-                                        new com.ecocity.app.database.IncidenciaDAO.CountCallback() {
-                                            @Override
-                                            public void onCountLoaded(int process) {
-                                                tvCountProcess.setText(String.valueOf(process));
-
-                                                // 4. Pendientes
-                                                incidenciaDAO.getIncidenciasCount(email, "Pendiente",
-                                                        new com.ecocity.app.database.IncidenciaDAO.CountCallback() {
-                                                            @Override
-                                                            public void onCountLoaded(int pending) {
-                                                                tvCountPending.setText(String.valueOf(pending));
-                                                            }
-                                                        });
-                                            }
-                                        });
-                            }
-                        });
-            }
+        incidenciaDAO.getIncidenciasStats(email, stats -> {
+            tvCountTotal.setText(String.valueOf(stats.getTotal()));
+            tvCountResolved.setText(String.valueOf(stats.getResueltas()));
+            tvCountProcess.setText(String.valueOf(stats.getEnProceso()));
+            tvCountPending.setText(String.valueOf(stats.getPendientes()));
         });
     }
 
@@ -151,6 +143,7 @@ public class ProfileActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        statsQuery.release();
         incidenciaDAO.close();
     }
 }
@@ -0,0 +1,348 @@
+package com.ecocity.app.utils;
+
+import java.util.Arrays;
+
+/**
+ * Índice espacial en memoria basado en geohash, construido sobre arrays
+ * primitivos.
+ * <p>
+ * Cada punto se guarda con su celda geohash ({@link #BITS_PER_AXIS} bits por
+ * eje entrelazados en un long) y los arrays se mantienen ordenados por celda.
+ * Como todas las celdas de un mismo prefijo son contiguas, una consulta por
+ * radio se resuelve con unas pocas búsquedas binarias sobre los prefijos que
+ * cubren el círculo, sin recorrer el conjunto completo.
+ * </p>
+ * <p>
+ * {@link #update} es incremental: conserva las entradas cuyo id y coordenadas
+ * no cambian, descarta las que desaparecen y mezcla (merge) solo las nuevas.
+ * Los puntos en (0,0) se consideran sin ubicación y no se indexan.
+ * </p>
+ * <p>
+ * Las consultas reutilizan buffers internos, así que el índice no debe usarse
+ * desde varios hilos a la vez (el adaptador lo usa solo en el hilo principal).
+ * </p>
+ */
+public class GeoHashIndex {
+
+    // Bits de precisión por eje (~19 m de latitud por celda en el nivel máximo)
+    public static final int BITS_PER_AXIS = 20;
+
+    // Máximo de celdas a explorar por consulta; si el área necesita más, se usan
+    // prefijos más cortos (celdas mayores)
+    private static final int MAX_CELLS_PER_QUERY = 64;
+
+    private long[] cells = new long[0];
+    private long[] ids = new long[0];
+    private double[] lats = new double[0];
+    private double[] lngs = new double[0];
+    private int size;
+
+    // Buffers de candidatos reutilizados entre consultas; crecen según los
+    // candidatos encontrados, no según el tamaño del índice
+    private int[] hitsScratch = new int[16];
+    private double[] distScratch = new double[16];
+
+    /**
+     * Número de puntos indexados.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sincroniza el índice con un nuevo conjunto de puntos.
+     *
+     * @param newIds  Identificadores únicos (local_id).
+     * @param newLats Latitudes.
+     * @param newLngs Longitudes.
+     * @param n       Número de puntos válidos.
+     * @return Número de entradas añadidas o reubicadas (0 si nada cambió).
+     */
+    public int update(long[] newIds, double[] newLats, double[] newLngs, int n) {
+        // Orden auxiliar de los nuevos ids para buscarlos por búsqueda binaria
+        long[] sortedIds = new long[n];
+        int[] sortedPos = sortByKey(newIds, n, sortedIds);
+        boolean[] kept = new boolean[n];
+
+        // 1. Compactar en sitio las entradas que siguen igual (mantiene el orden)
+        int write = 0;
+        for (int i = 0; i < size; i++) {
+            int found = Arrays.binarySearch(sortedIds, 0, n, ids[i]);
+            if (found >= 0) {
+                int p = sortedPos[found];
+                if (!kept[p] && newLats[p] == lats[i] && newLngs[p] == lngs[i]) {
+                    kept[p] = true;
+                    cells[write] = cells[i];
+                    ids[write] = ids[i];
+                    lats[write] = lats[i];
+                    lngs[write] = lngs[i];
+                    write++;
+                }
+            }
+        }
+        size = write;
+
+        // 2. Recoger las entradas nuevas o movidas con ubicación
+        int added = 0;
+        long[] addCells = new long[n];
+        int[] addPos = new int[n];
+        for (int p = 0; p < n; p++) {
+            if (!kept[p] && GeoUtils.hasLocation(newLats[p], newLngs[p])) {
+                addCells[added] = encode(newLats[p], newLngs[p]);
+                addPos[added] = p;
+                added++;
+            }
+        }
+        if (added == 0)
+            return 0;
+
+        // 3. Ordenar solo las nuevas y mezclarlas con las existentes
+        long[] sortedAddCells = new long[added];
+        int[] addOrder = sortByKey(addCells, added, sortedAddCells);
+
+        int total = size + added;
+        long[] mCells = new long[total];
+        long[] mIds = new long[total];
+        double[] mLats = new double[total];
+        double[] mLngs = new double[total];
+        int i = 0, j = 0, k = 0;
+        while (i < size || j < added) {
+            if (j >= added || (i < size && cells[i] <= sortedAddCells[j])) {
+                mCells[k] = cells[i];
+                mIds[k] = ids[i];
+                mLats[k] = lats[i];
+                mLngs[k] = lngs[i];
+                i++;
+            } else {
+                int p = addPos[addOrder[j]];
+                mCells[k] = sortedAddCells[j];
+                mIds[k] = newIds[p];
+                mLats[k] = newLats[p];
+                mLngs[k] = newLngs[p];
+                j++;
+            }
+            k++;
+        }
+        cells = mCells;
+        ids = mIds;
+        lats = mLats;
+        lngs = mLngs;
+        size = total;
+        return added;
+    }
+
+    /**
+     * Ids de los puntos a menos de radiusMeters del centro, del más cercano al
+     * más lejano.
+     */
+    public long[] withinRadius(double lat, double lng, double radiusMeters) {
+        int count = collectWithinRadius(lat, lng, radiusMeters);
+        return idsSortedByDistance(count, count);
+    }
+
+    /**
+     * Ids de los k puntos más cercanos al centro, del más cercano al más lejano.
+     * Amplía el radio de búsqueda hasta reunir k candidatos dentro de él, lo que
+     * garantiza que ningún punto exterior pueda estar más cerca.
+     */
+    public long[] nearest(double lat, double lng, int k) {
+        k = Math.min(k, size);
+        if (k <= 0)
+            return new long[0];
+
+        double radius = 500.0;
+        int count;
+        while (true) {
+            count = collectWithinRadius(lat, lng, radius);
+            if (count >= k || radius > Math.PI * GeoUtils.EARTH_RADIUS_METERS)
+                break;
+            radius *= 4;
+        }
+        return idsSortedByDistance(count, Math.min(k, count));
+    }
+
+    // --- Internos ---
+
+    /**
+     * Deja en hitsScratch/distScratch las entradas a menos de radiusMeters y
+     * devuelve cuántas son.
+     */
+    private int collectWithinRadius(double lat, double lng, double radiusMeters) {
+        if (size == 0)
+            return 0;
+
+        double dLat = GeoUtils.metersToLatDegrees(radiusMeters);
+        double south = Math.max(-90.0, lat - dLat);
+        double north = Math.min(90.0, lat + dLat);
+        // Los grados de longitud se miden en el borde de la caja más cercano al
+        // polo, donde un metro abarca más longitud
+        double dLng = GeoUtils.metersToLngDegrees(radiusMeters, Math.max(Math.abs(south), Math.abs(north)));
+        int minLatCell = latCell(south);
+        int maxLatCell = latCell(north);
+
+        // Tramos de longitud: si la caja cruza el antimeridiano (±180°), la parte
+        // que sobra por un lado se busca al otro extremo
+        int minLngCell, maxLngCell, wrapMinCell = -1, wrapMaxCell = -1;
+        if (dLng >= 180.0) {
+            minLngCell = lngCell(-180.0);
+            maxLngCell = lngCell(180.0);
+        } else {
+            minLngCell = lngCell(Math.max(-180.0, lng - dLng));
+            maxLngCell = lngCell(Math.min(180.0, lng + dLng));
+            if (lng - dLng < -180.0) {
+                wrapMinCell = lngCell(lng - dLng + 360.0);
+                wrapMaxCell = lngCell(180.0);
+            } else if (lng + dLng > 180.0) {
+                wrapMinCell = lngCell(-180.0);
+                wrapMaxCell = lngCell(lng + dLng - 360.0);
+            }
+        }
+
+        // Subir de nivel (prefijos más cortos) hasta que la caja quepa en pocas celdas
+        int shift = 0;
+        while (shift < BITS_PER_AXIS && (long) ((maxLatCell >>> shift) - (minLatCell >>> shift) + 1)
+                * (cellSpan(minLngCell, maxLngCell, shift) + cellSpan(wrapMinCell, wrapMaxCell, shift))
+                > MAX_CELLS_PER_QUERY) {
+            shift++;
+        }
+
+        int fromLng = minLngCell >>> shift;
+        int toLng = maxLngCell >>> shift;
+        int fromWrap = wrapMinCell < 0 ? 0 : wrapMinCell >>> shift;
+        int toWrap = wrapMinCell < 0 ? -1 : wrapMaxCell >>> shift;
+        if (fromWrap <= toLng && fromLng <= toWrap) {
+            // Con celdas grandes los dos tramos pueden solaparse: se unen para no
+            // contar dos veces las mismas entradas
+            fromLng = Math.min(fromLng, fromWrap);
+            toLng = Math.max(toLng, toWrap);
+            toWrap = -1;
+        }
+
+        int count = 0;
+        for (int la = minLatCell >>> shift; la <= maxLatCell >>> shift; la++) {
+            count = collectCells(lat, lng, radiusMeters, la, fromLng, toLng, shift, count);
+            count = collectCells(lat, lng, radiusMeters, la, fromWrap, toWrap, shift, count);
+        }
+        return count;
+    }
+
+    private static long cellSpan(int minCell, int maxCell, int shift) {
+        return minCell < 0 ? 0 : (maxCell >>> shift) - (minCell >>> shift) + 1;
+    }
+
+    private int collectCells(double lat, double lng, double radiusMeters, int latPrefix, int fromLng, int toLng,
+            int shift, int count) {
+        for (int lo = fromLng; lo <= toLng; lo++) {
+            long from = interleave(latPrefix, lo) << (2 * shift);
+            long to = from + (1L << (2 * shift));
+            for (int e = lowerBound(from); e < size && cells[e] < to; e++) {
+                double d = GeoUtils.distanceMeters(lat, lng, lats[e], lngs[e]);
+                if (d <= radiusMeters) {
+                    if (count == hitsScratch.length) {
+                        hitsScratch = Arrays.copyOf(hitsScratch, count * 2);
+                        distScratch = Arrays.copyOf(distScratch, count * 2);
+                    }
+                    hitsScratch[count] = e;
+                    distScratch[count] = d;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private long[] idsSortedByDistance(int count, int limit) {
+        // Para distancias no negativas, el orden de sus bits IEEE-754 coincide con
+        // el orden numérico: se reutiliza la ordenación primitiva de claves long
+        long[] keys = new long[count];
+        for (int a = 0; a < count; a++) {
+            keys[a] = Double.doubleToRawLongBits(distScratch[a]);
+        }
+        int[] order = sortByKey(keys, count, new long[count]);
+        long[] result = new long[limit];
+        for (int a = 0; a < limit; a++) {
+            result[a] = ids[hitsScratch[order[a]]];
+        }
+        return result;
+    }
+
+    private int lowerBound(long cell) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cells[mid] < cell) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long encode(double lat, double lng) {
+        return interleave(latCell(lat), lngCell(lng));
+    }
+
+    private static int latCell(double lat) {
+        return clampCell((lat + 90.0) / 180.0);
+    }
+
+    private static int lngCell(double lng) {
+        return clampCell((lng + 180.0) / 360.0);
+    }
+
+    private static int clampCell(double fraction) {
+        int max = (1 << BITS_PER_AXIS) - 1;
+        int cell = (int) (fraction * (1 << BITS_PER_AXIS));
+        return Math.max(0, Math.min(max, cell));
+    }
+
+    // Entrelaza los bits de latitud (posiciones impares) y longitud (pares)
+    private static long interleave(int latBits, int lngBits) {
+        return (spread(latBits) << 1) | spread(lngBits);
+    }
+
+    private static long spread(int v) {
+        long x = v & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    /**
+     * Copia las n primeras claves ordenadas en sortedOut y devuelve la posición
+     * original de cada una.
+     */
+    private static int[] sortByKey(long[] keys, int n, long[] sortedOut) {
+        // Ordenación estable de índices por clave (merge sort primitivo)
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n - width; lo += width << 1) {
+                int mid = lo + width;
+                int hi = Math.min(lo + (width << 1), n);
+                int a = lo, b = mid, c = lo;
+                while (a < mid && b < hi) {
+                    buffer[c++] = keys[order[a]] <= keys[order[b]] ? order[a++] : order[b++];
+                }
+                while (a < mid) {
+                    buffer[c++] = order[a++];
+                }
+                while (b < hi) {
+                    buffer[c++] = order[b++];
+                }
+                System.arraycopy(buffer, lo, order, lo, hi - lo);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            sortedOut[i] = keys[order[i]];
+        }
+        return order;
+    }
+}
@@ -0,0 +1,55 @@
+package com.ecocity.app.utils;
+
+/**
+ * Utilidades geográficas sin reservas de memoria.
+ * Sustituyen a {@link android.location.Location#distanceBetween}, que exige un
+ * float[] por llamada, en los cálculos masivos de distancias.
+ */
+public final class GeoUtils {
+
+    // Radio medio de la Tierra en metros
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    // Metros que abarca un grado de latitud
+    public static final double METERS_PER_DEGREE_LAT = 111320.0;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * Distancia en metros entre dos coordenadas (fórmula del semiverseno).
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Grados de latitud equivalentes a una distancia en metros.
+     */
+    public static double metersToLatDegrees(double meters) {
+        return meters / METERS_PER_DEGREE_LAT;
+    }
+
+    /**
+     * Grados de longitud equivalentes a una distancia en metros a una latitud dada.
+     */
+    public static double metersToLngDegrees(double meters, double atLat) {
+        double cos = Math.cos(Math.toRadians(atLat));
+        if (cos < 1e-6)
+            return 180.0; // Cerca de los polos cualquier longitud es alcanzable
+        return Math.min(180.0, meters / (METERS_PER_DEGREE_LAT * cos));
+    }
+
+    /**
+     * Indica si la incidencia tiene una ubicación registrada (0,0 = sin ubicación).
+     */
+    public static boolean hasLocation(double lat, double lng) {
+        return lat != 0.0 || lng != 0.0;
+    }
+}
@@ -0,0 +1,368 @@
+package com.ecocity.app.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Carga de fotos de incidencias en ImageViews sin bloquear el hilo principal.
+ * <p>
+ * Las fotos de la cámara tienen varios megapíxeles y se muestran en cabeceras
+ * pequeñas: en lugar de decodificarlas enteras con setImageURI, se leen primero
+ * sus dimensiones y se decodifican en segundo plano con el inSampleSize (potencia
+ * de dos) que las deja justo por encima del tamaño de la vista.
+ * </p>
+ * <p>
+ * Dos niveles de caché, por ruta y tamaño pedido:
+ * </p>
+ * <ul>
+ * <li>Memoria: {@link LruCache} de Bitmaps limitado a 1/8 de la memoria
+ * disponible para la app.</li>
+ * <li>Disco: miniaturas JPEG en el directorio de caché de la app (acotado a
+ * {@link #DISK_CACHE_BYTES}; se borran las más antiguas). Una miniatura se
+ * descarta si el archivo original es más reciente; para URIs content:// el
+ * nombre incluye el tamaño y la fecha de modificación que da el proveedor (o,
+ * si no los da, la miniatura caduca a las {@link #CONTENT_THUMBNAIL_TTL_MS}).
+ * Se escriben en un temporal y se renombran, así que nunca se lee una a
+ * medias.</li>
+ * </ul>
+ * <p>
+ * Cada ImageView tiene como mucho una carga en curso: una carga nueva sobre la
+ * misma vista (o {@link #cancel(ImageView)}, p. ej. al destruir la pantalla o
+ * reciclar la vista) cancela la anterior, y un resultado obsoleto nunca se
+ * pinta.
+ * </p>
+ */
+public class ImageLoader {
+
+    private static final String TAG = "ImageLoader";
+
+    // Tamaño máximo de la caché de miniaturas en disco
+    static final long DISK_CACHE_BYTES = 20L * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "thumbnails";
+    private static final int THUMBNAIL_QUALITY = 85;
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Validez de una miniatura de URI content:// sin tamaño ni fecha conocidos
+    static final long CONTENT_THUMBNAIL_TTL_MS = 24L * 60 * 60 * 1000;
+
+    private static ImageLoader instance;
+
+    private final Context context;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDir;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Carga en curso de cada vista (solo se usa en el hilo principal)
+    private final Map<ImageView, Request> pending = new WeakHashMap<>();
+
+    private ImageLoader(Context context) {
+        this.context = context.getApplicationContext(); // Evitar memory leaks
+
+        // 1/8 de la memoria máxima de la app, en KB
+        int cacheKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        memoryCache = new LruCache<String, Bitmap>(cacheKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+        diskCacheDir = new File(this.context.getCacheDir(), DISK_CACHE_DIR);
+    }
+
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageLoader(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Carga la foto en la vista al tamaño de la vista. Si no se puede leer, la
+     * vista conserva su imagen actual (el placeholder del layout).
+     *
+     * @param path   Ruta de archivo o URI content:// (como se guarda en
+     *               fotoPath).
+     * @param target Vista destino.
+     */
+    public void load(String path, ImageView target) {
+        load(path, target, null);
+    }
+
+    /**
+     * Igual que {@link #load(String, ImageView)}, ejecutando onLoaded en el hilo
+     * principal después de pintar la imagen (no se ejecuta si falla o se cancela).
+     */
+    public void load(String path, ImageView target, Runnable onLoaded) {
+        load(path, null, target, onLoaded);
+    }
+
+    /**
+     * Carga path o, si es un archivo que todavía no existe (p. ej. una vista
+     * previa de {@link PhotoVariants} aún en generación), fallbackPath.
+     */
+    public void load(String path, String fallbackPath, ImageView target, Runnable onLoaded) {
+        cancel(target);
+        if (path == null || path.isEmpty()) {
+            path = fallbackPath;
+            fallbackPath = null;
+        }
+        if (path == null || path.isEmpty())
+            return;
+
+        final int[] size = requestedSize(target);
+        final String primaryPath = path;
+        final String secondaryPath = fallbackPath;
+        Bitmap cached = memoryCache.get(cacheKey(path, size));
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            if (onLoaded != null)
+                onLoaded.run();
+            return;
+        }
+
+        final Request request = new Request();
+        pending.put(target, request);
+        request.future = executor.submit(() -> {
+            if (request.cancelled)
+                return;
+            String source = primaryPath;
+            if (secondaryPath != null && !primaryPath.startsWith("content://") && !new File(primaryPath).exists())
+                source = secondaryPath;
+            String key = cacheKey(source, size);
+            Bitmap bitmap = loadBitmap(source, key, size[0], size[1], request);
+            if (bitmap == null)
+                return;
+            memoryCache.put(key, bitmap);
+            mainHandler.post(() -> {
+                // Solo se pinta si sigue siendo la última carga pedida para la vista
+                if (request.cancelled || pending.get(target) != request)
+                    return;
+                pending.remove(target);
+                target.setImageBitmap(bitmap);
+                if (onLoaded != null)
+                    onLoaded.run();
+            });
+        });
+    }
+
+    private static String cacheKey(String path, int[] size) {
+        return path + "@" + size[0] + "x" + size[1];
+    }
+
+    /**
+     * Cancela la carga en curso de una vista, si la hay.
+     */
+    public void cancel(ImageView target) {
+        Request previous = pending.remove(target);
+        if (previous != null) {
+            previous.cancelled = true;
+            if (previous.future != null)
+                previous.future.cancel(false);
+        }
+    }
+
+    /**
+     * Tamaño objetivo: el de la vista si ya está medida; si no, el de sus
+     * LayoutParams o, en su defecto, el ancho de la pantalla.
+     */
+    private int[] requestedSize(ImageView view) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        int width = view.getWidth();
+        if (width <= 0)
+            width = params != null && params.width > 0 ? params.width : metrics.widthPixels;
+        int height = view.getHeight();
+        if (height <= 0)
+            height = params != null && params.height > 0 ? params.height : metrics.widthPixels;
+        return new int[] { width, height };
+    }
+
+    // --- Segundo plano ---
+
+    private Bitmap loadBitmap(String path, String key, int reqWidth, int reqHeight, Request request) {
+        File source = path.startsWith("content://") ? null : new File(path);
+        String signature = source == null ? contentSignature(Uri.parse(path)) : "";
+        File thumbnail = new File(diskCacheDir, diskName(key + signature));
+
+        // 1. Miniatura en disco, si no es más antigua que el original
+        if (thumbnail.exists() && isFresh(thumbnail, source, signature)) {
+            Bitmap bitmap = BitmapFactory.decodeFile(thumbnail.getAbsolutePath());
+            if (bitmap != null)
+                return bitmap;
+        }
+        if (request.cancelled)
+            return null;
+
+        // 2. Decodificar el original reducido y guardar la miniatura
+        Uri uri = source == null ? Uri.parse(path) : Uri.fromFile(source);
+        Bitmap bitmap = decodeSampled(uri, reqWidth, reqHeight);
+        if (bitmap != null && !request.cancelled) {
+            writeThumbnail(thumbnail, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static boolean isFresh(File thumbnail, File source, String signature) {
+        if (source != null)
+            return source.lastModified() <= thumbnail.lastModified();
+        return !signature.isEmpty()
+                || System.currentTimeMillis() - thumbnail.lastModified() < CONTENT_THUMBNAIL_TTL_MS;
+    }
+
+    /**
+     * Tamaño y fecha de modificación de una URI content:// según su proveedor
+     * ("" si no da ninguno de los dos), para que una foto cambiada tenga otra
+     * miniatura.
+     */
+    private String contentSignature(Uri uri) {
+        try (Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst())
+                return "";
+            int idxSize = cursor.getColumnIndex(OpenableColumns.SIZE);
+            int idxModified = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+            long size = idxSize >= 0 && !cursor.isNull(idxSize) ? cursor.getLong(idxSize) : -1;
+            long modified = idxModified >= 0 && !cursor.isNull(idxModified) ? cursor.getLong(idxModified) : -1;
+            return size < 0 && modified < 0 ? "" : "#" + size + ":" + modified;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error consultando " + uri + ": " + e.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * Decodifica la imagen con el mayor inSampleSize que la deja al menos del
+     * tamaño pedido (null si no se puede leer).
+     */
+    private Bitmap decodeSampled(Uri uri, int reqWidth, int reqHeight) {
+        try {
+            // Primera pasada: solo dimensiones, sin reservar píxeles
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                BitmapFactory.decodeStream(in, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0)
+                return null;
+
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+            options.inJustDecodeBounds = false;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                return BitmapFactory.decodeStream(in, null, options);
+            }
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Error leyendo imagen " + uri + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Escribe la miniatura en un temporal del mismo directorio y la renombra, para
+     * que otra carga no decodifique un archivo a medio escribir.
+     */
+    private void writeThumbnail(File file, Bitmap bitmap) {
+        if (!diskCacheDir.exists() && !diskCacheDir.mkdirs())
+            return;
+        File temp = null;
+        try {
+            temp = File.createTempFile(file.getName(), TEMP_SUFFIX, diskCacheDir);
+            try (OutputStream out = new FileOutputStream(temp)) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error guardando miniatura: " + e.getMessage());
+            if (temp != null)
+                temp.delete();
+            return;
+        }
+        trimDiskCache();
+    }
+
+    /**
+     * Borra las miniaturas más antiguas hasta quedar por debajo del límite.
+     */
+    private synchronized void trimDiskCache() {
+        File[] files = diskCacheDir.listFiles();
+        if (files == null)
+            return;
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        long now = System.currentTimeMillis();
+        if (total <= DISK_CACHE_BYTES)
+            return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (total <= DISK_CACHE_BYTES)
+                break;
+            // Temporales recientes: otra carga los está escribiendo
+            if (f.getName().endsWith(TEMP_SUFFIX) && now - f.lastModified() < CONTENT_THUMBNAIL_TTL_MS)
+                continue;
+            long length = f.length();
+            if (f.delete())
+                total -= length;
+        }
+    }
+
+    /**
+     * Nombre de archivo estable para una clave (SHA-1 en hexadecimal).
+     */
+    private static String diskName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2 + 4);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.append(".jpg").toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode()) + ".jpg";
+        }
+    }
+
+    /**
+     * Carga pedida para una vista.
+     */
+    private static final class Request {
+        volatile boolean cancelled;
+        volatile Future<?> future;
+    }
+}
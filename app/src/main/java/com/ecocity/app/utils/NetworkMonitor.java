@@ -9,24 +9,21 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import com.ecocity.app.database.IncidenciaDAO;
-
 /**
  * Utilidad para monitorizar el estado de la conexión a Internet.
- * Dispara la sincronización SQLite -> Firestore cuando se detecta conexión.
+ * Solicita la sincronización SQLite <-> Firestore a {@link SyncScheduler} cuando
+ * se detecta conexión.
  */
 public class NetworkMonitor {
 
     private static final String TAG = "NetworkMonitor";
     private Context context;
-    private IncidenciaDAO incidenciaDAO;
     private ConnectivityManager connectivityManager;
     private ConnectivityManager.NetworkCallback networkCallback;
     private boolean isRegistered = false;
 
     public NetworkMonitor(Context context) {
         this.context = context.getApplicationContext(); // Evitar memory leaks
-        this.incidenciaDAO = new IncidenciaDAO(this.context);
         this.connectivityManager = (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
     }
 
@@ -47,20 +44,11 @@ public class NetworkMonitor {
             @Override
             public void onAvailable(@NonNull Network network) {
                 super.onAvailable(network);
-                Log.d(TAG, "Conexión a Internet detectada. Iniciando sincronización en segundo plano...");
-
-                // Ejecutamos la sincronización en un nuevo hilo para no bloquear el proceso de
-                // red del sistema
-                new Thread(() -> {
-                    try {
-                        incidenciaDAO.open();
-                        incidenciaDAO.syncWithFirestore();
-                        // No cerramos inmediatamente porque la sinc es asíncrona (usa callbacks de
-                        // Firebase)
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error durante la sincronización automática: " + e.getMessage());
-                    }
-                }).start();
+                Log.d(TAG, "Conexión a Internet detectada. Solicitando sincronización...");
+
+                // El planificador agrupa los avisos repetidos de redes inestables y
+                // garantiza una sola sincronización en curso
+                SyncScheduler.getInstance(context).requestSync();
             }
 
             @Override
@@ -0,0 +1,222 @@
+package com.ecocity.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Environment;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Versiones reducidas de la foto de una incidencia, generadas una sola vez tras
+ * la captura para no volver a decodificar el original de varios megapíxeles en
+ * cada visualización:
+ * <ul>
+ * <li>Miniatura: lado mayor de {@link #THUMBNAIL_MAX_SIDE} px (listas).</li>
+ * <li>Vista previa: lado mayor de {@link #PREVIEW_MAX_SIDE} px (cabecera del
+ * detalle y formulario).</li>
+ * </ul>
+ * <p>
+ * Las rutas se derivan de la de la foto ("JPEG_..._thumb.jpg" junto al
+ * original; las fotos de galería van al directorio de imágenes de la app), así
+ * que se pueden guardar en la incidencia aunque la generación aún no haya
+ * terminado. Quien las muestre debe usar {@link #usable} y recurrir al original
+ * mientras no existan.
+ * </p>
+ * <p>
+ * Se escriben en un temporal del mismo directorio y se renombran, así que nunca
+ * se muestra una a medio escribir. Al cambiar o borrar la foto de una incidencia
+ * se llama a {@link #delete} para no dejar versiones huérfanas.
+ * </p>
+ */
+public final class PhotoVariants {
+
+    private static final String TAG = "PhotoVariants";
+
+    public static final int THUMBNAIL_MAX_SIDE = 256;
+    public static final int PREVIEW_MAX_SIDE = 1080;
+    private static final int JPEG_QUALITY = 85;
+
+    private static final String THUMBNAIL_SUFFIX = "_thumb.jpg";
+    private static final String PREVIEW_SUFFIX = "_preview.jpg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Un solo hilo: las fotos se procesan de una en una para acotar la memoria
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private PhotoVariants() {
+    }
+
+    /**
+     * Ruta de la miniatura de una foto (exista o no), o null si no hay foto.
+     */
+    public static String thumbnailPath(Context context, String fotoPath) {
+        return variantPath(context, fotoPath, THUMBNAIL_SUFFIX);
+    }
+
+    /**
+     * Ruta de la vista previa de una foto (exista o no), o null si no hay foto.
+     */
+    public static String previewPath(Context context, String fotoPath) {
+        return variantPath(context, fotoPath, PREVIEW_SUFFIX);
+    }
+
+    /**
+     * Devuelve la versión guardada si corresponde a la foto actual (una edición
+     * en otro dispositivo puede haber cambiado la foto), o null para usar el
+     * original.
+     */
+    public static String usable(Context context, String variantPath, String fotoPath) {
+        if (variantPath == null || variantPath.isEmpty() || fotoPath == null || fotoPath.isEmpty())
+            return null;
+        return variantPath.equals(thumbnailPath(context, fotoPath))
+                || variantPath.equals(previewPath(context, fotoPath)) ? variantPath : null;
+    }
+
+    private static String variantPath(Context context, String fotoPath, String suffix) {
+        if (fotoPath == null || fotoPath.isEmpty())
+            return null;
+        if (fotoPath.startsWith("content://")) {
+            File dir = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            if (dir == null)
+                dir = context.getFilesDir();
+            return new File(dir, "GAL_" + Integer.toHexString(fotoPath.hashCode()) + suffix).getAbsolutePath();
+        }
+        File source = new File(fotoPath);
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0)
+            name = name.substring(0, dot);
+        return new File(source.getParentFile(), name + suffix).getAbsolutePath();
+    }
+
+    /**
+     * Genera en segundo plano la miniatura y la vista previa de una foto. Si ya
+     * existen y no son más antiguas que el original, no hace nada.
+     *
+     * @param context  Contexto (se usa el de la aplicación).
+     * @param fotoPath Ruta de archivo o URI content:// de la foto.
+     */
+    public static void generate(Context context, String fotoPath) {
+        if (fotoPath == null || fotoPath.isEmpty())
+            return;
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            File thumbnail = new File(thumbnailPath(appContext, fotoPath));
+            File preview = new File(previewPath(appContext, fotoPath));
+            File source = fotoPath.startsWith("content://") ? null : new File(fotoPath);
+            if (isFresh(thumbnail, source) && isFresh(preview, source))
+                return;
+
+            Uri uri = source == null ? Uri.parse(fotoPath) : Uri.fromFile(source);
+            Bitmap previewBitmap = decodeScaled(appContext, uri, PREVIEW_MAX_SIDE);
+            if (previewBitmap == null)
+                return;
+            // La miniatura se obtiene de la vista previa, sin volver a leer el original
+            Bitmap thumbnailBitmap = scaleToFit(previewBitmap, THUMBNAIL_MAX_SIDE);
+            write(preview, previewBitmap);
+            write(thumbnail, thumbnailBitmap);
+            if (thumbnailBitmap != previewBitmap)
+                thumbnailBitmap.recycle();
+            previewBitmap.recycle();
+        });
+    }
+
+    /**
+     * Borra en segundo plano la miniatura y la vista previa de una foto (no el
+     * original). Se encola tras las generaciones pendientes, así que no puede
+     * quedar una versión escrita después de borrarla. Si otra incidencia usaba la
+     * misma foto de galería, mostrará el original hasta que se regeneren.
+     */
+    public static void delete(Context context, String fotoPath) {
+        if (fotoPath == null || fotoPath.isEmpty())
+            return;
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            deleteFile(new File(thumbnailPath(appContext, fotoPath)));
+            deleteFile(new File(previewPath(appContext, fotoPath)));
+        });
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete())
+            Log.e(TAG, "No se pudo borrar " + file.getName());
+    }
+
+    private static boolean isFresh(File variant, File source) {
+        return variant.exists() && (source == null || source.lastModified() <= variant.lastModified());
+    }
+
+    /**
+     * Decodifica con inSampleSize y escala para que el lado mayor no pase de
+     * maxSide (null si no se puede leer).
+     */
+    private static Bitmap decodeScaled(Context context, Uri uri, int maxSide) {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                BitmapFactory.decodeStream(in, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0)
+                return null;
+
+            options.inSampleSize = ImageLoader.calculateInSampleSize(options.outWidth, options.outHeight,
+                    maxSide, maxSide);
+            options.inJustDecodeBounds = false;
+            Bitmap decoded;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                decoded = BitmapFactory.decodeStream(in, null, options);
+            }
+            if (decoded == null)
+                return null;
+            Bitmap scaled = scaleToFit(decoded, maxSide);
+            if (scaled != decoded)
+                decoded.recycle();
+            return scaled;
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Error leyendo foto " + uri + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Bitmap scaleToFit(Bitmap bitmap, int maxSide) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int longest = Math.max(width, height);
+        if (longest <= maxSide)
+            return bitmap;
+        float scale = (float) maxSide / longest;
+        return Bitmap.createScaledBitmap(bitmap, Math.round(width * scale), Math.round(height * scale), true);
+    }
+
+    /**
+     * Escribe en un temporal del mismo directorio y lo renombra (el renombrado
+     * dentro de un mismo sistema de archivos es atómico).
+     */
+    private static void write(File file, Bitmap bitmap) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs())
+            return;
+        File temp = new File(dir, file.getName() + TEMP_SUFFIX);
+        try (OutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Error guardando " + file.getName() + ": " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Error guardando " + file.getName() + ": no se pudo renombrar");
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.ecocity.app.utils;
+
+/**
+ * Motor de proximidad (k vecinos más cercanos) sobre un conjunto de puntos.
+ * <p>
+ * Calcula la distancia de cada punto al usuario una sola vez por ubicación
+ * (en un double[] reutilizable) y ordena índices primitivos en lugar de
+ * comparar objetos calculando distancias en cada comparación. El orden se
+ * construye de forma incremental: pedir los K más cercanos solo ordena el
+ * prefijo necesario, y peticiones posteriores con K mayor continúan donde se
+ * quedó la anterior.
+ * </p>
+ * <p>
+ * Si el usuario no se ha desplazado más de {@link #getReuseThresholdMeters()}
+ * desde la última ubicación usada, se reutilizan distancias y orden.
+ * </p>
+ */
+public class ProximityEngine {
+
+    // Desplazamiento por debajo del cual se reutilizan los resultados
+    public static final double DEFAULT_REUSE_THRESHOLD_METERS = 50.0;
+
+    private final double reuseThresholdMeters;
+
+    // Puntos (sin copiar: el llamante no debe modificarlos mientras se usen)
+    private double[] lats;
+    private double[] lngs;
+    private int size;
+
+    // Origen de las distancias calculadas
+    private boolean hasOrigin;
+    private double originLat;
+    private double originLng;
+
+    // Distancia de cada punto al origen e índices ordenados por distancia
+    private double[] distances = new double[0];
+    private int[] order = new int[0];
+    // Puntos con ubicación (ocupan el principio de 'order'; el resto va detrás en
+    // su orden original)
+    private int locatedCount;
+    // Longitud del prefijo de 'order' que ya está ordenado
+    private int sortedCount;
+
+    public ProximityEngine() {
+        this(DEFAULT_REUSE_THRESHOLD_METERS);
+    }
+
+    public ProximityEngine(double reuseThresholdMeters) {
+        this.reuseThresholdMeters = reuseThresholdMeters;
+    }
+
+    public double getReuseThresholdMeters() {
+        return reuseThresholdMeters;
+    }
+
+    /**
+     * Sustituye el conjunto de puntos. Invalida distancias y orden previos.
+     * Los puntos en (0,0) se consideran sin ubicación y quedan al final.
+     *
+     * @param lats Latitudes.
+     * @param lngs Longitudes.
+     * @param size Número de puntos válidos en los arrays.
+     */
+    public void setPoints(double[] lats, double[] lngs, int size) {
+        this.lats = lats;
+        this.lngs = lngs;
+        this.size = size;
+        if (distances.length < size) {
+            distances = new double[size];
+            order = new int[size];
+        }
+        hasOrigin = false;
+        sortedCount = 0;
+    }
+
+    /**
+     * Fija la ubicación del usuario.
+     *
+     * @return true si se recalcularon las distancias; false si el usuario no se
+     *         movió lo suficiente y se reutiliza el resultado anterior.
+     */
+    public boolean updateOrigin(double lat, double lng) {
+        if (hasOrigin && GeoUtils.distanceMeters(originLat, originLng, lat, lng) <= reuseThresholdMeters) {
+            return false;
+        }
+        originLat = lat;
+        originLng = lng;
+        hasOrigin = true;
+
+        locatedCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (GeoUtils.hasLocation(lats[i], lngs[i])) {
+                distances[i] = GeoUtils.distanceMeters(lat, lng, lats[i], lngs[i]);
+                order[locatedCount++] = i;
+            } else {
+                distances[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+        int tail = locatedCount;
+        for (int i = 0; i < size; i++) {
+            if (distances[i] == Double.POSITIVE_INFINITY) {
+                order[tail++] = i;
+            }
+        }
+        sortedCount = 0;
+        return true;
+    }
+
+    /**
+     * Devuelve los índices de los k puntos más cercanos, del más cercano al más
+     * lejano. Requiere haber llamado antes a {@link #updateOrigin}.
+     *
+     * @param k Número de vecinos deseado (se limita al tamaño del conjunto).
+     * @return Nuevo array con k índices ordenados por distancia.
+     */
+    public int[] nearest(int k) {
+        k = ensureSorted(k);
+        int[] result = new int[k];
+        System.arraycopy(order, 0, result, 0, k);
+        return result;
+    }
+
+    /**
+     * Permutación completa de los puntos en la que solo los k primeros están
+     * ordenados por distancia; el resto va detrás, sin ordenar (todos a igual o
+     * mayor distancia que el k-ésimo, y al final los que no tienen ubicación).
+     * Permite mostrar una lista entera ordenando solo lo visible y ampliar k al
+     * hacer scroll: cada ampliación continúa donde se quedó la anterior.
+     *
+     * @param k Número de puntos que deben quedar ordenados al principio.
+     * @return Nuevo array con los size índices.
+     */
+    public int[] orderWithNearestFirst(int k) {
+        ensureSorted(k);
+        int[] result = new int[size];
+        System.arraycopy(order, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * Deja ordenado el prefijo de los k más cercanos.
+     *
+     * @return k acotado al tamaño del conjunto.
+     */
+    private int ensureSorted(int k) {
+        if (!hasOrigin)
+            throw new IllegalStateException("updateOrigin() debe llamarse antes de nearest()");
+        k = Math.max(0, Math.min(k, size));
+        int located = Math.min(k, locatedCount);
+        if (located > sortedCount) {
+            // Colocar los menores (del tramo aún sin ordenar) al principio y ordenar
+            // solo ese tramo
+            if (located < locatedCount) {
+                select(sortedCount, locatedCount - 1, located - 1);
+            }
+            sort(sortedCount, located - 1);
+            sortedCount = located;
+        }
+        return k;
+    }
+
+    /**
+     * Distancia en metros del punto i al origen actual (infinito si no tiene
+     * ubicación).
+     */
+    public double distanceAt(int i) {
+        return distances[i];
+    }
+
+    // --- Selección y ordenación sobre índices primitivos ---
+
+    // Quickselect: deja en order[target] el elemento que le corresponde y los
+    // menores a su izquierda
+    private void select(int lo, int hi, int target) {
+        while (hi > lo) {
+            int p = partition(lo, hi);
+            if (p == target)
+                return;
+            if (p < target) {
+                lo = p + 1;
+            } else {
+                hi = p - 1;
+            }
+        }
+    }
+
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            int p = partition(lo, hi);
+            // Recursión sobre la mitad menor para acotar la pila
+            if (p - lo < hi - p) {
+                sort(lo, p - 1);
+                lo = p + 1;
+            } else {
+                sort(p + 1, hi);
+                hi = p - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int idx = order[i];
+            double d = distances[idx];
+            int j = i - 1;
+            while (j >= lo && distances[order[j]] > d) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = idx;
+        }
+    }
+
+    private int partition(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        swap(mid, hi);
+        double pivot = distances[order[hi]];
+        int store = lo;
+        for (int i = lo; i < hi; i++) {
+            if (distances[order[i]] < pivot) {
+                swap(i, store++);
+            }
+        }
+        swap(store, hi);
+        return store;
+    }
+
+    private void swap(int a, int b) {
+        int tmp = order[a];
+        order[a] = order[b];
+        order[b] = tmp;
+    }
+}
@@ -30,6 +30,7 @@ public class SessionManager {
     private static final String IS_LOGIN = "IsLoggedIn";
     public static final String KEY_NAME = "name";
     public static final String KEY_EMAIL = "email";
+    private static final String KEY_LIVE_UPDATES = "LiveUpdates";
 
     /**
      * Constructor.
@@ -114,4 +115,24 @@ public class SessionManager {
     public boolean isLoggedIn() {
         return pref.getBoolean(IS_LOGIN, false);
     }
+
+    /**
+     * Indica si el listado debe actualizarse en tiempo real con los cambios de
+     * la nube (activado por defecto).
+     * 
+     * @return true si el modo en tiempo real está activado.
+     */
+    public boolean isLiveUpdatesEnabled() {
+        return pref.getBoolean(KEY_LIVE_UPDATES, true);
+    }
+
+    /**
+     * Activa o desactiva las actualizaciones en tiempo real.
+     * 
+     * @param enabled Nuevo valor de la preferencia.
+     */
+    public void setLiveUpdatesEnabled(boolean enabled) {
+        editor.putBoolean(KEY_LIVE_UPDATES, enabled);
+        editor.apply();
+    }
 }
@@ -0,0 +1,246 @@
+package com.ecocity.app.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.ecocity.app.database.IncidenciaDAO;
+import com.ecocity.app.model.Incidencia;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Planificador único (por proceso) de la sincronización con Firestore.
+ * <p>
+ * Garantiza que solo haya una sincronización (subida del outbox + descarga
+ * incremental) en curso. Las peticiones que llegan dentro de la ventana de
+ * agrupación ({@link #BATCH_WINDOW_MS}) se atienden con una sola ejecución, y
+ * las que llegan con una en curso provocan una única ejecución más al
+ * terminar. Si falla, se reintenta con espera exponencial y jitter, desde
+ * {@link #BASE_BACKOFF_MS} hasta {@link #MAX_BACKOFF_MS}. Una petición nueva
+ * durante esa espera (p. ej. vuelve la red) adelanta el reintento a la
+ * ventana de agrupación; si vuelve a fallar, la espera sigue creciendo.
+ * </p>
+ * <p>
+ * Todo el estado se maneja en el hilo principal; {@link #requestSync()} puede
+ * llamarse desde cualquier hilo (p. ej. un NetworkCallback).
+ * </p>
+ */
+public final class SyncScheduler {
+
+    private static final String TAG = "SyncScheduler";
+
+    // Ventana en la que se agrupan las peticiones (redes que se conectan y
+    // desconectan varias veces seguidas)
+    public static final long BATCH_WINDOW_MS = 2000;
+    // Espera tras el primer fallo y espera máxima entre reintentos
+    public static final long BASE_BACKOFF_MS = 5000;
+    public static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    // Tiempo máximo de una ejecución (subida + descarga). Sin conexión, Firestore
+    // puede no responder nunca: al vencer se da por fallida y se reintenta
+    public static final long RUN_TIMEOUT_MS = 3 * 60 * 1000;
+
+    private static SyncScheduler instance;
+
+    private final IncidenciaDAO incidenciaDAO;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final Runnable runSync = this::runSync;
+    private final Runnable runTimeout = this::onRunTimeout;
+
+    // Estado (solo hilo principal)
+    private boolean runScheduled;
+    // Momento (uptimeMillis) en que se lanzará la ejecución programada
+    private long scheduledRunAt;
+    private boolean inFlight;
+    private boolean requestedWhileInFlight;
+    private int consecutiveFailures;
+    // Ejecución en curso y su inicio; los resultados de una que venció se ignoran
+    private int runId;
+    private long runStart;
+
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * Métricas acumuladas desde el arranque del proceso.
+     */
+    public static final class Metrics {
+        public int requests;
+        public int coalescedRequests;
+        public int attempts;
+        public int successes;
+        public int failures;
+        public long lastDurationMs;
+        public long totalDurationMs;
+
+        Metrics copy() {
+            Metrics m = new Metrics();
+            m.requests = requests;
+            m.coalescedRequests = coalescedRequests;
+            m.attempts = attempts;
+            m.successes = successes;
+            m.failures = failures;
+            m.lastDurationMs = lastDurationMs;
+            m.totalDurationMs = totalDurationMs;
+            return m;
+        }
+
+        public long getAverageDurationMs() {
+            return attempts == 0 ? 0 : totalDurationMs / attempts;
+        }
+
+        @Override
+        public String toString() {
+            return "peticiones=" + requests + " agrupadas=" + coalescedRequests + " intentos=" + attempts
+                    + " exitos=" + successes + " fallos=" + failures + " ultima=" + lastDurationMs
+                    + "ms media=" + getAverageDurationMs() + "ms";
+        }
+    }
+
+    private SyncScheduler(Context context) {
+        // DAO de aplicación: se abre una sola vez, en el hilo de base de datos
+        incidenciaDAO = IncidenciaDAO.getShared(context);
+    }
+
+    public static synchronized SyncScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncScheduler(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Pide una sincronización. Se ejecutará al cerrar la ventana de agrupación,
+     * tras la que esté en curso o en el próximo reintento programado.
+     */
+    public void requestSync() {
+        handler.post(() -> {
+            metrics.requests++;
+            if (inFlight) {
+                requestedWhileInFlight = true;
+                metrics.coalescedRequests++;
+            } else if (runScheduled && scheduledRunAt - SystemClock.uptimeMillis() > BATCH_WINDOW_MS) {
+                // Reintento en espera: no tiene sentido esperar al backoff. Los fallos
+                // seguidos se conservan para la espera del próximo fallo
+                handler.removeCallbacks(runSync);
+                schedule(BATCH_WINDOW_MS);
+                metrics.coalescedRequests++;
+            } else if (runScheduled) {
+                // Ya hay una ejecución programada que la cubre
+                metrics.coalescedRequests++;
+            } else {
+                schedule(BATCH_WINDOW_MS);
+            }
+        });
+    }
+
+    /**
+     * Copia de las métricas actuales (llamar desde el hilo principal).
+     */
+    public Metrics getMetrics() {
+        return metrics.copy();
+    }
+
+    private void schedule(long delayMs) {
+        runScheduled = true;
+        scheduledRunAt = SystemClock.uptimeMillis() + delayMs;
+        handler.postDelayed(runSync, delayMs);
+    }
+
+    private void runSync() {
+        runScheduled = false;
+        inFlight = true;
+        metrics.attempts++;
+        final long start = SystemClock.elapsedRealtime();
+        final int run = ++runId;
+        runStart = start;
+        handler.postDelayed(runTimeout, RUN_TIMEOUT_MS);
+
+        // Primero subir los cambios locales y después descargar los remotos
+        incidenciaDAO.syncWithFirestore(new SimpleCallback() {
+            @Override
+            public void onSuccess(String pushed) {
+                incidenciaDAO.pullFromFirestore(new SimpleCallback() {
+                    @Override
+                    public void onSuccess(String pulled) {
+                        Log.d(TAG, "Sincronización completa: " + pushed + " subidas, " + pulled + " descargadas");
+                        onSyncFinished(run, start, null);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        onSyncFinished(run, start, e);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                onSyncFinished(run, start, e);
+            }
+        });
+    }
+
+    /**
+     * La ejecución en curso no terminó en {@link #RUN_TIMEOUT_MS}: se libera
+     * inFlight y se trata como un fallo (con su reintento).
+     */
+    private void onRunTimeout() {
+        if (inFlight)
+            onSyncFinished(runId, runStart, new TimeoutException("La sincronización no respondió a tiempo"));
+    }
+
+    private void onSyncFinished(int run, long start, Exception error) {
+        if (run != runId || !inFlight)
+            return; // Ejecución que ya venció por tiempo
+        runId++;
+        handler.removeCallbacks(runTimeout);
+        long duration = SystemClock.elapsedRealtime() - start;
+        inFlight = false;
+        metrics.lastDurationMs = duration;
+        metrics.totalDurationMs += duration;
+
+        if (error == null) {
+            metrics.successes++;
+            consecutiveFailures = 0;
+            if (requestedWhileInFlight) {
+                requestedWhileInFlight = false;
+                schedule(BATCH_WINDOW_MS);
+            }
+        } else {
+            metrics.failures++;
+            consecutiveFailures++;
+            requestedWhileInFlight = false;
+            long delay = backoffDelay(consecutiveFailures);
+            Log.e(TAG, "Sincronización fallida (" + consecutiveFailures + " seguidas). Reintento en " + delay
+                    + " ms. Error: " + error.getMessage());
+            schedule(delay);
+        }
+        Log.d(TAG, "Métricas de sincronización: " + metrics);
+    }
+
+    /**
+     * Espera exponencial con jitter: entre la mitad y el total de
+     * BASE_BACKOFF_MS * 2^(fallos - 1), acotada a MAX_BACKOFF_MS. El jitter evita
+     * que varios dispositivos reintenten a la vez.
+     */
+    private long backoffDelay(int failures) {
+        long exp = BASE_BACKOFF_MS << Math.min(failures - 1, 16);
+        long capped = Math.min(exp, MAX_BACKOFF_MS);
+        long half = capped / 2;
+        return half + (long) (random.nextDouble() * (capped - half));
+    }
+
+    /**
+     * Callback del DAO sin carga de datos.
+     */
+    private abstract static class SimpleCallback implements IncidenciaDAO.FirestoreCallback {
+        @Override
+        public void onDataLoaded(List<Incidencia> incidencias) {
+        }
+    }
+}
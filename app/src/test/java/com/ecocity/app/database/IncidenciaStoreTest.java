@@ -0,0 +1,146 @@
+package com.ecocity.app.database;
+
+import com.ecocity.app.model.EstadoIncidencia;
+import com.ecocity.app.model.Incidencia;
+import com.ecocity.app.model.UrgenciaIncidencia;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cambios de fila sobre el almacén columnar y crecimiento del pool de textos.
+ */
+public class IncidenciaStoreTest {
+
+    private static Incidencia incidencia(long localId, String titulo, EstadoIncidencia estado) {
+        Incidencia inc = new Incidencia();
+        inc.setLocalId(localId);
+        inc.setTitulo(titulo);
+        inc.setDescripcion("Descripción " + localId);
+        inc.setStatus(estado);
+        inc.setUrgency(UrgenciaIncidencia.MEDIA);
+        inc.setUserEmail("vecino@ecocity.es");
+        inc.setSyncAction("INSERT");
+        return inc;
+    }
+
+    private static IncidenciaStore baseStore(int n) {
+        List<Incidencia> list = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            list.add(incidencia(i, "Incidencia " + i, EstadoIncidencia.PENDIENTE));
+        }
+        return IncidenciaStore.fromIncidencias(list);
+    }
+
+    private static IncidenciaStore single(Incidencia inc) {
+        return IncidenciaStore.fromIncidencias(Collections.singletonList(inc));
+    }
+
+    @Test
+    public void withRow_replacesAndKeepsListOrder() {
+        IncidenciaStore store = baseStore(3);
+        IncidenciaStore edited = store.withRow(2, single(incidencia(2, "Editada", EstadoIncidencia.EN_PROCESO)), 0);
+
+        assertEquals(3, edited.size());
+        // EN_PROCESO va antes que PENDIENTE
+        assertEquals(2, edited.getLocalId(0));
+        assertEquals("Editada", edited.getTitulo(0));
+        assertEquals(1, edited.getLocalId(1));
+        assertEquals(3, edited.getLocalId(2));
+        // El almacén original no cambia
+        assertEquals("Incidencia 2", store.getTitulo(1));
+    }
+
+    @Test
+    public void withRow_insertsAndDeletes() {
+        IncidenciaStore store = baseStore(2);
+        IncidenciaStore inserted = store.withRow(9, single(incidencia(9, "Nueva", EstadoIncidencia.PENDIENTE)), 0);
+        assertEquals(3, inserted.size());
+        assertEquals(2, inserted.indexOf(9));
+
+        IncidenciaStore deleted = inserted.withRow(1, null, -1);
+        assertEquals(2, deleted.size());
+        assertEquals(-1, deleted.indexOf(1));
+        assertEquals("Nueva", deleted.getTitulo(deleted.indexOf(9)));
+    }
+
+    @Test
+    public void withRow_reusesStringsAlreadyInPool() {
+        IncidenciaStore store = baseStore(3);
+        int before = store.poolSize();
+        // Mismos textos que la fila 1 (email, acción y descripción ya están en el pool)
+        Incidencia same = incidencia(1, "Incidencia 1", EstadoIncidencia.PENDIENTE);
+        IncidenciaStore edited = store.withRow(1, single(same), 0);
+        assertEquals(before, edited.poolSize());
+
+        // Solo el título nuevo se añade
+        IncidenciaStore retitled = edited.withRow(1, single(incidencia(1, "Otro", EstadoIncidencia.PENDIENTE)), 0);
+        assertEquals(before + 1, retitled.poolSize());
+    }
+
+    @Test
+    public void withRow_repeatedEditsDoNotGrowPool() {
+        IncidenciaStore store = baseStore(10);
+        IncidenciaStore a = single(incidencia(5, "A", EstadoIncidencia.PENDIENTE));
+        IncidenciaStore b = single(incidencia(5, "B", EstadoIncidencia.PENDIENTE));
+        IncidenciaStore current = store;
+        for (int i = 0; i < 500; i++) {
+            current = current.withRow(5, i % 2 == 0 ? a : b, 0);
+        }
+        assertEquals(store.poolSize() + 2, current.poolSize());
+        assertEquals("B", current.getTitulo(current.indexOf(5)));
+    }
+
+    @Test
+    public void withRow_manyDistinctEditsCompactPool() {
+        IncidenciaStore store = baseStore(10);
+        IncidenciaStore current = store;
+        for (int i = 0; i < 1000; i++) {
+            current = current.withRow(5, single(incidencia(5, "Título " + i, EstadoIncidencia.PENDIENTE)), 0);
+        }
+        assertEquals("Título 999", current.getTitulo(current.indexOf(5)));
+        assertTrue("pool " + current.poolSize(),
+                current.poolSize() <= store.poolSize() + IncidenciaStore.COMPACT_MIN_APPENDED + 1);
+    }
+
+    @Test
+    public void withRow_branchesFromSameStoreDoNotInterfere() {
+        IncidenciaStore store = baseStore(3);
+        IncidenciaStore first = store.withRow(1, single(incidencia(1, "Rama 1", EstadoIncidencia.PENDIENTE)), 0);
+        IncidenciaStore second = store.withRow(1, single(incidencia(1, "Rama 2", EstadoIncidencia.PENDIENTE)), 0);
+        IncidenciaStore firstAgain = first.withRow(2, single(incidencia(2, "Rama 1b", EstadoIncidencia.PENDIENTE)), 0);
+
+        assertEquals("Incidencia 1", store.getTitulo(store.indexOf(1)));
+        assertEquals("Rama 1", first.getTitulo(first.indexOf(1)));
+        assertEquals("Rama 2", second.getTitulo(second.indexOf(1)));
+        assertEquals("Rama 1", firstAgain.getTitulo(firstAgain.indexOf(1)));
+        assertEquals("Rama 1b", firstAgain.getTitulo(firstAgain.indexOf(2)));
+        assertEquals("Incidencia 2", second.getTitulo(second.indexOf(2)));
+    }
+
+    @Test
+    public void select_sharesPoolAndReorders() {
+        IncidenciaStore store = baseStore(3);
+        IncidenciaStore reversed = store.select(new int[] { 2, 1, 0 });
+        assertEquals(store.poolSize(), reversed.poolSize());
+        assertEquals("Incidencia 3", reversed.getTitulo(0));
+        assertEquals("vecino@ecocity.es", reversed.getUserEmail(2));
+    }
+
+    @Test
+    public void toIncidencia_roundTrips() {
+        Incidencia inc = incidencia(4, "Farola", EstadoIncidencia.RESUELTA);
+        Incidencia copy = single(inc).toIncidencia(0);
+        assertEquals(4, copy.getLocalId());
+        assertEquals("Farola", copy.getTitulo());
+        assertEquals(EstadoIncidencia.RESUELTA, copy.getStatus());
+        assertEquals(UrgenciaIncidencia.MEDIA, copy.getUrgency());
+        assertNull(copy.getFotoPath());
+        assertEquals("INSERT", copy.getSyncAction());
+    }
+}
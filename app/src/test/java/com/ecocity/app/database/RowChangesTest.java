@@ -0,0 +1,97 @@
+package com.ecocity.app.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Combinación de los cambios de fila que recibe un observador.
+ */
+public class RowChangesTest {
+
+    @Test
+    public void insertThenUpdate_isInsert() {
+        RowChanges changes = new RowChanges();
+        changes.add(1, RowChanges.INSERTED);
+        changes.add(1, RowChanges.UPDATED);
+        assertEquals(RowChanges.INSERTED, changes.getChange(1));
+    }
+
+    @Test
+    public void insertThenDelete_isNothing() {
+        RowChanges changes = new RowChanges();
+        changes.add(1, RowChanges.INSERTED);
+        changes.add(1, RowChanges.DELETED);
+        assertTrue(changes.isEmpty());
+        assertEquals(0, changes.getChange(1));
+    }
+
+    @Test
+    public void updateThenDelete_isDelete() {
+        RowChanges changes = new RowChanges();
+        changes.add(1, RowChanges.UPDATED);
+        changes.add(1, RowChanges.DELETED);
+        assertEquals(RowChanges.DELETED, changes.getChange(1));
+    }
+
+    @Test
+    public void deleteThenInsert_isUpdate() {
+        RowChanges changes = new RowChanges();
+        changes.add(1, RowChanges.DELETED);
+        changes.add(1, RowChanges.INSERTED);
+        assertEquals(RowChanges.UPDATED, changes.getChange(1));
+    }
+
+    @Test
+    public void localIds_keepOrderOfFirstChange() {
+        RowChanges changes = new RowChanges();
+        changes.add(5, RowChanges.UPDATED);
+        changes.add(2, RowChanges.INSERTED);
+        changes.add(5, RowChanges.DELETED);
+        assertArrayEquals(new long[] { 5, 2 }, changes.getLocalIds());
+    }
+
+    @Test
+    public void tooManyRows_overflows() {
+        RowChanges changes = new RowChanges();
+        for (int i = 0; i <= RowChanges.MAX_ROWS; i++) {
+            changes.add(i, RowChanges.UPDATED);
+        }
+        assertTrue(changes.isOverflow());
+        assertFalse(changes.isEmpty());
+        assertEquals(0, changes.getLocalIds().length);
+
+        // Un desbordamiento no se pierde al añadir más cambios ni al combinar
+        changes.add(1000, RowChanges.UPDATED);
+        assertTrue(changes.isOverflow());
+        RowChanges merged = new RowChanges();
+        merged.add(1, RowChanges.UPDATED);
+        merged.addAll(changes);
+        assertTrue(merged.isOverflow());
+    }
+
+    @Test
+    public void addAll_appliesLaterChanges() {
+        RowChanges earlier = new RowChanges();
+        earlier.add(1, RowChanges.INSERTED);
+        earlier.add(2, RowChanges.UPDATED);
+        RowChanges later = new RowChanges();
+        later.add(1, RowChanges.DELETED);
+        later.add(3, RowChanges.INSERTED);
+
+        earlier.addAll(later);
+        assertEquals(0, earlier.getChange(1));
+        assertEquals(RowChanges.UPDATED, earlier.getChange(2));
+        assertEquals(RowChanges.INSERTED, earlier.getChange(3));
+    }
+
+    @Test
+    public void copy_isIndependent() {
+        RowChanges changes = new RowChanges();
+        changes.add(1, RowChanges.UPDATED);
+        RowChanges copy = changes.copy();
+        changes.clear();
+        assertTrue(changes.isEmpty());
+        assertEquals(RowChanges.UPDATED, copy.getChange(1));
+    }
+}
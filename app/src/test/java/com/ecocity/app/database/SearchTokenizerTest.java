@@ -0,0 +1,41 @@
+package com.ecocity.app.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Limpieza del texto de búsqueda antes de construir la expresión MATCH.
+ */
+public class SearchTokenizerTest {
+
+    @Test
+    public void tokenize_splitsWordsAndKeepsAccents() {
+        assertEquals(Arrays.asList("camión", "basura", "c2"), SearchTokenizer.tokenize("  camión, basura   c2 "));
+    }
+
+    @Test
+    public void tokenize_dropsFtsSyntax() {
+        assertEquals(Arrays.asList("farola", "rota", "calle"),
+                SearchTokenizer.tokenize("\"farola\" -rota* (calle)"));
+    }
+
+    @Test
+    public void tokenize_dropsReservedOperators() {
+        assertEquals(Arrays.asList("bache", "acera"), SearchTokenizer.tokenize("bache OR NOT acera AND NEAR"));
+    }
+
+    @Test
+    public void tokenize_keepsLowercaseOperatorsAsWords() {
+        assertEquals(Arrays.asList("or", "and"), SearchTokenizer.tokenize("or and"));
+    }
+
+    @Test
+    public void tokenize_nullOrBlank_isEmpty() {
+        assertEquals(Collections.emptyList(), SearchTokenizer.tokenize(null));
+        assertEquals(Collections.emptyList(), SearchTokenizer.tokenize(" *-\"() "));
+    }
+}
@@ -0,0 +1,102 @@
+package com.ecocity.app.database;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Agrupación de las operaciones del outbox en un cambio por incidencia.
+ */
+public class SyncOutboxTest {
+
+    @Test
+    public void coalesce_insertThenUpdate_isInsert() {
+        assertEquals(SyncOutbox.OP_INSERT, SyncOutbox.coalesce(SyncOutbox.OP_INSERT, SyncOutbox.OP_UPDATE));
+    }
+
+    @Test
+    public void coalesce_insertThenDelete_isNothing() {
+        assertNull(SyncOutbox.coalesce(SyncOutbox.OP_INSERT, SyncOutbox.OP_DELETE));
+    }
+
+    @Test
+    public void coalesce_updateThenUpdate_isUpdate() {
+        assertEquals(SyncOutbox.OP_UPDATE, SyncOutbox.coalesce(SyncOutbox.OP_UPDATE, SyncOutbox.OP_UPDATE));
+    }
+
+    @Test
+    public void coalesce_updateThenDelete_isDelete() {
+        assertEquals(SyncOutbox.OP_DELETE, SyncOutbox.coalesce(SyncOutbox.OP_UPDATE, SyncOutbox.OP_DELETE));
+    }
+
+    @Test
+    public void uploadOperation_insertThenDeleteWithFirestoreId_isDelete() {
+        // Una subida anterior pudo crear el documento sin confirmarse en local
+        String coalesced = SyncOutbox.coalesce(SyncOutbox.OP_INSERT, SyncOutbox.OP_DELETE);
+        assertEquals(SyncOutbox.OP_DELETE, SyncOutbox.uploadOperation(coalesced, true));
+    }
+
+    @Test
+    public void uploadOperation_insertThenDeleteWithoutFirestoreId_isNothing() {
+        String coalesced = SyncOutbox.coalesce(SyncOutbox.OP_INSERT, SyncOutbox.OP_DELETE);
+        assertNull(SyncOutbox.uploadOperation(coalesced, false));
+    }
+
+    @Test
+    public void uploadOperation_deleteWithoutFirestoreId_isNothing() {
+        assertNull(SyncOutbox.uploadOperation(SyncOutbox.OP_DELETE, false));
+    }
+
+    @Test
+    public void uploadOperation_keepsInsertAndUpdate() {
+        assertEquals(SyncOutbox.OP_INSERT, SyncOutbox.uploadOperation(SyncOutbox.OP_INSERT, false));
+        assertEquals(SyncOutbox.OP_UPDATE, SyncOutbox.uploadOperation(SyncOutbox.OP_UPDATE, true));
+        assertEquals(SyncOutbox.OP_DELETE, SyncOutbox.uploadOperation(SyncOutbox.OP_DELETE, true));
+    }
+
+    @Test
+    public void grouper_mergesOperationsOfSameIncidencia() {
+        SyncOutbox.Grouper grouper = new SyncOutbox.Grouper();
+        grouper.add(7, 3, SyncOutbox.OP_INSERT, SyncOutbox.FIELDS_ALL);
+        grouper.add(7, 5, SyncOutbox.OP_UPDATE, SyncOutbox.FIELD_TITULO);
+        grouper.add(9, 4, SyncOutbox.OP_UPDATE, SyncOutbox.FIELD_TITULO);
+        grouper.add(9, 6, SyncOutbox.OP_UPDATE, SyncOutbox.FIELD_ESTADO);
+
+        List<SyncOutbox.Change> changes = grouper.finish();
+        assertEquals(2, changes.size());
+
+        SyncOutbox.Change first = changes.get(0);
+        assertEquals(7, first.localId);
+        assertEquals(SyncOutbox.OP_INSERT, first.operation);
+        assertEquals(SyncOutbox.FIELDS_ALL, first.fields);
+        assertEquals(3, first.minSeq);
+        assertEquals(5, first.maxSeq);
+
+        SyncOutbox.Change second = changes.get(1);
+        assertEquals(9, second.localId);
+        assertEquals(SyncOutbox.OP_UPDATE, second.operation);
+        assertEquals(SyncOutbox.FIELD_TITULO | SyncOutbox.FIELD_ESTADO, second.fields);
+        assertEquals(4, second.minSeq);
+        assertEquals(6, second.maxSeq);
+    }
+
+    @Test
+    public void grouper_keepsCancelledChangeSoItsRowsCanBeAcknowledged() {
+        SyncOutbox.Grouper grouper = new SyncOutbox.Grouper();
+        grouper.add(1, 1, SyncOutbox.OP_INSERT, SyncOutbox.FIELDS_ALL);
+        grouper.add(1, 2, SyncOutbox.OP_UPDATE, SyncOutbox.FIELD_FOTO);
+        grouper.add(1, 3, SyncOutbox.OP_DELETE, 0);
+
+        List<SyncOutbox.Change> changes = grouper.finish();
+        assertEquals(1, changes.size());
+        assertNull(changes.get(0).operation);
+        assertEquals(3, changes.get(0).maxSeq);
+    }
+
+    @Test
+    public void grouper_withoutRows_isEmpty() {
+        assertTrue(new SyncOutbox.Grouper().finish().isEmpty());
+    }
+}
@@ -0,0 +1,39 @@
+package com.ecocity.app.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Conversión de estados entre etiqueta de Firestore y código de SQLite.
+ */
+public class EstadoIncidenciaTest {
+
+    @Test
+    public void fromLabel_ignoresCaseAndSpaces() {
+        assertEquals(EstadoIncidencia.EN_PROCESO, EstadoIncidencia.fromLabel("En proceso"));
+        assertEquals(EstadoIncidencia.EN_PROCESO, EstadoIncidencia.fromLabel(" EN PROCESO "));
+        assertEquals(EstadoIncidencia.RESUELTA, EstadoIncidencia.fromLabel("resuelta"));
+    }
+
+    @Test
+    public void fromLabel_unknownOrNull_isDefault() {
+        assertEquals(EstadoIncidencia.DEFAULT, EstadoIncidencia.fromLabel(null));
+        assertEquals(EstadoIncidencia.DEFAULT, EstadoIncidencia.fromLabel("Cerrada"));
+    }
+
+    @Test
+    public void fromCode_roundTrips() {
+        for (EstadoIncidencia estado : EstadoIncidencia.values()) {
+            assertEquals(estado, EstadoIncidencia.fromCode(estado.getCode()));
+            assertEquals(estado, EstadoIncidencia.fromLabel(estado.getLabel()));
+        }
+        assertEquals(EstadoIncidencia.DEFAULT, EstadoIncidencia.fromCode(99));
+    }
+
+    @Test
+    public void codes_followPriority() {
+        assertTrue(EstadoIncidencia.EN_PROCESO.getCode() < EstadoIncidencia.PENDIENTE.getCode());
+        assertTrue(EstadoIncidencia.PENDIENTE.getCode() < EstadoIncidencia.RESUELTA.getCode());
+    }
+}
@@ -0,0 +1,32 @@
+package com.ecocity.app.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Conversión de urgencias entre etiqueta de Firestore y código de SQLite.
+ */
+public class UrgenciaIncidenciaTest {
+
+    @Test
+    public void fromLabel_ignoresCaseAndSpaces() {
+        assertEquals(UrgenciaIncidencia.ALTA, UrgenciaIncidencia.fromLabel("ALTA"));
+        assertEquals(UrgenciaIncidencia.MEDIA, UrgenciaIncidencia.fromLabel(" media"));
+    }
+
+    @Test
+    public void fromLabel_unknownOrNull_isDefault() {
+        assertEquals(UrgenciaIncidencia.DEFAULT, UrgenciaIncidencia.fromLabel(null));
+        assertEquals(UrgenciaIncidencia.DEFAULT, UrgenciaIncidencia.fromLabel("Urgente"));
+    }
+
+    @Test
+    public void fromCode_roundTrips() {
+        for (UrgenciaIncidencia urgencia : UrgenciaIncidencia.values()) {
+            assertEquals(urgencia, UrgenciaIncidencia.fromCode(urgencia.getCode()));
+            assertEquals(urgencia, UrgenciaIncidencia.fromLabel(urgencia.getLabel()));
+        }
+        assertEquals(UrgenciaIncidencia.DEFAULT, UrgenciaIncidencia.fromCode(0));
+    }
+}
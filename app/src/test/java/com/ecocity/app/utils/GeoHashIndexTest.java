@@ -0,0 +1,110 @@
+package com.ecocity.app.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Consultas del índice geohash comparadas con un recorrido completo.
+ */
+public class GeoHashIndexTest {
+
+    private static final int POINTS = 2000;
+
+    private final long[] ids = new long[POINTS];
+    private final double[] lats = new double[POINTS];
+    private final double[] lngs = new double[POINTS];
+
+    // Puntos aleatorios alrededor de (lat, lng) en una caja de +-spread grados
+    private GeoHashIndex buildIndex(double lat, double lng, double spread, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < POINTS; i++) {
+            ids[i] = i + 1;
+            lats[i] = Math.max(-89.9, Math.min(89.9, lat + (random.nextDouble() * 2 - 1) * spread));
+            double lon = lng + (random.nextDouble() * 2 - 1) * spread;
+            lngs[i] = lon > 180 ? lon - 360 : lon < -180 ? lon + 360 : lon;
+        }
+        GeoHashIndex index = new GeoHashIndex();
+        assertEquals(POINTS, index.update(ids, lats, lngs, POINTS));
+        return index;
+    }
+
+    // Ids a menos de radius metros, del más cercano al más lejano
+    private long[] bruteForceWithin(double lat, double lng, double radius) {
+        List<Integer> hits = new ArrayList<>();
+        for (int i = 0; i < POINTS; i++) {
+            if (GeoUtils.distanceMeters(lat, lng, lats[i], lngs[i]) <= radius)
+                hits.add(i);
+        }
+        hits.sort((a, b) -> Double.compare(GeoUtils.distanceMeters(lat, lng, lats[a], lngs[a]),
+                GeoUtils.distanceMeters(lat, lng, lats[b], lngs[b])));
+        long[] result = new long[hits.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids[hits.get(i)];
+        }
+        return result;
+    }
+
+    @Test
+    public void withinRadius_matchesBruteForce() {
+        GeoHashIndex index = buildIndex(40.4168, -3.7038, 0.1, 1);
+        for (double radius : new double[] { 50, 500, 2000, 10000 }) {
+            assertArrayEquals("radio " + radius, bruteForceWithin(40.42, -3.70, radius),
+                    index.withinRadius(40.42, -3.70, radius));
+        }
+    }
+
+    @Test
+    public void withinRadius_acrossAntimeridian() {
+        GeoHashIndex index = buildIndex(-17.0, 180.0, 0.5, 2);
+        long[] expected = bruteForceWithin(-17.0, 179.99, 30000);
+        assertTrue(expected.length > 0);
+        assertArrayEquals(expected, index.withinRadius(-17.0, 179.99, 30000));
+        assertArrayEquals(bruteForceWithin(-17.0, -179.99, 30000), index.withinRadius(-17.0, -179.99, 30000));
+    }
+
+    @Test
+    public void withinRadius_nearPole() {
+        GeoHashIndex index = buildIndex(85.0, 20.0, 3.0, 3);
+        assertArrayEquals(bruteForceWithin(86.5, 20.0, 150000), index.withinRadius(86.5, 20.0, 150000));
+    }
+
+    @Test
+    public void nearest_matchesBruteForcePrefix() {
+        GeoHashIndex index = buildIndex(40.4168, -3.7038, 0.1, 4);
+        long[] all = bruteForceWithin(40.5, -3.5, Double.MAX_VALUE);
+        for (int k : new int[] { 1, 5, 50 }) {
+            long[] expected = new long[k];
+            System.arraycopy(all, 0, expected, 0, k);
+            assertArrayEquals("k " + k, expected, index.nearest(40.5, -3.5, k));
+        }
+    }
+
+    @Test
+    public void nearest_isLimitedToSize() {
+        GeoHashIndex index = new GeoHashIndex();
+        index.update(new long[] { 1, 2 }, new double[] { 40, 41 }, new double[] { -3, -3 }, 2);
+        assertEquals(2, index.nearest(40, -3, 10).length);
+        assertEquals(0, new GeoHashIndex().nearest(40, -3, 3).length);
+    }
+
+    @Test
+    public void update_skipsPointsWithoutLocationAndKeepsUnchangedEntries() {
+        GeoHashIndex index = new GeoHashIndex();
+        assertEquals(1, index.update(new long[] { 1, 2 }, new double[] { 40, 0 }, new double[] { -3, 0 }, 2));
+        assertEquals(1, index.size());
+
+        // Mismo punto 1 (no cuenta como añadido) y punto 2 con ubicación nueva
+        assertEquals(1, index.update(new long[] { 1, 2 }, new double[] { 40, 40.001 }, new double[] { -3, -3 }, 2));
+        assertEquals(2, index.size());
+        assertArrayEquals(new long[] { 1, 2 }, index.withinRadius(40, -3, 1000));
+
+        // Punto 1 eliminado del conjunto
+        assertEquals(0, index.update(new long[] { 2 }, new double[] { 40.001 }, new double[] { -3 }, 1));
+        assertArrayEquals(new long[] { 2 }, index.withinRadius(40, -3, 1000));
+    }
+}
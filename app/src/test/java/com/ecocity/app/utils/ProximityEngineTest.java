@@ -0,0 +1,112 @@
+package com.ecocity.app.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Selección parcial (quickselect + ordenación del prefijo) del motor de
+ * proximidad.
+ */
+public class ProximityEngineTest {
+
+    private static final double ORIGIN_LAT = 40.4168;
+    private static final double ORIGIN_LNG = -3.7038;
+
+    private static double[][] randomPoints(int n, long seed) {
+        Random random = new Random(seed);
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = ORIGIN_LAT + (random.nextDouble() * 2 - 1) * 0.2;
+            lngs[i] = ORIGIN_LNG + (random.nextDouble() * 2 - 1) * 0.2;
+        }
+        return new double[][] { lats, lngs };
+    }
+
+    private static double[] sortedDistances(double[] lats, double[] lngs) {
+        double[] distances = new double[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            distances[i] = GeoUtils.distanceMeters(ORIGIN_LAT, ORIGIN_LNG, lats[i], lngs[i]);
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    @Test
+    public void nearest_returnsKClosestInOrder() {
+        double[][] points = randomPoints(1000, 1);
+        double[] expected = sortedDistances(points[0], points[1]);
+        ProximityEngine engine = new ProximityEngine();
+        engine.setPoints(points[0], points[1], 1000);
+        assertTrue(engine.updateOrigin(ORIGIN_LAT, ORIGIN_LNG));
+
+        int[] nearest = engine.nearest(25);
+        assertEquals(25, nearest.length);
+        for (int i = 0; i < nearest.length; i++) {
+            assertEquals(expected[i], engine.distanceAt(nearest[i]), 0.0);
+        }
+    }
+
+    @Test
+    public void orderWithNearestFirst_extendsSortedPrefix() {
+        double[][] points = randomPoints(500, 2);
+        double[] expected = sortedDistances(points[0], points[1]);
+        ProximityEngine engine = new ProximityEngine();
+        engine.setPoints(points[0], points[1], 500);
+        engine.updateOrigin(ORIGIN_LAT, ORIGIN_LNG);
+
+        for (int k : new int[] { 10, 50, 500 }) {
+            int[] order = engine.orderWithNearestFirst(k);
+            assertEquals(500, order.length);
+            // Permutación completa
+            boolean[] seen = new boolean[500];
+            for (int index : order) {
+                assertFalse(seen[index]);
+                seen[index] = true;
+            }
+            // Prefijo ordenado y el resto a igual o mayor distancia
+            for (int i = 0; i < k; i++) {
+                assertEquals(expected[i], engine.distanceAt(order[i]), 0.0);
+            }
+            for (int i = k; i < order.length; i++) {
+                assertTrue(engine.distanceAt(order[i]) >= engine.distanceAt(order[k - 1]));
+            }
+        }
+    }
+
+    @Test
+    public void pointsWithoutLocation_goLast() {
+        double[] lats = { 0, 40.42, 0, 40.5 };
+        double[] lngs = { 0, -3.70, 0, -3.70 };
+        ProximityEngine engine = new ProximityEngine();
+        engine.setPoints(lats, lngs, 4);
+        engine.updateOrigin(ORIGIN_LAT, ORIGIN_LNG);
+
+        assertArrayEquals(new int[] { 1, 3, 0, 2 }, engine.orderWithNearestFirst(4));
+        assertArrayEquals(new int[] { 1, 3 }, engine.nearest(2));
+        assertEquals(Double.POSITIVE_INFINITY, engine.distanceAt(0), 0.0);
+    }
+
+    @Test
+    public void updateOrigin_reusesResultWithinThreshold() {
+        double[][] points = randomPoints(10, 3);
+        ProximityEngine engine = new ProximityEngine(50.0);
+        engine.setPoints(points[0], points[1], 10);
+        assertTrue(engine.updateOrigin(ORIGIN_LAT, ORIGIN_LNG));
+        // ~11 m al norte: se reutiliza
+        assertFalse(engine.updateOrigin(ORIGIN_LAT + 0.0001, ORIGIN_LNG));
+        // ~1 km: se recalcula
+        assertTrue(engine.updateOrigin(ORIGIN_LAT + 0.01, ORIGIN_LNG));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nearest_withoutOrigin_fails() {
+        ProximityEngine engine = new ProximityEngine();
+        engine.setPoints(new double[] { 40 }, new double[] { -3 }, 1);
+        engine.nearest(1);
+    }
+}